@@ -1,3 +0,0 @@
-#!/bin/bash
-
-ls -w1 *.jpg
@@ -22,11 +22,11 @@
  */
 package com.encinitaslabs.rfid;
 
-import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.Date;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -34,22 +34,60 @@ import java.util.concurrent.atomic.AtomicBoolean;
 /**
  * Camera Object
  * <P>Attributes and functionality corresponding to a gphoto2 camera.
+ * <P>The camera is driven through one long-lived gphoto2 shell, which
+ * is restarted whenever the camera power is cycled. Each camera has its
+ * own command queue and worker thread, so several cameras, each on its
+ * own gphoto2 port, can capture at the same time.
  *  
  * @author Encinitas Labs
  * @version 0.1
  */
 public class Camera {
+
+	/**
+	 * TagResolver Interface
+	 * <P>Implemented by whatever knows which tags were read around a photo.
+	 */
+	public interface TagResolver {
+		String getPhotoTags(String subEpc, long time_ms);
+	}
+
+	/**
+	 * TimeoutListener Interface
+	 * <P>Implemented by whatever recovers a camera whose photo never
+	 * arrived, given the power cycle count from when the shot began.
+	 */
+	public interface TimeoutListener {
+		void captureTimedOut(Camera camera, int powerCycle);
+	}
 	
 	private final String make_s = "Manufacturer: ";
 	private final String model_s = "Model: ";
 	private final String version_s = "  Version: ";
 	private final String serialNumber_s = "  Serial Number: ";
-	private final String defaultName = "capt000";
+	private final String newFile_s = "New file is in location";
 	public final String TIMEOUT = "timeout";
-	private final Integer WAIT_FOR_FILE = 30;
-	private final Integer WAIT_INTERVAL = 500;
-	private final Integer WAIT_FOR_EXEC = 200;
-	private LinkedBlockingQueue<String> pictureQueue = null;
+	private final long CAPTURE_TIMEOUT_MS = 15000;
+	private GPhotoShell shell = null;
+	private String name = null;
+	private String port = null;
+	private final long created_ms = System.currentTimeMillis();
+	private long busyStart_ms = 0;
+	private long busyTime_ms = 0;
+	private long droppedTriggers = 0;
+	private volatile Runnable idleListener = null;
+	private long captureCount = 0;
+	private long captureTimeouts = 0;
+	private long totalCaptureLatency_ms = 0;
+	private long maxCaptureLatency_ms = 0;
+	// When the shot in progress was asked for, 0 once it has been exposed
+	private volatile long shotStart_ms = 0;
+	private long exposureLatency_ms = -1;
+	private final float EXPOSURE_ALPHA = 0.25f;
+	private LinkedBlockingQueue<Picture> pictureQueue = null;
+	private volatile TagResolver tagResolver = null;
+	private volatile TimeoutListener timeoutListener = null;
+	private volatile int powerCycles = 0;
 	private LinkedBlockingQueue<String> commandQueue = null;
     private AtomicBoolean busy = null;
 	private String make = null;
@@ -57,57 +95,91 @@ public class Camera {
 	private String version = null;
 	private String serialNumber = null;
 	private Log logObject = null;
+	private UploadJournal uploadJournal = null;
 	private ImageFormat imageFormat = ImageFormat.SmallNormal;
 	private String shotsPerTrigger = "1";
 	private Boolean cameraOn = false;
 	
 	public enum ImageFormat {
-		LargeFine((String)"0"),
-		LargeNormal((String)"1"),
-		MediumFine((String)"2"),
-		MediumNormal((String)"3"),
-		SmallFine((String)"4"),
-		SmallNormal((String)"5"),
-		Small((String)"6"),
-		Tiny((String)"7"),
-		RawLarge((String)"8"),
-		Raw((String)"9");
+		LargeFine((String)"0", ".jpg"),
+		LargeNormal((String)"1", ".jpg"),
+		MediumFine((String)"2", ".jpg"),
+		MediumNormal((String)"3", ".jpg"),
+		SmallFine((String)"4", ".jpg"),
+		SmallNormal((String)"5", ".jpg"),
+		Small((String)"6", ".jpg"),
+		Tiny((String)"7", ".jpg"),
+		RawLarge((String)"8", ".cr2"),
+		Raw((String)"9", ".cr2");
 		
 		private String bImageFormat;
+		private String extension;
 		
-		ImageFormat(String bImageFormat_) {
+		ImageFormat(String bImageFormat_, String extension_) {
 			this.bImageFormat = bImageFormat_;
+			this.extension = extension_;
 		}
 
 		public String getValue() {
 			return bImageFormat;
 		}
+
+		public String getExtension() {
+			return extension;
+		}
 	}
 
 	/** 
 	 * Camera<P>
 	 * Class Constructor
 	 */
-	public Camera ( LinkedBlockingQueue<String> pictureQueue_, Log logObject_ ) {
+	public Camera ( LinkedBlockingQueue<Picture> pictureQueue_, Log logObject_ ) {
+		this(null, null, pictureQueue_, logObject_);
+	}
+
+	/** 
+	 * Camera<P>
+	 * Class Constructor
+	 * @param name_ The name of the camera in logs and its staging
+	 * directory, or null for the only camera
+	 * @param port_ The gphoto2 port, or null for the first camera found
+	 * @param pictureQueue_ The queue downloaded photos are put on
+	 * @param logObject_ The log
+	 */
+	public Camera ( String name_, String port_, LinkedBlockingQueue<Picture> pictureQueue_, Log logObject_ ) {
+		name = name_;
+		port = port_;
 		pictureQueue = pictureQueue_;
 		logObject = logObject_;		
 		busy = new AtomicBoolean(false);
 		commandQueue = new LinkedBlockingQueue<String>();
+		Path directory = (name != null) ? Paths.get(GPhotoShell.DEFAULT_DIRECTORY, name) : Paths.get(GPhotoShell.DEFAULT_DIRECTORY);
+		shell = new GPhotoShell(directory, port, new GPhotoShell.Listener() {
+			public void lineReceived(String line) {
+				processShellLine(line);
+			}
+		}, logObject);
 
 		// MANAGE THE CAMERA COMMAND QUEUE
-		Thread tagInfoWorker = new Thread () {
+		Thread tagInfoWorker = new Thread ((name != null) ? "Camera " + name : "Camera") {
 			public void run() {
-				Runtime rt = Runtime.getRuntime();
 				while ( true ) {
 					try {
 						// This method blocks until a camera command is available
 						String command = commandQueue.take();
 						// The camera is busy
-						busy.set(true);
-						// Process the camera command
-						processCommand(command, rt);
-						// The camera is no longer busy
-						busy.set(false);
+						busyStarted();
+						try {
+							// Process the camera command
+							processCommand(command);
+						} finally {
+							// The camera is no longer busy
+							busyFinished();
+						}
+						Runnable listener = idleListener;
+						if ((listener != null) && !busy.get()) {
+							listener.run();
+						}
 					} catch (Exception e) {
 						log("Error processing tagInfoQueue\n" + e.toString(), Log.Level.Error);
 					}
@@ -118,36 +190,68 @@ public class Camera {
 	}
 	
 	/** 
-	 * enablePower<P>
-	 * This method returns if we successfully enabled the camera power.
-	 * The output is active low.
-	 * @return A Boolean.
+	 * setPowered<P>
+	 * This method tells the camera its power has been switched, which
+	 * is done for all cameras at once by the CameraPool. When the power
+	 * goes the shell is stopped, since it loses the camera, and a shot
+	 * in progress gives up.
+	 * @param powered True if the camera has power
 	 */
-	public Boolean enablePower(Boolean enable) {
-		try {
-			if (enable) {
-				Runtime.getRuntime().exec("./camera_power.sh 0");
-				log("Camera power ON", Log.Level.Information);
-				cameraOn = true;
-			} else {
-				Runtime.getRuntime().exec("./camera_power.sh 1");				
-				log("Camera power OFF", Log.Level.Information);
-				cameraOn = false;
-			}
-			return true;
-		} catch (IOException e) {
-			log( "Unable to enable camera power!", Log.Level.Error );
-			return false;
+	public void setPowered( boolean powered ) {
+		if (!powered) {
+			powerCycles++;
+			shell.stop();
 		}
+		cameraOn = powered;
+	}
+
+	/** 
+	 * getPowerCycles<P>
+	 * This method returns how many times the camera power has been cut.
+	 * @return The number of power cycles
+	 */
+	public int getPowerCycles() {
+		return powerCycles;
+	}
+
+	/** 
+	 * setTimeoutListener<P>
+	 * This method sets what recovers the camera when a photo is not
+	 * downloaded in time.
+	 * @param timeoutListener_ The listener, or null for none
+	 */
+	public void setTimeoutListener( TimeoutListener timeoutListener_ ) {
+		timeoutListener = timeoutListener_;
+	}
+
+	/** 
+	 * setUploadJournal<P>
+	 * This method sets the journal that downloaded photos are recorded in.
+	 * @param uploadJournal_ The upload journal
+	 */
+	public void setUploadJournal( UploadJournal uploadJournal_ ) {
+		uploadJournal = uploadJournal_;
+	}
+
+	/** 
+	 * setTagResolver<P>
+	 * This method sets what finds the tags to upload with each photo.
+	 * Without one a photo is uploaded with just its triggering tag.
+	 * @param tagResolver_ The resolver, or null for none
+	 */
+	public void setTagResolver( TagResolver tagResolver_ ) {
+		tagResolver = tagResolver_;
 	}
 
 	/** 
 	 * isReady<P>
-	 * This method returns True if the camera is busy or not on.
+	 * This method returns True if the camera is busy or not on, or if
+	 * the picture queue has no room for the photos of another trigger
+	 * because the uploads have fallen behind.
 	 * @return A Boolean.
 	 */
 	public Boolean isBusy() {
-		return (!cameraOn || busy.get());
+		return (!cameraOn || busy.get() || (pictureQueue.remainingCapacity() < Integer.parseInt(shotsPerTrigger)));
 	}
 
 	/** 
@@ -260,13 +364,20 @@ public class Camera {
 
 	/** 
 	 * takePhoto<P>
-	 * This method queues a gphoto2 command.
+	 * This method queues a gphoto2 command. The camera is busy from
+	 * now on, so another trigger is not routed to it before the worker
+	 * starts the capture.
 	 * @throws IOException
 	 */
 	public Boolean takePhoto( String tagInfo ) {
 		boolean success = false;
 		try {
-			commandQueue.put("capture-image-and-download " + tagInfo);
+			synchronized (this) {
+				if (!busy.getAndSet(true)) {
+					busyStart_ms = System.currentTimeMillis();
+				}
+				commandQueue.put("capture-image-and-download " + tagInfo + " " + System.currentTimeMillis());
+			}
 			success = true;				
 		} catch (Exception e) {
 			log( "Unable to queue the capture command!\n" + e.toString(), Log.Level.Error );
@@ -278,17 +389,17 @@ public class Camera {
 	 * processCommand<P>
 	 * This method processes the queued camera command.
 	 */
-	private void processCommand(String command, Runtime rt) {
+	private void processCommand(String command) {
 		// Parse the command
 		String cmd[] = command.split(" ");
 		String method = cmd[0];
 		if (method.equalsIgnoreCase("set-config")) {
-			setConfig(rt);
+			setConfig();
 		} else if (method.equalsIgnoreCase("summary")) {
-			summary(rt);
+			summary();
 		} else if (method.equalsIgnoreCase("capture-image-and-download")) {
-			if (cmd.length == 2) {
-				captureImageAndDownload(rt, cmd[1]);
+			if (cmd.length == 3) {
+				captureImageAndDownload(cmd[1], Long.parseLong(cmd[2]));
 			}
 		} else {
 			log( "Invalid camera command", Log.Level.Warning );
@@ -297,110 +408,291 @@ public class Camera {
 
 	/** 
 	 * setConfig<P>
-	 * This method executes a gphoto2 command.
+	 * This method sends a gphoto2 shell command.
 	 */
-	private void setConfig(Runtime rt) {
+	private void setConfig() {
 		try {
-			// Send the gphoto2 command
-			log("gphoto2 --set-config /main/imgsettings/imageformat=" + imageFormat.getValue(), Log.Level.Debug);
-			rt.exec("gphoto2 --set-config /main/imgsettings/imageformat=" + imageFormat.getValue());
+			shell.send("set-config /main/imgsettings/imageformat=" + imageFormat.getValue());
 		} catch (IOException e) {
-			log("Error --set-config\n" + e.toString(), Log.Level.Error);
+			log("Error set-config\n" + e.toString(), Log.Level.Error);
 		}
 	}
 
 	/** 
 	 * summary<P>
-	 * This method executes a gphoto2 command.
-	 * @throws IOException 
+	 * This method sends a gphoto2 shell command. The reply is parsed
+	 * by processShellLine as it arrives.
 	 */
-	private void summary(Runtime rt) {
+	private void summary() {
 		try {
-			// Send the gphoto2 command
-			log("gphoto2 --summary", Log.Level.Debug);
-			Process proc = rt.exec("gphoto2 --summary");
-			Thread.sleep(WAIT_FOR_EXEC);
-			BufferedReader stdInput = new BufferedReader(new InputStreamReader(proc.getInputStream()));
-			String line = "";
-			while ((line = stdInput.readLine()) != null) {
-				if (line != null) {
-					// Look for the Camera Manufacturer:
-					if (line.startsWith(make_s)) {
-						make = line.substring(make_s.length(), line.length()).trim();
-					}
-					// Look for the Camera Model:
-					else if (line.startsWith(model_s)) {
-						model = line.substring(model_s.length(), line.length()).trim();
+			shell.send("summary");
+		} catch (IOException e) {
+			log("Error summary\n" + e.toString(), Log.Level.Error);
+		}
+	}
+
+	/** 
+	 * processShellLine<P>
+	 * This method picks the camera details out of the gphoto2 output
+	 * and times the exposure of the shot in progress, which gphoto2
+	 * reports as a new file on the camera before downloading it.
+	 */
+	private void processShellLine(String line) {
+		if (line.startsWith(newFile_s)) {
+			long start = shotStart_ms;
+			if (start != 0) {
+				shotStart_ms = 0;
+				exposed(System.currentTimeMillis() - start);
+			}
+		}
+		// Look for the Camera Manufacturer:
+		else if (line.startsWith(make_s)) {
+			make = line.substring(make_s.length(), line.length()).trim();
+		}
+		// Look for the Camera Model:
+		else if (line.startsWith(model_s)) {
+			model = line.substring(model_s.length(), line.length()).trim();
+		}
+		// Look for the Camera SW Version:
+		else if (line.startsWith(version_s)) {
+			version = line.substring(version_s.length(), line.length()).trim();
+		}
+		// Look for the Camera Serial Number:
+		else if (line.startsWith(serialNumber_s)) {
+			serialNumber = line.substring(serialNumber_s.length(), line.length()).trim();
+		}
+	}
+
+	/** 
+	 * captureImageAndDownload<P>
+	 * This method takes the photos for one trigger through the gphoto2
+	 * shell and queues each one for upload as soon as it is downloaded,
+	 * with the tags read around the time it was asked for.
+	 * @param subEpc The part of the EPC the photos are named after
+	 * @param trigger_ms When the photo was asked for
+	 */
+	private void captureImageAndDownload(String subEpc, long trigger_ms) {
+		int powerCycle = powerCycles;
+		try {
+			int shots = Integer.parseInt(shotsPerTrigger);
+			for (int i = 0; i < shots; i++) {
+				shell.discardEvents();
+				shotStart_ms = trigger_ms;
+				shell.send("capture-image-and-download");
+				// Now wait for the file to download
+				Path file = shell.awaitFile(imageFormat.getExtension(), CAPTURE_TIMEOUT_MS);
+				if (file != null) {
+					captureFinished(System.currentTimeMillis() - trigger_ms);
+					log("Received " + file.getFileName(), Log.Level.Debug);
+					// Rename the file and queue it for upload
+					String newName = subEpc + "-" + System.currentTimeMillis() + imageFormat.getExtension();
+					Files.move(file, Paths.get(newName), StandardCopyOption.ATOMIC_MOVE);
+					TagResolver resolver = tagResolver;
+					String tags = (resolver != null) ? resolver.getPhotoTags(subEpc, trigger_ms) : subEpc;
+					if (uploadJournal != null) {
+						uploadJournal.record(newName, UploadJournal.State.Captured, tags);
 					}
-					// Look for the Camera SW Version:
-					else if (line.startsWith(version_s)) {
-						version = line.substring(version_s.length(), line.length()).trim();
+					pictureQueue.put(new Picture(newName, tags));
+					if (uploadJournal != null) {
+						uploadJournal.record(newName, UploadJournal.State.Queued);
 					}
-					// Look for the Camera Serial Number:
-					else if (line.startsWith(serialNumber_s)) {
-						serialNumber = line.substring(serialNumber_s.length(), line.length()).trim();
+					// Later shots of this trigger are timed from the previous one
+					trigger_ms = System.currentTimeMillis();
+				} else if (powerCycles != powerCycle) {
+					// The power was cut for another camera, so this shot is lost
+					log( "Capture interrupted by a power cycle", Log.Level.Warning );
+					break; // break out of the for loop
+				} else {
+					log( "Timeout waiting for file download!", Log.Level.Warning );
+					captureTimedOut();
+					TimeoutListener listener = timeoutListener;
+					if (listener != null) {
+						listener.captureTimedOut(this, powerCycle);
 					}
+					break; // break out of the for loop
 				}
 			}
 		} catch (Exception e) {
-			log("Error --summary\n" + e.toString(), Log.Level.Error);
+			log("Error capture-image-and-download\n" + e.toString(), Log.Level.Error);
 		}
 	}
 
 	/** 
-	 * captureImageAndDownload<P>
-	 * This method executes a gphoto2 command.
+	 * captureFinished<P>
+	 * This helper method records the time from trigger to file ready.
 	 */
-	private void captureImageAndDownload(Runtime rt, String subEpc) {
-		try {
-			// Send the gphoto2 command
-			log("gphoto2 --capture-image-and-download -F=" + shotsPerTrigger + " -I=1", Log.Level.Debug);
-			rt.exec("gphoto2 --capture-image-and-download -F=" + shotsPerTrigger + " -I=1");
-			// Now wait for the file(s) to download
-        	for (Integer i = 0; i < Integer.parseInt(shotsPerTrigger); i++) {
-			    String fileName = defaultName + i + ".jpg";
-			    File file = new File(fileName);
-			    int wait = WAIT_FOR_FILE;
-			    while (!file.exists()) {
-					Thread.sleep(WAIT_INTERVAL);
-					wait--;
-		    		if (wait <= 0) { break; }
-			    }
-			    // Queue the filename for upload if it exists
-			    if (file.exists()) {
-					log("Received " + fileName, Log.Level.Debug);
-				    Long timeStamp = new Date().getTime();
-				    // Rename the file
-				    String newName = subEpc + "-" + timeStamp + ".jpg";
-					Runtime.getRuntime().exec("mv " + fileName + " " + newName);
-					Thread.sleep(250);
-					pictureQueue.put(newName);
-					Thread.sleep(1000);
-			    } else {
-	    			log( "Timeout waiting for file download!", Log.Level.Warning );
-	    			// Cycle power on the camera
-    				enablePower(false);
-					Thread.sleep(1000);
-    				enablePower(true);
-					Thread.sleep(6000);
-					pictureQueue.put(TIMEOUT);
-	    			log( "Camera Ready", Log.Level.Information );
-	    			break; // break out of the for loop
-			    }				        		
-        	}
-			log("gphoto2 --delete-all-files", Log.Level.Debug);
-			rt.exec("gphoto2 --delete-all-files");
-			Thread.sleep(1000);
-		} catch (Exception e) {
-			log("Error --capture-image-and-download\n" + e.toString(), Log.Level.Error);
+	private synchronized void captureFinished(long latency_ms) {
+		captureCount++;
+		totalCaptureLatency_ms += latency_ms;
+		if (latency_ms > maxCaptureLatency_ms) {
+			maxCaptureLatency_ms = latency_ms;
 		}
 	}
 
+	/** 
+	 * busyStarted<P>
+	 * This helper method marks the camera busy and starts its busy clock.
+	 */
+	private synchronized void busyStarted() {
+		busy.set(true);
+		busyStart_ms = System.currentTimeMillis();
+	}
+
+	/** 
+	 * busyFinished<P>
+	 * This helper method adds to the busy time and marks the camera idle
+	 * unless another command is already queued.
+	 */
+	private synchronized void busyFinished() {
+		busyTime_ms += System.currentTimeMillis() - busyStart_ms;
+		busy.set(!commandQueue.isEmpty());
+	}
+
+	/** 
+	 * setIdleListener<P>
+	 * This method sets what is run on the camera worker thread each
+	 * time the camera becomes idle.
+	 * @param listener_ The listener, or null for none
+	 */
+	public void setIdleListener( Runnable listener_ ) {
+		idleListener = listener_;
+	}
+
+	/** 
+	 * getUtilization<P>
+	 * This method returns the fraction of the time since the camera was
+	 * created that it has spent carrying out commands.
+	 * @return The utilization, 0 to 1
+	 */
+	public synchronized double getUtilization() {
+		long busyTime = busyTime_ms;
+		if (busy.get()) {
+			busyTime += System.currentTimeMillis() - busyStart_ms;
+		}
+		long elapsed = System.currentTimeMillis() - created_ms;
+		return (elapsed > 0) ? (double)busyTime / elapsed : 0.0;
+	}
+
+	/** 
+	 * countDroppedTrigger<P>
+	 * This method counts a trigger this camera could not take because
+	 * it was busy.
+	 */
+	public synchronized void countDroppedTrigger() {
+		droppedTriggers++;
+	}
+
+	/** 
+	 * getDroppedTriggers<P>
+	 * This method returns the number of triggers this camera could not
+	 * take because it was busy.
+	 * @return The number of triggers
+	 */
+	public synchronized long getDroppedTriggers() {
+		return droppedTriggers;
+	}
+
+	/** 
+	 * getName<P>
+	 * This method returns the name of the camera.
+	 * @return The name, or null for the only camera
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/** 
+	 * getPort<P>
+	 * This method returns the gphoto2 port of the camera.
+	 * @return The port, or null for the first camera found
+	 */
+	public String getPort() {
+		return port;
+	}
+
+	/** 
+	 * exposed<P>
+	 * This helper method adds a trigger to exposure time to its
+	 * exponentially weighted mean.
+	 */
+	private synchronized void exposed(long latency_ms) {
+		if (exposureLatency_ms < 0) {
+			exposureLatency_ms = latency_ms;
+		} else {
+			exposureLatency_ms += Math.round(EXPOSURE_ALPHA * (latency_ms - exposureLatency_ms));
+		}
+	}
+
+	/** 
+	 * getExposureLatency<P>
+	 * This method returns the smoothed time from trigger to exposure.
+	 * @return The latency in milliseconds, or -1 until a shot is timed
+	 */
+	public synchronized long getExposureLatency() {
+		return exposureLatency_ms;
+	}
+
+	/** 
+	 * captureTimedOut<P>
+	 * This helper method counts a photo that never arrived.
+	 */
+	private synchronized void captureTimedOut() {
+		captureTimeouts++;
+	}
+
+	/** 
+	 * getCaptureCount<P>
+	 * This method returns the number of photos downloaded.
+	 * @return The number of photos
+	 */
+	public synchronized long getCaptureCount() {
+		return captureCount;
+	}
+
+	/** 
+	 * getCaptureTimeouts<P>
+	 * This method returns the number of photos that were not downloaded
+	 * in time.
+	 * @return The number of timeouts
+	 */
+	public synchronized long getCaptureTimeouts() {
+		return captureTimeouts;
+	}
+
+	/** 
+	 * getMeanCaptureLatency<P>
+	 * This method returns the mean time from trigger to file ready.
+	 * @return The mean latency in milliseconds
+	 */
+	public synchronized long getMeanCaptureLatency() {
+		return (captureCount > 0) ? totalCaptureLatency_ms / captureCount : 0;
+	}
+
+	/** 
+	 * getMaxCaptureLatency<P>
+	 * This method returns the longest time from trigger to file ready.
+	 * @return The longest latency in milliseconds
+	 */
+	public synchronized long getMaxCaptureLatency() {
+		return maxCaptureLatency_ms;
+	}
+
+	/** 
+	 * shutdown<P>
+	 * This method stops the gphoto2 shell.
+	 */
+	public void shutdown() {
+		shell.stop();
+	}
+
 	/** 
 	 * log<P>
 	 * This method is used for making log entries.
 	 */
 	private void log(String entry, Log.Level logLevel) {
+		if (name != null) {
+			entry = "Camera " + name + ": " + entry;
+		}
 		if (logObject != null) {
 			logObject.makeEntry(entry, logLevel);
 		} else {
@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * CameraPool Object
+ * 
+ * <P>The cameras of a reader. Each camera has its own command queue and
+ * worker, so a trigger goes to a camera that is free rather than waiting
+ * behind a capture in progress. A camera may be given a set of antennas,
+ * in which case it only takes triggers from tags seen on them. Otherwise
+ * a trigger goes to the least used of the free cameras.
+ * <P>The cameras share one power relay, so powering one powers them all.
+ * When a photo is not downloaded in time the pool stops every gphoto2
+ * shell and cycles the relay once. The shots the other cameras had in
+ * progress are lost, and do not cause power cycles of their own.
+ *  
+ * @author Encinitas Labs
+ * @version 0.1
+ */
+public class CameraPool {
+
+	public final String TIMEOUT = "timeout";
+	private final long POWER_OFF_MS = 1000;
+	private final long POWER_UP_MS = 6000;
+	private final List<Camera> cameras = new ArrayList<Camera>();
+	private final LinkedBlockingQueue<Picture> pictureQueue;
+	private final Log logObject;
+	// Held while the relay is switched, apart from the trigger path
+	private final Object powerLock = new Object();
+	// Bit n is set if the camera takes triggers from antenna n, 0 for all
+	private final List<Long> antennaMasks = new ArrayList<Long>();
+	private long droppedTriggers = 0;
+
+	/** 
+	 * CameraPool<P>
+	 * Class Constructor
+	 * @param cameraConfigs One entry per camera, each the gphoto2 port
+	 * or serial number followed by an optional comma separated list of
+	 * antennas. With no entries the pool has one camera, the first found.
+	 * @param pictureQueue The queue downloaded photos are put on
+	 * @param logObject The log
+	 */
+	public CameraPool( List<String[]> cameraConfigs, LinkedBlockingQueue<Picture> pictureQueue_, Log logObject_ ) {
+		pictureQueue = pictureQueue_;
+		logObject = logObject_;
+		if (cameraConfigs.isEmpty()) {
+			cameras.add(new Camera(pictureQueue, logObject));
+			antennaMasks.add(0L);
+		}
+		for (String[] config : cameraConfigs) {
+			String name = Integer.toString(cameras.size() + 1);
+			cameras.add(new Camera(name, config[0], pictureQueue, logObject));
+			long mask = 0;
+			if (config.length > 1) {
+				for (String antenna : config[1].split(",")) {
+					mask |= 1L << Integer.parseInt(antenna.trim());
+				}
+			}
+			antennaMasks.add(mask);
+		}
+		Camera.TimeoutListener timeoutListener = new Camera.TimeoutListener() {
+			@Override
+			public void captureTimedOut(Camera camera, int powerCycle) {
+				recoverFromTimeout(camera, powerCycle);
+			}
+		};
+		for (Camera camera : cameras) {
+			camera.setTimeoutListener(timeoutListener);
+		}
+	}
+
+	/** 
+	 * getCameras<P>
+	 * This method returns the cameras in the pool.
+	 * @return The cameras
+	 */
+	public List<Camera> getCameras() {
+		return Collections.unmodifiableList(cameras);
+	}
+
+	/** 
+	 * enablePower<P>
+	 * This method returns if we successfully switched the power relay
+	 * shared by the cameras. The output is active low.
+	 * @return A Boolean.
+	 */
+	public Boolean enablePower( Boolean enable ) {
+		synchronized (powerLock) {
+			if (!enable) {
+				setPowered(false);
+			}
+			if (!switchRelay(enable)) {
+				return false;
+			}
+			if (enable) {
+				setPowered(true);
+			}
+			return true;
+		}
+	}
+
+	/** 
+	 * setUploadJournal<P>
+	 * This method sets the journal that downloaded photos are recorded in.
+	 * @param uploadJournal The upload journal
+	 */
+	public void setUploadJournal( UploadJournal uploadJournal ) {
+		for (Camera camera : cameras) {
+			camera.setUploadJournal(uploadJournal);
+		}
+	}
+
+	/** 
+	 * setTagResolver<P>
+	 * This method sets what finds the tags to upload with each photo.
+	 * @param tagResolver The resolver
+	 */
+	public void setTagResolver( Camera.TagResolver tagResolver ) {
+		for (Camera camera : cameras) {
+			camera.setTagResolver(tagResolver);
+		}
+	}
+
+	/** 
+	 * setImageFormat<P>
+	 * This method sets the image format of every camera.
+	 * @param format The image format
+	 */
+	public void setImageFormat( String format ) {
+		for (Camera camera : cameras) {
+			camera.setImageFormat(format);
+		}
+	}
+
+	/** 
+	 * setShotsPerTrigger<P>
+	 * This method sets the number of shots every camera takes per trigger.
+	 * @param shots The number of shots
+	 */
+	public void setShotsPerTrigger( String shots ) {
+		for (Camera camera : cameras) {
+			camera.setShotsPerTrigger(shots);
+		}
+	}
+
+	/** 
+	 * requestCameraInfo<P>
+	 * This method asks every camera for its make, model and serial number.
+	 */
+	public void requestCameraInfo() {
+		for (Camera camera : cameras) {
+			camera.requestCameraInfo();
+		}
+	}
+
+	/** 
+	 * updateImageFormat<P>
+	 * This method sends the image format to every camera.
+	 */
+	public void updateImageFormat() {
+		for (Camera camera : cameras) {
+			camera.updateImageFormat();
+		}
+	}
+
+	/** 
+	 * setIdleListener<P>
+	 * This method sets what is run each time one of the cameras becomes
+	 * idle, on that camera's worker thread.
+	 * @param listener The listener, or null for none
+	 */
+	public void setIdleListener( Runnable listener ) {
+		for (Camera camera : cameras) {
+			camera.setIdleListener(listener);
+		}
+	}
+
+	/** 
+	 * isBusy<P>
+	 * This method returns True if no camera that takes triggers from
+	 * the antenna is free.
+	 * @param antenna The antenna the tag was seen on, or -1 for any
+	 * @return A Boolean.
+	 */
+	public Boolean isBusy( int antenna ) {
+		return (selectCamera(antenna) == null);
+	}
+
+	/** 
+	 * takePhoto<P>
+	 * This method hands a trigger to the least used free camera that
+	 * takes triggers from the antenna. If they are all busy the trigger
+	 * is counted as dropped against each of them.
+	 * @param tagInfo The tags to record with the photo
+	 * @param antenna The antenna the tag was seen on
+	 * @return True if a camera took the trigger
+	 */
+	public Boolean takePhoto( String tagInfo, int antenna ) {
+		Camera camera = selectCamera(antenna);
+		if (camera == null) {
+			countDroppedTrigger(antenna);
+			return false;
+		}
+		return camera.takePhoto(tagInfo);
+	}
+
+	/** 
+	 * countDroppedTrigger<P>
+	 * This method counts a trigger that no camera could take, against
+	 * each camera that takes triggers from the antenna.
+	 * @param antenna The antenna the tag was seen on
+	 */
+	public void countDroppedTrigger( int antenna ) {
+		for (int i = 0; i < cameras.size(); i++) {
+			if (servesAntenna(i, antenna)) {
+				cameras.get(i).countDroppedTrigger();
+			}
+		}
+		synchronized (this) {
+			droppedTriggers++;
+		}
+	}
+
+	/** 
+	 * getDroppedTriggers<P>
+	 * This method returns the number of triggers no camera could take.
+	 * @return The number of triggers
+	 */
+	public synchronized long getDroppedTriggers() {
+		return droppedTriggers;
+	}
+
+	/** 
+	 * getExposureLatency<P>
+	 * This method returns the mean of the smoothed trigger to exposure
+	 * times of the cameras that have timed a shot.
+	 * @return The latency in milliseconds, or -1 until a shot is timed
+	 */
+	public long getExposureLatency() {
+		long total = 0;
+		int count = 0;
+		for (Camera camera : cameras) {
+			long latency = camera.getExposureLatency();
+			if (latency >= 0) {
+				total += latency;
+				count++;
+			}
+		}
+		return (count > 0) ? total / count : -1;
+	}
+
+	/** 
+	 * getCaptureCount<P>
+	 * This method returns the number of photos downloaded by all cameras.
+	 * @return The number of photos
+	 */
+	public long getCaptureCount() {
+		long count = 0;
+		for (Camera camera : cameras) {
+			count += camera.getCaptureCount();
+		}
+		return count;
+	}
+
+	/** 
+	 * getCaptureTimeouts<P>
+	 * This method returns the number of photos that were not downloaded
+	 * in time by all cameras.
+	 * @return The number of timeouts
+	 */
+	public long getCaptureTimeouts() {
+		long count = 0;
+		for (Camera camera : cameras) {
+			count += camera.getCaptureTimeouts();
+		}
+		return count;
+	}
+
+	/** 
+	 * shutdown<P>
+	 * This method stops the gphoto2 shell of every camera.
+	 */
+	public void shutdown() {
+		for (Camera camera : cameras) {
+			camera.shutdown();
+		}
+	}
+
+	/** 
+	 * recoverFromTimeout<P>
+	 * This method power cycles all the cameras after one of them timed
+	 * out, unless the power has already been cycled since its shot
+	 * began. It runs on the worker of the camera that timed out, and
+	 * the cameras are busy until they have powered up again. The timeout
+	 * marker is then queued, which ends the tag events so the lost shots
+	 * can be triggered again.
+	 */
+	private void recoverFromTimeout( Camera camera, int powerCycle ) {
+		synchronized (powerLock) {
+			if (camera.getPowerCycles() != powerCycle) {
+				return;
+			}
+			log("Power cycling all cameras", Log.Level.Warning);
+			// Every shell is stopped, so shots in progress give up now
+			setPowered(false);
+			try {
+				switchRelay(false);
+				Thread.sleep(POWER_OFF_MS);
+				switchRelay(true);
+				Thread.sleep(POWER_UP_MS);
+				setPowered(true);
+				pictureQueue.put(new Picture(TIMEOUT, null));
+				log( "Cameras Ready", Log.Level.Information );
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/** 
+	 * setPowered<P>
+	 * This helper method tells every camera whether it has power.
+	 */
+	private void setPowered( boolean powered ) {
+		for (Camera camera : cameras) {
+			camera.setPowered(powered);
+		}
+	}
+
+	/** 
+	 * switchRelay<P>
+	 * This helper method switches the power relay shared by the cameras.
+	 * The output is active low.
+	 */
+	private boolean switchRelay( boolean on ) {
+		try {
+			Runtime.getRuntime().exec(on ? "./camera_power.sh 0" : "./camera_power.sh 1");
+			log(on ? "Camera power ON" : "Camera power OFF", Log.Level.Information);
+			return true;
+		} catch (IOException e) {
+			log( "Unable to enable camera power!", Log.Level.Error );
+			return false;
+		}
+	}
+
+	/** 
+	 * selectCamera<P>
+	 * This helper method returns the least used free camera that takes
+	 * triggers from the antenna, or null if there is none.
+	 */
+	private Camera selectCamera( int antenna ) {
+		Camera selected = null;
+		double lowest = Double.MAX_VALUE;
+		for (int i = 0; i < cameras.size(); i++) {
+			Camera camera = cameras.get(i);
+			if (servesAntenna(i, antenna) && !camera.isBusy()) {
+				double utilization = camera.getUtilization();
+				if (utilization < lowest) {
+					lowest = utilization;
+					selected = camera;
+				}
+			}
+		}
+		return selected;
+	}
+
+	/** 
+	 * servesAntenna<P>
+	 * This helper method returns true if a camera takes triggers from
+	 * the antenna.
+	 */
+	private boolean servesAntenna( int index, int antenna ) {
+		long mask = antennaMasks.get(index);
+		return ((mask == 0) || (antenna < 0) || (antenna > 63) || ((mask & (1L << antenna)) != 0));
+	}
+
+	/** 
+	 * log<P>
+	 * This method is used for making log entries.
+	 */
+	private void log(String entry, Log.Level logLevel) {
+		if (logObject != null) {
+			logObject.makeEntry(entry, logLevel);
+		} else {
+			System.out.println(entry);
+		}
+	}
+}
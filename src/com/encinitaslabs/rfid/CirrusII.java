@@ -30,20 +30,31 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 import com.encinitaslabs.rfid.cmd.CmdAntennaPortConf;
 import com.encinitaslabs.rfid.cmd.CmdHead;
 import com.encinitaslabs.rfid.cmd.CmdReaderModuleConfig;
-import com.encinitaslabs.rfid.cmd.CmdReaderModuleFirmwareAccess;
 import com.encinitaslabs.rfid.cmd.CmdTagAccess;
 import com.encinitaslabs.rfid.cmd.CmdTagProtocol;
 import com.encinitaslabs.rfid.cmd.Llcs;
 import com.encinitaslabs.rfid.cmd.MtiCmd;
+import com.encinitaslabs.rfid.cmd.MtiPacketDispatcher;
+import com.encinitaslabs.rfid.comms.CommandPipeline;
+import com.encinitaslabs.rfid.comms.PacketPool;
+import com.encinitaslabs.rfid.comms.ReaderClient;
 import com.encinitaslabs.rfid.comms.SerialComms;
 import com.encinitaslabs.rfid.utils.Crc16;
+import com.encinitaslabs.rfid.utils.HyperLogLog;
+import com.encinitaslabs.rfid.utils.Scheduler;
+import com.encinitaslabs.rfid.utils.SpscRingBuffer;
+import com.encinitaslabs.rfid.utils.TimerWheel;
 
 /**
  * CirrusII Object
@@ -78,6 +89,7 @@ public class CirrusII {
 	private ArrayList<AntennaPort> antennaPorts = null;
 	private String profileFilename = "Default.conf";
 	private Llcs llcs = null;
+	private ReaderClient readerClient = null;
 	private Byte testModeCommandSelect = 0;
 	private Boolean testModeResponsePending = false;
 	private Integer numPhysicalPorts = 2;
@@ -87,18 +99,58 @@ public class CirrusII {
 	private Integer rfidBaudRate = 115200;
 	private String moduleType = "RU861";
 	private LinkedBlockingQueue<byte[]> serialCmdQueue = null;
-	private LinkedBlockingQueue<byte[]> serialRspQueue = null;
-	private LinkedBlockingQueue<RfidState> nextRfidState = null;
+	private SpscRingBuffer<byte[]> serialRspQueue = null;
+	private Integer rspQueueSize = 1024;
+	private SpscRingBuffer.OverflowPolicy rspQueueOverflow = SpscRingBuffer.OverflowPolicy.Block;
+	private SpscRingBuffer.WaitStrategy rspQueueWait = SpscRingBuffer.WaitStrategy.Park;
+	private CommandPipeline commandPipeline = null;
+	private Integer cmdPipelineWindow = CommandPipeline.DEFAULT_WINDOW;
+	private Long cmdTimeout_ms = CommandPipeline.DEFAULT_TIMEOUT_MS;
+	private CommandPipeline.Listener cmdTimeoutListener = null;
+	private final int CMD_TIMEOUT_LIMIT = 3;
+	private MtiPacketDispatcher packetDispatcher = null;
+	private PacketPool packetPool = null;
+	private Integer packetPoolSlots = PacketPool.DEFAULT_SLOTS;
 	// Tag Data parameters
-	private ConcurrentHashMap<String, TagData> tagEvents = null;
-	private ConcurrentHashMap<String, TagData> tagDatabase = null;
+	private TagTable tagTable = null;
+	private Integer tagDatabaseSize = TagTable.DEFAULT_MAX_SIZE;
+	private Integer ageThreshold_sec = 86400;
+	private HyperLogLog uniqueTags = null;
+	private final int UNIQUE_TAG_PRECISION = 12;
+	private TagData tagRead = new TagData();
+	private TimerWheel tagTimers = null;
+	private TimerWheel.Listener tagTimerListener = null;
+	private final int TAG_TIMER_SLOTS = 1024;
+	private final int TRIGGER_HOLDOFF = 0;
+	private final int EVENT_EXPIRY = 1;
 	private Boolean tagPresent = false;
-	private Boolean autoRepeat = false;
+	private InventoryScheduler inventoryScheduler = null;
+	private volatile MotionEngine motionEngine = null;
+	private MotionEngine.Listener motionListener = null;
+	private Integer motionThreshold_dB = 12;
+	private Long departureTimeout_ms = MotionEngine.DEFAULT_DEPARTURE_MS;
+	private VelocityEstimator velocityEstimator = null;
+	private boolean approachTrigger = false;
+	private Float approachSpeed_mps = 0.1f;
+	private Integer numberOfRecedingHeld = 0;
+	private PredictiveTrigger predictiveTrigger = null;
+	private boolean usePredictiveTrigger = false;
+	private Long triggerMaxHold_ms = PredictiveTrigger.DEFAULT_MAX_HOLD_MS;
+	private TriggerQueue triggerQueue = null;
+	private TriggerQueue.Handler triggerHandler = null;
+	private Integer triggerQueueSize = TriggerQueue.DEFAULT_SIZE;
+	private Long triggerQueueDeadline_ms = TriggerQueue.DEFAULT_DEADLINE_MS;
 	// Fotaflo parameters
-	private final int MIN_LENGTH_FILENAME = 20;
-	private LinkedBlockingQueue<String> pictureQueue = null;
+	private LinkedBlockingQueue<Picture> pictureQueue = null;
+	private UploadJournal uploadJournal = null;
+	private String uploadJournalFilename = UploadJournal.DEFAULT_FILENAME;
+	private Long uploadBackoffMin_ms = UploadJournal.DEFAULT_MIN_BACKOFF_MS;
+	private Long uploadBackoffMax_ms = UploadJournal.DEFAULT_MAX_BACKOFF_MS;
+	private Integer pictureQueueSize = 32;
+	private Integer uploadConcurrency = Fotaflo.DEFAULT_CONCURRENCY;
 	private Fotaflo fotaflo = null;
-	private Camera camera = null;
+	private CameraPool cameraPool = null;
+	private List<String[]> cameraConfigs = new ArrayList<String[]>();
 	private String username = null;
 	private String password = null;
 	private String photoUrl = null;
@@ -109,11 +161,15 @@ public class CirrusII {
 	private Integer epcLast = null;
 	private Integer epcFirst = null;
 	private Integer triggersPerEvent = 3;
-	private Integer triggerInterval_sec = 5;
-	private Integer eventTimeout_sec = 900;
+	private Integer triggerInterval_ms = 5000;
+	private Integer eventTimeout_ms = 900000;
+	private SightingLog sightingLog = null;
+	private Integer sightingLogSize = SightingLog.DEFAULT_CAPACITY;
+	private Integer photoTagWindow_ms = 2000;
+	private Integer photoTagMinRssi = (int)Short.MIN_VALUE;
+	private Integer maxPhotoTags = 32;
 	// Statistics
 	private Integer numberOfTriggers = 0;
-	private Integer numberOfUploads = 0;
 	private Integer numberOfUnique = 0;
 	// Local parameters
 	private static final String apiVersionString = "C2P-0.9.18";
@@ -125,23 +181,28 @@ public class CirrusII {
 	private String sipVersionString = " ";
 	private LedControl led = null;
 	private Boolean useCLI = true;
-	private Integer ticTimerCount = 0;
+	private long startTime_ms = 0;
+	private Scheduler scheduler = null;
+	// The 100 ms tasks have their own thread so slow housekeeping cannot delay them
+	private Scheduler tickScheduler = null;
+	// Fires planned triggers, kept apart so no periodic task can make them late
+	private Scheduler triggerScheduler = null;
 	private String logFilename = null;
 	private Log.Level logLevel = Log.Level.Error;
+	private Long logMaxBytes = Log.DEFAULT_MAX_BYTES;
+	private Integer logBackups = Log.DEFAULT_BACKUPS;
 	private Log log = null;
 	private SelfTest selfTest = null;
 //	private boolean motionFlag = false;
 	private boolean errorFlag = false;
 	// Timeout and retry parameters
-	private final Integer ticTime_ms = 1000;
-	private final Integer checkForFailedUploadsInterval = 1800;
-	private final Integer readerResetCount_tics = 10;
-	private final Integer selfTestInterval = 15;
-	private Integer checkForFailedUploadsCounter = 0;
-	private Integer selfTestCounter = 0;
-	private Boolean checkForFailedUploads = false;
-	private Integer readerResetCounter = 0;
-	private Integer readerDelayCounter = 0;
+	private final Integer tagTimerTick_ms = 100;
+	private final Integer cmdExpiryPeriod_ms = 100;
+	private final Integer housekeepingPeriod_ms = 1000;
+	private final Integer uploadRetryPeriod_ms = 1000;
+	private final Integer selfTestPeriod_ms = 15000;
+	private final Integer readerReset_ms = 10000;
+	private Scheduler.Task resetWait = null;
 	private Double latitude = 0.0;
 	private Double longitude = 0.0;
 	
@@ -197,31 +258,106 @@ public class CirrusII {
 		}
 		
 		// Create the log object that we need to have
-		log = new Log(logFilename, logLevel, useCLI);
+		log = new Log(logFilename, logLevel, useCLI, logMaxBytes, logBackups);
 		log.makeEntry( "Cirrus-II Photo, version " + apiVersionString, logLevel);
 		selfTest = new SelfTest(log);
 		
 		// Initialize the various queues
-		tagEvents = new ConcurrentHashMap<String, TagData>();
-		tagDatabase = new ConcurrentHashMap<String, TagData>();
-		pictureQueue = new LinkedBlockingQueue<String>();
+		tagTable = new TagTable(TagTable.DEFAULT_CAPACITY, tagDatabaseSize);
+		sightingLog = new SightingLog(sightingLogSize);
+		velocityEstimator = new VelocityEstimator(tagTable.getCapacity());
+		tagTable.addCapacityListener(velocityEstimator);
+		uniqueTags = new HyperLogLog(UNIQUE_TAG_PRECISION);
+		tagTimers = new TimerWheel(TAG_TIMER_SLOTS, TagTable.DEFAULT_CAPACITY);
+		tagTimerListener = new TimerWheel.Listener() {
+			@Override
+			public void expired(int row, int kind, long deadline) {
+				processTagTimer(row, kind, deadline);
+			}
+		};
+		pictureQueue = new LinkedBlockingQueue<Picture>(pictureQueueSize);
 		serialCmdQueue = new LinkedBlockingQueue<byte[]>();
-		serialRspQueue = new LinkedBlockingQueue<byte[]>();
-		nextRfidState = new LinkedBlockingQueue<RfidState>();
+		serialRspQueue = new SpscRingBuffer<byte[]>(rspQueueSize, rspQueueOverflow, rspQueueWait);
+		commandPipeline = new CommandPipeline(cmdPipelineWindow, cmdTimeout_ms);
+		cmdTimeoutListener = new CommandPipeline.Listener() {
+			@Override
+			public void commandTimedOut(CmdHead cmdHead, long elapsed_ms) {
+				processCommandTimeout(cmdHead, elapsed_ms);
+			}
+		};
+		packetPool = new PacketPool(packetPoolSlots);
+		// Packets the response queue drops are recycled by the serial reader
+		serialRspQueue.setDropListener(new SpscRingBuffer.DropListener<byte[]>() {
+			@Override
+			public void dropped(byte[] packet) {
+				packetPool.recycle(packet);
+			}
+		});
+		startTime_ms = System.currentTimeMillis();
+		scheduler = new Scheduler("Timer tasks");
+		tickScheduler = new Scheduler("Tick tasks");
+		triggerScheduler = new Scheduler("Trigger scheduler");
+		inventoryScheduler = new InventoryScheduler(new InventoryScheduler.Listener() {
+			@Override
+			public void startInventory() {
+				// The reset handling restarts the inventory once the module is back
+				if (rfidState == RfidState.WaitingForReset) {
+					return;
+				}
+				try {
+					sendInventoryRequest();
+				} catch (InterruptedException e) {
+					log.makeEntry("Unable to queue serial command\n" + e.toString(), Log.Level.Error);
+				}
+			}
+		});
 		
 		// Fotaflo specific objects
-		camera = new Camera(pictureQueue, log);
-		fotaflo = new Fotaflo(deviceId, location);
+		cameraPool = new CameraPool(cameraConfigs, pictureQueue, log);
+		// Reads that find the cameras busy wait here for one to be free
+		triggerQueue = new TriggerQueue(triggerQueueSize);
+		triggerHandler = new TriggerQueue.Handler() {
+			@Override
+			public boolean trigger(int row, int antenna) {
+				return !cameraPool.isBusy(antenna) && triggerCamera(row, antenna);
+			}
+		};
+		cameraPool.setIdleListener(new Runnable() {
+			public void run() {
+				drainTriggerQueue();
+			}
+		});
+		fotaflo = new Fotaflo(deviceId, location, uploadConcurrency);
+		// Photos left over from last time are retried by the upload journal
+		uploadJournal = new UploadJournal(uploadJournalFilename, uploadBackoffMin_ms, uploadBackoffMax_ms, log);
+		try {
+			int leftovers = uploadJournal.open("*-*.{jpg,cr2}");
+			if (leftovers > 0) {
+				log.makeEntry(leftovers + " photos waiting for upload", Log.Level.Information);
+			}
+		} catch (IOException e) {
+			log.makeEntry("Unable to open upload journal\n" + e.toString(), Log.Level.Error);
+		}
+		cameraPool.setUploadJournal(uploadJournal);
+		// Tags are resolved as each photo is downloaded, while the reads are still logged
+		cameraPool.setTagResolver(new Camera.TagResolver() {
+			@Override
+			public String getPhotoTags(String subEpc, long time_ms) {
+				return getTagsNear(subEpc, time_ms);
+			}
+		});
+		fotaflo.setUploadJournal(uploadJournal);
 		fotaflo.setLogObject(log);
 		fotaflo.setCredentials(username, password);
 		fotaflo.setUploadUrl(photoUrl);
 		// Initially turn the power off
-		camera.enablePower(false);
-		camera.setImageFormat(imageFormat);
-		camera.setShotsPerTrigger(shotsPerTrigger);
+		cameraPool.enablePower(false);
+		cameraPool.setImageFormat(imageFormat);
+		cameraPool.setShotsPerTrigger(shotsPerTrigger);
 
 		// SERIAL PORT INITIALIZATION
-		serialComms = new SerialComms(serialRspQueue, serialDebug);
+		registerPacketHandlers();
+		serialComms = new SerialComms(serialRspQueue, packetPool, serialDebug);
 		serialComms.setLogObject(log);
 		// This could throw an exception
 		try {
@@ -240,6 +376,7 @@ public class CirrusII {
 
 		// RFID MODULE INITIALIZATION
 		llcs = new Llcs();
+		readerClient = new ReaderClient(llcs, serialCmdQueue);
 		try {
 			requestReaderInformation();
 			profile = new InventoryProfile(profileFilename);
@@ -255,6 +392,20 @@ public class CirrusII {
 		} catch (Exception e) {
 			log.makeEntry("Unable to load profile\n" + e.toString(), Log.Level.Error);
 		}
+		// Tag reads are tracked per virtual antenna port
+		motionListener = new MotionEngine.Listener() {
+			@Override
+			public void motionEvent(int row, int antenna, MotionEngine.Event event) {
+				processMotionEvent(row, antenna, event);
+			}
+		};
+		synchronized (tagTable) {
+			predictiveTrigger = new PredictiveTrigger(tagTable.getCapacity(), triggerMaxHold_ms);
+			tagTable.addCapacityListener(predictiveTrigger);
+			MotionEngine engine = new MotionEngine(antennaPorts.size(), tagTable.getCapacity(), motionThreshold_dB, departureTimeout_ms);
+			tagTable.addCapacityListener(engine);
+			motionEngine = engine;
+		}
 
 		if (useCLI) {
 			// LISTEN FOR INPUT FROM THE COMMAND LINE
@@ -284,8 +435,8 @@ public class CirrusII {
 				while ( true ) {
 					try {
 						// This method blocks until a file is available
-						String fileToUpload = pictureQueue.take();
-						associateFileWithTagsAndUpload(fileToUpload);
+						Picture picture = pictureQueue.take();
+						associateFileWithTagsAndUpload(picture);
 					} catch (Exception e) {
 						log.makeEntry("Error processing Command or Event\n" + e.toString(), Log.Level.Error);
 					}
@@ -298,27 +449,23 @@ public class CirrusII {
 		Thread serialcmdWorker = new Thread () {
 			public void run() {
 				while ( true ) {
-					if (rfidState == RfidState.Idle) {
-						try {
-							byte[] serialCmd = serialCmdQueue.take();
-							// Determine the command type
-							String commandType = MtiCmd.getCommandType(serialCmd[MtiCmd.TYPE_INDEX]);
-					    	log.makeEntry("Sending " + commandType, Log.Level.Debug);
-					    	// Change the serial state based on the command type
-							if (commandType.contains("Command")) {
-								setRfidState(RfidState.WaitingForResponse);
-							}
-							// Send the packet out the serial port
-							serialComms.serialWrite(serialCmd, serialCmd.length);
-						} catch (Exception e) {
-							log.makeEntry("Error processing Serial Command\n" + e.toString(), Log.Level.Error);
+					try {
+						byte[] serialCmd = serialCmdQueue.take();
+						// Determine the command type
+						MtiCmd.MtiPacketType commandType = MtiCmd.MtiPacketType.fromByte(serialCmd[MtiCmd.TYPE_INDEX]);
+						if (commandType == MtiCmd.MtiPacketType.Command) {
+							// Wait for room in the pipeline, then track the command
+							CmdHead cmdHead = MtiCmd.getCmdHead(serialCmd);
+							commandPipeline.beginCommand(cmdHead);
+							setRfidState(RfidState.WaitingForResponse);
 						}
-					} else {
-						try {
-							nextRfidState.take();
-						} catch (Exception e) {
-							log.makeEntry("Error processing Next RFID State\n" + e.toString(), Log.Level.Error);
+						if (log.isEnabled(Log.Level.Debug)) {
+							log.makeEntry("Sending " + commandType, Log.Level.Debug);
 						}
+						// Send the packet out the serial port
+						serialComms.serialWrite(serialCmd, serialCmd.length);
+					} catch (Exception e) {
+						log.makeEntry("Error processing Serial Command\n" + e.toString(), Log.Level.Error);
 					}
 				}
 			}
@@ -329,31 +476,23 @@ public class CirrusII {
 		Thread serialRspWorker = new Thread () {
 			public void run() {
 				while ( true ) {
+					byte[] nextResponse = null;
 					try {
-						byte[] nextResponse = serialRspQueue.take();
+						nextResponse = serialRspQueue.take();
 						processSerialResponse(nextResponse);
 					} catch (Exception e) {
 						log.makeEntry("Error processing Serial Response\n" + e.toString(), Log.Level.Error);
+					} finally {
+						// Hand the packet slot back to the serial reader
+						packetPool.release(nextResponse);
 					}
 				}
 			}
 		};
 		serialRspWorker.start();
 
-		// MANAGE THE TIC-TIMER
-		Thread timerWorker = new Thread () {
-			public void run() {
-				while ( true ) {
-					try {
-						Thread.sleep(ticTime_ms);
-					} catch (InterruptedException e) {
-						log.makeEntry("Error sleeping\n" + e.toString(), Log.Level.Error);
-					}
-					processTicTimer();
-				}
-			}
-		};
-		timerWorker.start();
+		// MANAGE THE PERIODIC TASKS
+		startTimerTasks();
 
 		// Give the user some help
 		if (useCLI) {
@@ -363,13 +502,34 @@ public class CirrusII {
 
 	/** 
 	 * requestReaderInformation<P>
-	 * This method requests Reader ID and FW version from the RFID module.
-	 * @throws InterruptedException 
+	 * This method requests the FW version and last error code from the
+	 * RFID module. Both queries are issued at once and their results
+	 * combined when the second one arrives.
 	 */
-	private void requestReaderInformation() throws InterruptedException {
-		// Request the FW version of the reader
-		byte[] cmd = llcs.getFirmwareVersion();
-		if (cmd != null) { serialCmdQueue.put(cmd); }
+	private void requestReaderInformation() {
+		CompletableFuture<String> version = readerClient.getFirmwareVersion();
+		CompletableFuture<Integer> lastError = readerClient.getError((byte)1);
+		version.thenAccept(new Consumer<String>() {
+			@Override
+			public void accept(String fwVersion) {
+				sipVersionString = fwVersion;
+			}
+		});
+		version.thenCombine(lastError, new BiFunction<String, Integer, String>() {
+			@Override
+			public String apply(String fwVersion, Integer errorCode) {
+				return "RFID Module Firmware Rev. = " + fwVersion + ", last error 0x" + Integer.toHexString(errorCode);
+			}
+		}).whenComplete(new BiConsumer<String, Throwable>() {
+			@Override
+			public void accept(String message, Throwable error) {
+				if (error != null) {
+					log.makeEntry("Unable to read RFID module information\n" + error.toString(), Log.Level.Warning);
+				} else {
+					log.makeEntry(message, Log.Level.Information);
+				}
+			}
+		});
 	}
 	
 	/** 
@@ -449,25 +609,129 @@ public class CirrusII {
 		}
 	}
 
+	/** 
+	 * registerPacketHandlers<P>
+	 * This method fills in the dispatch tables used by processSerialResponse.
+	 */
+	private void registerPacketHandlers() {
+		packetDispatcher = new MtiPacketDispatcher();
+
+		// Response packets to specific commands
+		packetDispatcher.setResponseHandler(CmdHead.RFID_EngGetTemperature, new MtiPacketDispatcher.Handler() {
+			public void handle(CmdHead cmdHead, byte[] dataBuffer) {
+				Short temperature = MtiCmd.getShort(dataBuffer, MtiCmd.RESP_DATA_INDEX + 1);
+				if (testModeCommandSelect.intValue() == 0) {
+					selfTest.setRfModuleTemp(Integer.toString(temperature));
+				} else {
+					selfTest.setAmbientTemp(Integer.toString(temperature));
+				}
+	    		setRfidState(RfidState.Idle);
+			}
+		});
+
+		// Packets by type
+		packetDispatcher.setPacketHandler(MtiCmd.MtiPacketType.Command, new MtiPacketDispatcher.Handler() {
+			public void handle(CmdHead cmdHead, byte[] dataBuffer) {
+				// We should never get a "command" from the module
+			}
+		});
+		packetDispatcher.setPacketHandler(MtiCmd.MtiPacketType.Response, new MtiPacketDispatcher.Handler() {
+			public void handle(CmdHead cmdHead, byte[] dataBuffer) {
+				// Correlate the Response with the command it answers
+				if (!commandPipeline.responseReceived(cmdHead)) {
+					log.makeEntry("Untracked Response to " + cmdHead, Log.Level.Debug);
+				}
+				// Check the status byte for an error
+				Byte status = dataBuffer[MtiCmd.STATUS_POS];
+				if (status != 0) {
+					log.makeEntry("MTI Command Error Code: " + status.toString(), Log.Level.Error);
+					sendClearError();
+				}
+				// Process the receipt of a Response packets
+				if (rfidState != RfidState.WaitingForResponse) {
+					log.makeEntry( "Received Response packet in the wrong state!", Log.Level.Warning);
+		    		setRfidState(RfidState.WaitingForResponse);
+				}
+				// Specific Response packet processing
+				if (testModeResponsePending) {
+					processTestModeResponses(cmdHead, dataBuffer);
+		    		setRfidState(RfidState.Idle);
+				} else if ((readerClient != null) && readerClient.complete(cmdHead, dataBuffer)) {
+					// A ReaderClient future was waiting for this Response
+		    		setRfidState(RfidState.Idle);
+				} else if (!packetDispatcher.dispatchResponse(cmdHead, dataBuffer)) {
+					// A Response packet from anything else
+		    		setRfidState(RfidState.Idle);
+				}
+			}
+		});
+		packetDispatcher.setPacketHandler(MtiCmd.MtiPacketType.Begin, new MtiPacketDispatcher.Handler() {
+			public void handle(CmdHead cmdHead, byte[] dataBuffer) {
+				// Do some packet processing here
+	    		setRfidState(RfidState.WaitingForEnd);
+				inventoryScheduler.roundStarted();
+			}
+		});
+		packetDispatcher.setPacketHandler(MtiCmd.MtiPacketType.Inventory, new MtiPacketDispatcher.Handler() {
+			public void handle(CmdHead cmdHead, byte[] dataBuffer) {
+				if (rfidState != RfidState.WaitingForEnd) {
+		    		setRfidState(RfidState.WaitingForEnd);
+				}
+				// Process the tag data
+				processInventoryResponse(dataBuffer);
+			}
+		});
+		packetDispatcher.setPacketHandler(MtiCmd.MtiPacketType.End, new MtiPacketDispatcher.Handler() {
+			public void handle(CmdHead cmdHead, byte[] dataBuffer) {
+				// Check the status word for an error
+				int status = MtiCmd.getCmdEndStatus(dataBuffer);
+				if (status != 0) {
+					selfTest.setMtiStatusCode(status);
+					log.makeEntry("MTI MAC Firmware Error Code: 0x" + Integer.toHexString(status), Log.Level.Error);
+					sendClearError();
+				}
+				// Return to idle state
+	    		setRfidState(RfidState.Idle);
+				// See if we need to continue to read tags
+				inventoryScheduler.roundEnded();
+			}
+		});
+		packetDispatcher.setPacketHandler(MtiCmd.MtiPacketType.Access, new MtiPacketDispatcher.Handler() {
+			public void handle(CmdHead cmdHead, byte[] dataBuffer) {
+				printTagAccessData(dataBuffer);
+			}
+		});
+		packetDispatcher.setPacketHandler(MtiCmd.MtiPacketType.Work, new MtiPacketDispatcher.Handler() {
+			public void handle(CmdHead cmdHead, byte[] dataBuffer) {
+				//
+			}
+		});
+	}
+
 	/** 
 	 * processSerialResponse<P>
 	 * This method parses a complete command received off the serial port.
 	 * @param dataBuffer A byte buffer containing the response.
 	 */
 	private void processSerialResponse( byte[] dataBuffer ) {
-		String responseType = MtiCmd.getCommandType(dataBuffer[MtiCmd.TYPE_INDEX]);
-		CmdHead response = MtiCmd.getCmdHead(dataBuffer);
+		MtiCmd.MtiPacketType responseType = MtiCmd.MtiPacketType.fromByte(dataBuffer[MtiCmd.TYPE_INDEX]);
 		selfTest.rfModuleCommActivity();
+		if (responseType == null) {
+	    	log.makeEntry("Unknown packet type!", Log.Level.Warning);
+			return;
+		}
 
 		// Log what we received
-		if (responseType.contains("Response")) {
-	    	log.makeEntry("Received " + response + " " + responseType, Log.Level.Debug);
+		if (!log.isEnabled(Log.Level.Debug)) {
+			// Skip building messages that would be discarded
+		} else if (responseType == MtiCmd.MtiPacketType.Response) {
+	    	log.makeEntry("Received " + MtiCmd.getCmdHead(dataBuffer) + " " + responseType, Log.Level.Debug);
 		} else {
 	    	log.makeEntry("Received " + responseType, Log.Level.Debug);							
 		}
 
 		// Check to see if this packet is corrupted
-		int packetLength = MtiCmd.getCommandLength(dataBuffer[MtiCmd.TYPE_INDEX]);
+		int packetLength = responseType.getLength();
 		if (!Crc16.check(dataBuffer, packetLength)) {
 	    	log.makeEntry("CRC failed!", Log.Level.Warning);
 	    	log.makeEntry( MtiCmd.byteArrayToString(dataBuffer, packetLength, true), Log.Level.Warning);
@@ -475,91 +739,7 @@ public class CirrusII {
 		}
 
 		// Process the incoming Serial Message based on type
-		if (responseType.contains("Command")) {
-			// We should never get a "command" from the module
-			
-		} else if (responseType.contains("Response")) {
-			// Check the status byte for an error
-			Byte status = dataBuffer[MtiCmd.STATUS_POS];
-			if (status != 0) {
-				log.makeEntry("MTI Command Error Code: " + status.toString(), Log.Level.Error);
-				sendClearError();
-			}
-			// Process the receipt of a Response packets
-			if (rfidState != RfidState.WaitingForResponse) {
-				log.makeEntry( "Received Response packet in the wrong state!", Log.Level.Warning);
-	    		setRfidState(RfidState.WaitingForResponse);
-			}
-			// Specific Response packet processing
-			if (response.name().contains("RFID_MacGetFirmwareVersion") && !testModeResponsePending) {
-				sipVersionString = CmdReaderModuleFirmwareAccess.RFID_MacGetFirmwareVersion.getVersion(dataBuffer);
-	    		setRfidState(RfidState.Idle);
-				
-			} else if (response.name().contains("RFID_EngGetTemperature") && !testModeResponsePending) {
-				Short temperature = MtiCmd.getShort(dataBuffer, MtiCmd.RESP_DATA_INDEX + 1);
-				if (testModeCommandSelect.intValue() == 0) {
-					selfTest.setRfModuleTemp(Integer.toString(temperature));
-				} else {
-					selfTest.setAmbientTemp(Integer.toString(temperature));
-				}
-	    		setRfidState(RfidState.Idle);
-
-			} else if (response.name().contains("RFID_MacGetError") && !testModeResponsePending) {
-				int errorCode = CmdReaderModuleFirmwareAccess.RFID_MacGetError.parseResponse(dataBuffer);
-				if (errorCode != 0) {
-					log.makeEntry( "Last MTI MAC Firmware Error Code: 0x" + Integer.toHexString(errorCode), Log.Level.Error);
-				}
-	    		setRfidState(RfidState.Idle);
-
-			} else if (testModeResponsePending) {
-				processTestModeResponses(response, dataBuffer);
-	    		setRfidState(RfidState.Idle);
-				
-			} else {
-				// A Response packet from anything else
-	    		setRfidState(RfidState.Idle);
-			}
-			
-		} else if (responseType.contains("Begin")) {
-			// Do some packet processing here
-    		setRfidState(RfidState.WaitingForEnd);			
-
-		} else if (responseType.contains("Inventory")) {
-			if (rfidState != RfidState.WaitingForEnd) {
-	    		setRfidState(RfidState.WaitingForEnd);
-			}
-			// Process the tag data
-			processInventoryResponse(dataBuffer);						
-			
-		} else if (responseType.contains("End")) {
-			// Check the status word for an error
-			int status = MtiCmd.getCmdEndStatus(dataBuffer);
-			if (status != 0) {
-				selfTest.setMtiStatusCode(status);
-				log.makeEntry("MTI MAC Firmware Error Code: 0x" + Integer.toHexString(status), Log.Level.Error);
-				sendClearError();
-			}
-			// Return to idle state
-    		setRfidState(RfidState.Idle);
-			// See if we need to continue to read tags
-			if (autoRepeat) {
-				readerDelayCounter = profile.getDefaultDelayTime() / ticTime_ms;
-				if (readerDelayCounter <= 0) {
-					try {
-						sendInventoryRequest();
-					} catch (InterruptedException e) {
-						log.makeEntry("Unable to queue serial command\n" + e.toString(), Log.Level.Error);
-					}									
-				}
-			}
-
-		} else if (responseType.contains("Access")) {
-			printTagAccessData(dataBuffer);
-
-		} else if (responseType.contains("Work")) {
-			//
-			
-		}		
+		packetDispatcher.dispatch(dataBuffer);
 	}
 
 	/** 
@@ -569,114 +749,350 @@ public class CirrusII {
 	 */
 	private void processInventoryResponse( byte[] dataBuffer ) {
 		// Extract the values of interest from the response buffer
-		TagData tagData = new TagData();
-		CmdTagProtocol.RFID_18K6CTagInventory.parseResponse(dataBuffer, false, tagData);
-		if (tagData.crcValid) {
+		TagData tagData = tagRead;
+		CmdTagProtocol.RFID_18K6CTagInventory.parseResponse(dataBuffer, tagData);
+		if (tagData.crcValid && (tagData.epcLength >= 0)) {
 			tagPresent = true;
 			if (testMode) {
 				// Test mode processing of tag data
-				System.out.println(tagData.epc);
+				System.out.println(MtiCmd.byteArrayToString(dataBuffer, tagData.epcOffset, tagData.epcLength, false));
 				return;
 			}
-			TagData oldData = tagEvents.get(tagData.epc);
-			boolean tryToTakePhoto = false;
-			// Tags not in the event database cause a photo
-			if (oldData == null) {
-				tryToTakePhoto = true;
-				oldData = tagData;
+			synchronized (tagTable) {
+				// Re-reads update the existing row in place
+				int row = tagTable.find(dataBuffer, tagData.epcOffset, tagData.epcLength);
+				if (row < 0) {
+					uniqueTags.add(dataBuffer, tagData.epcOffset, tagData.epcLength);
+					row = tagTable.findOrInsert(dataBuffer, tagData.epcOffset, tagData.epcLength);
+				}
+				tagTable.touch(row, tagTimers.getTime());
+				tagTable.update(row, tagData);
+				long now_ms = System.currentTimeMillis();
+				sightingLog.add(now_ms, tagTable.getEpc(row), tagData.rssi);
+				if (motionEngine != null) {
+					MotionEngine.Event event = motionEngine.update(row, tagTable.getEpc(row), tagData.antPort, now_ms, tagData.rssi, tagData.phase);
+					if (event != null) {
+						processMotionEvent(row, tagData.antPort, event);
+					}
+					predictiveTrigger.update(row, tagTable.getEpc(row), now_ms, tagData.rssi);
+				}
+				velocityEstimator.update(row, tagTable.getEpc(row), tagData.antPort, tagData.freqKHz, tagData.phase, now_ms);
+				// Tags not in an event, or in an event with shots left, cause a photo
+				boolean tryToTakePhoto = !tagTable.isInEvent(row);
+				if ((tagTable.getShotCount(row) < triggersPerEvent) && (tagTable.getTriggerDeadline(row) == 0)) {
+					tryToTakePhoto = true;
+				}
+				// Hold off while the tag is known not to be approaching
+				if (tryToTakePhoto && approachTrigger && !isApproaching(row, now_ms)) {
+					tryToTakePhoto = false;
+					numberOfRecedingHeld++;
+				}
+				// If we should take photo, queue it unless a camera for the antenna is ready
+				if (tryToTakePhoto) {
+					if (cameraPool.isBusy(tagData.antPort)) {
+						queueTrigger(row, tagData.antPort, now_ms);
+					} else if (usePredictiveTrigger && (motionEngine != null)) {
+						planTrigger(row, tagData.antPort, now_ms);
+					} else if (triggerCamera(row, tagData.antPort)) {
+						triggerQueue.satisfied(row);
+					}
+				}
+			}
+		}
+	}
+
+	/** 
+	 * triggerCamera<P>
+	 * This method triggers a camera for a tag and starts or updates
+	 * its photo event. The caller holds the tagTable lock.
+	 * @param row The row of the tag
+	 * @param antenna The antenna the tag was seen on
+	 * @return True if a camera took the trigger
+	 */
+	private boolean triggerCamera( int row, int antenna ) {
+		Epc epc = tagTable.getEpc(row);
+		if (cameraPool.takePhoto(epc.toString().substring(epcFirst, epcLast), antenna)) {
+			numberOfTriggers++;
+			// Update the event
+			startTagEvent(row, eventTimeout_ms, triggerInterval_ms);
+			log.makeEntry(epc + " new trigger", Log.Level.Information);
+			return true;
+		}
+		return false;
+	}
+
+	/** 
+	 * queueTrigger<P>
+	 * This method queues a trigger for a tag read while every camera
+	 * for its antenna is busy. The caller holds the tagTable lock.
+	 * @param row The row of the tag
+	 * @param antenna The antenna the tag was seen on
+	 * @param now_ms The current time
+	 */
+	private void queueTrigger( int row, int antenna, long now_ms ) {
+		if (!triggerQueue.offer(row, tagTable.getEpc(row), antenna, now_ms + triggerQueueDeadline_ms)) {
+			cameraPool.countDroppedTrigger(antenna);
+		}
+	}
+
+	/** 
+	 * drainTriggerQueue<P>
+	 * This method fires the cameras for queued triggers now that a
+	 * camera may be free, and expires triggers past their deadline.
+	 */
+	private void drainTriggerQueue( ) {
+		if (triggerQueue.size() == 0) {
+			return;
+		}
+		synchronized (tagTable) {
+			int captured = triggerQueue.drain(tagTable, System.currentTimeMillis(), triggerHandler);
+			if ((captured > 0) && log.isEnabled(Log.Level.Debug)) {
+				log.makeEntry(captured + " queued triggers taken", Log.Level.Debug);
 			}
-			// Tags in the event database that have shots left cause a photo
-			if ((oldData.shotCount < triggersPerEvent) && (oldData.triggerCountDown_sec == 0)) {
-				tryToTakePhoto = true;
+		}
+	}
+
+	/** 
+	 * planTrigger<P>
+	 * This method asks the predictive trigger when a tag should fire the
+	 * camera and either fires it, schedules it, or leaves it to be
+	 * planned again on the next read. The caller holds the tagTable lock.
+	 * @param row The row of the tag
+	 * @param antenna The antenna the tag was seen on
+	 * @param now_ms The current time
+	 */
+	private void planTrigger( final int row, final int antenna, long now_ms ) {
+		long latency_ms = cameraPool.getExposureLatency();
+		if (latency_ms < 0) {
+			latency_ms = PredictiveTrigger.DEFAULT_LATENCY_MS;
+		}
+		long fire_ms = predictiveTrigger.plan(row, now_ms, latency_ms);
+		if (fire_ms == PredictiveTrigger.WAIT) {
+			return;
+		}
+		if (fire_ms <= now_ms) {
+			if (triggerCamera(row, antenna)) {
+				triggerQueue.satisfied(row);
 			}
-			// If we should take photo, check if the camera is ready
-			if (tryToTakePhoto && !camera.isBusy()) {
-				// Trigger the camera
-				if (camera.takePhoto(oldData.epc.substring(epcFirst, epcLast))) {
-					numberOfTriggers++;
-					// Update the event database
-					oldData.shotCount++;				
-					oldData.eventCountDown_sec = eventTimeout_sec;
-					oldData.triggerCountDown_sec = triggerInterval_sec;
-					tagEvents.put(oldData.epc, oldData);
-					log.makeEntry(oldData.epc + " new trigger", Log.Level.Information);
+			return;
+		}
+		final Epc epc = tagTable.getEpc(row);
+		final long planned_ms = fire_ms;
+		predictiveTrigger.setPending(row, true);
+		triggerScheduler.schedule("predictedTrigger", fire_ms - now_ms, new Runnable() {
+			public void run() {
+				synchronized (tagTable) {
+					predictiveTrigger.fired(System.currentTimeMillis() - planned_ms);
+					predictiveTrigger.setPending(row, false);
+					// The row may have been given to another tag meanwhile
+					if (!tagTable.isUsed(row) || (tagTable.getEpc(row) != epc)) {
+						return;
+					}
+					if (cameraPool.isBusy(antenna)) {
+						queueTrigger(row, antenna, System.currentTimeMillis());
+					} else if (triggerCamera(row, antenna)) {
+						triggerQueue.satisfied(row);
+					}
 				}
 			}
-			// Update the all inclusive Tag Database
-			tagDatabase.put(tagData.epc, tagData);
-		}
+		});
 	}
 	
 	/** 
-	 * ageTagDatabase<P>
-	 * This method ages the tag database based on EVENT_TIMEOUT_SEC
+	 * isApproaching<P>
+	 * This method returns false if the phase of a tag shows it is not
+	 * getting closer at APPROACH_SPEED or faster. A tag without a recent
+	 * estimate, as when the module reports no phase, counts as
+	 * approaching so the camera still fires.
+	 * @param row The row of the tag
+	 * @param now_ms The current time
+	 * @return True if the tag may be approaching
+	 */
+	private boolean isApproaching( int row, long now_ms ) {
+		float velocity = velocityEstimator.getVelocity(row, now_ms);
+		return (Float.isNaN(velocity) || (velocity <= -approachSpeed_mps));
+	}
+
+	/** 
+	 * startTagEvent<P>
+	 * This method records a camera trigger in the tag database and
+	 * schedules the end of the trigger holdoff and of the event.
+	 * @param row The row of the tag that triggered the camera
+	 * @param timeout_ms The milliseconds until the event expires, 0 for never
+	 * @param holdoff_ms The milliseconds until the tag may trigger again
+	 */
+	private void startTagEvent( int row, int timeout_ms, int holdoff_ms ) {
+		long now = tagTimers.getTime();
+		long eventDeadline = (timeout_ms > 0) ? now + toTagTimerTicks(timeout_ms) : 0;
+		long triggerDeadline = (holdoff_ms > 0) ? now + toTagTimerTicks(holdoff_ms) : 0;
+		synchronized (tagTable) {
+			tagTable.startEvent(row, eventDeadline, triggerDeadline);
+			if (eventDeadline > 0) {
+				tagTimers.schedule(row, EVENT_EXPIRY, eventDeadline);
+			}
+			if (triggerDeadline > 0) {
+				tagTimers.schedule(row, TRIGGER_HOLDOFF, triggerDeadline);
+			}
+		}
+	}
+
+	/** 
+	 * toTagTimerTicks<P>
+	 * This method converts a time to tag timer ticks, rounding up so a
+	 * timer never expires early.
+	 * @param time_ms The time in milliseconds
+	 * @return The number of ticks
+	 */
+	private long toTagTimerTicks( long time_ms ) {
+		return (time_ms + tagTimerTick_ms - 1) / tagTimerTick_ms;
+	}
+
+	/** 
+	 * ageTagEvents<P>
+	 * This method advances the tag timers by one tick. Only the
+	 * timers that expire are visited. Tags not read on an antenna for
+	 * DEPARTURE_TIMEOUT_MS depart from it, and tags not seen for
+	 * AGE_THRESHOLD seconds are then evicted from the tag database.
+	 * Queued triggers are retried in case a camera was held up only by
+	 * the upload backlog, and expired.
 	 */
 	private void ageTagEvents( ) throws NullPointerException {
-		// Iterate through the entire ArrayList of tags
-		Set<String> epcs = tagEvents.keySet();
-		for (String epc: epcs) {
-			TagData tagData = tagEvents.get(epc);
-			if (tagData.triggerCountDown_sec > 0) {
-				tagData.triggerCountDown_sec--;
-				if (tagData.triggerCountDown_sec == 0 ) {
-					log.makeEntry(epc + " trigger holdoff expired", Log.Level.Debug);
-				}
+		tagTimers.advance(tagTimerListener);
+		if (motionEngine != null) {
+			motionEngine.expire(System.currentTimeMillis(), motionListener);
+		}
+		drainTriggerQueue();
+		int evicted = tagTable.evictExpired(tagTimers.getTime(), toTagTimerTicks(ageThreshold_sec * 1000L));
+		if ((evicted > 0) && log.isEnabled(Log.Level.Debug)) {
+			log.makeEntry(evicted + " tags aged out of the database", Log.Level.Debug);
+		}
+	}
+
+	/** 
+	 * processMotionEvent<P>
+	 * This method handles an arrival, motion or departure of a tag on
+	 * one antenna, keeping the motion state in the tag database.
+	 * @param row The row of the tag
+	 * @param antenna The antenna port
+	 * @param event The MotionEngine event
+	 */
+	private void processMotionEvent( int row, int antenna, MotionEngine.Event event ) {
+		synchronized (tagTable) {
+			if (!tagTable.isUsed(row)) {
+				return;
 			}
-			if (tagData.eventCountDown_sec > 0) {
-				tagData.eventCountDown_sec--;
-				if (tagData.eventCountDown_sec == 0 ) {
-					log.makeEntry(epc + " tagEvent expired", Log.Level.Debug);
-					tagEvents.remove(epc);
+			if (event == MotionEngine.Event.Motion) {
+				tagTable.setMotionState(row, TagData.MotionState.InMotion);
+				log.makeEntry(tagTable.getEpc(row) + " in motion on antenna " + antenna, Log.Level.Information);
+			} else if (event == MotionEngine.Event.Departure) {
+				if (!motionEngine.isPresent(row)) {
+					tagTable.setMotionState(row, TagData.MotionState.Idle);
+					predictiveTrigger.complete(row);
+					// No photo of a tag that has left the field
+					triggerQueue.remove(row);
+				}
+				if (log.isEnabled(Log.Level.Debug)) {
+					log.makeEntry(tagTable.getEpc(row) + " departed antenna " + antenna, Log.Level.Debug);
 				}
+			} else if (log.isEnabled(Log.Level.Debug)) {
+				log.makeEntry(tagTable.getEpc(row) + " arrived on antenna " + antenna, Log.Level.Debug);
 			}
 		}
 	}
 
 	/** 
-	 * uploadLeftoverPictures<P>
-	 * This method attempts to upload any stored pictures.
+	 * processTagTimer<P>
+	 * This method handles an expired trigger holdoff or tag event.
+	 * Timers are never cancelled, so an expiry is ignored unless the
+	 * tag still has the deadline it was scheduled for.
+	 * @param row The row of the tag
+	 * @param kind TRIGGER_HOLDOFF or EVENT_EXPIRY
+	 * @param deadline The deadline the timer was scheduled for
 	 */
-	private Boolean queueLeftoverFiles() {
-		Integer oldFiles = 0;
-		// Scrape the command line
-		Process proc;
-		try {
-			proc = Runtime.getRuntime().exec("./get_leftovers.sh");
-			BufferedReader stdInput = new BufferedReader(new InputStreamReader(proc.getInputStream()));
-			String line = "";
-			while ((line = stdInput.readLine()) != null) {
-				if ((line.length() > MIN_LENGTH_FILENAME) && line.endsWith(".jpg")) {
-					pictureQueue.put(line);
-					oldFiles++;
+	private void processTagTimer( int row, int kind, long deadline ) {
+		synchronized (tagTable) {
+			if (!tagTable.isUsed(row)) {
+				return;
+			}
+			if ((kind == TRIGGER_HOLDOFF) && (tagTable.getTriggerDeadline(row) == deadline)) {
+				tagTable.setTriggerDeadline(row, 0);
+				if (log.isEnabled(Log.Level.Debug)) {
+					log.makeEntry(tagTable.getEpc(row) + " trigger holdoff expired", Log.Level.Debug);
 				}
+			} else if ((kind == EVENT_EXPIRY) && (tagTable.getEventDeadline(row) == deadline)) {
+				if (log.isEnabled(Log.Level.Debug)) {
+					log.makeEntry(tagTable.getEpc(row) + " tagEvent expired", Log.Level.Debug);
+				}
+				tagTable.endEvent(row);
+			}
+		}
+	}
+
+	/** 
+	 * queueFailedUploads<P>
+	 * This method syncs the upload journal and queues the photos whose
+	 * retry is due, leaving half the picture queue free for new photos.
+	 */
+	private void queueFailedUploads() {
+		uploadJournal.sync();
+		int room = pictureQueue.remainingCapacity() - (pictureQueueSize / 2);
+		if (room <= 0) {
+			return;
+		}
+		List<String> due = uploadJournal.takeDue(room);
+		for (String filename : due) {
+			if (!pictureQueue.offer(new Picture(filename, uploadJournal.getTags(filename)))) {
+				uploadJournal.record(filename, UploadJournal.State.Failed);
 			}
-			if (oldFiles > 0) {
-				log.makeEntry("Uploading " + oldFiles + " old files", Log.Level.Information);
+		}
+		if (!due.isEmpty()) {
+			log.makeEntry("Retrying " + due.size() + " uploads", Log.Level.Information);
+		}
+	}
+
+	/** 
+	 * getTagsNear<P>
+	 * This method returns the tag that triggered a photo and every other
+	 * tag read within photoTagWindow_ms of the trigger, as the
+	 * comma separated list uploaded with the photo.
+	 * @param subEpc The part of the EPC of the triggering tag
+	 * @param time_ms When the photo was asked for
+	 * @return The comma separated sub-EPCs, the triggering tag first
+	 */
+	private String getTagsNear( String subEpc, long time_ms ) {
+		List<String> tags = new ArrayList<String>();
+		tags.add(subEpc);
+		for (Epc epc : sightingLog.getTagsNear(time_ms, photoTagWindow_ms, photoTagMinRssi, maxPhotoTags)) {
+			String hex = epc.toString();
+			if (hex.length() >= epcLast) {
+				String sub = hex.substring(epcFirst, epcLast);
+				if (!tags.contains(sub)) {
+					tags.add(sub);
+				}
 			}
-			return true;
-		} catch (Exception e) {
-			log.makeEntry( "Error reading directory!\n" + e.toString(), Log.Level.Warning );
-			return false;
 		}
+		return String.join(",", tags);
 	}
 
 	/** 
 	 * associateFileWithTagsAndUpload<P>
-	 * This method associates all the currently read tags with this
-	 * image file and uploads the record to the Fotaflo database.
+	 * This method uploads a photo and its tags to the Fotaflo database.
+	 * A photo without recorded tags, such as one taken before tags were
+	 * journaled, is uploaded with the tag its name starts with.
 	 */
-	private void associateFileWithTagsAndUpload( String fileToUpload ) {
+	private void associateFileWithTagsAndUpload( Picture picture ) {
 		// Check for a camera error
-		if (fileToUpload.equalsIgnoreCase(camera.TIMEOUT)) {
-			// flush the tagEvents to allow another photo to be taken 
-			tagEvents.clear();
+		if (picture.filename.equalsIgnoreCase(cameraPool.TIMEOUT)) {
+			// flush the tag events to allow another photo to be taken 
+			tagTable.clearEvents();
 		} else {
-			// Get the one tag that triggered this photo
-			String epcPlusTimestamp[] = fileToUpload.split("-");
+			String tags = picture.tags;
+			if (tags == null) {
+				tags = picture.filename.split("-")[0];
+			}
 			try {
-				if (fotaflo.postImageToServer(fileToUpload, epcPlusTimestamp[0])) {
-					numberOfUploads++;
-				}
+				// Blocks while all the upload threads are busy
+				fotaflo.submitImage(picture.filename, tags);
 			} catch (Exception e) {
 				log.makeEntry("Unable to upload image/tags\n" + e.toString(), Log.Level.Error);
 			}
@@ -1005,13 +1421,19 @@ public class CirrusII {
 		System.out.println( "Photo Server URL   = " + photoUrl );
 		System.out.println( "Image Format       = " + imageFormat );
 		System.out.println( "Shots Per Trigger  = " + shotsPerTrigger );
-		System.out.println( "Trigger Interval   = " + triggerInterval_sec + " seconds" );
+		System.out.println( "Trigger Interval   = " + triggerInterval_ms + " ms" );
 		System.out.println( "Triggers Per Event = " + triggersPerEvent );
-		System.out.println( "Event Timeout      = " + eventTimeout_sec + " seconds" );
-		System.out.println( "Camera Make        = " + camera.getManufacturer());
-		System.out.println( "Camera Model       = " + camera.getModel());
-		System.out.println( "Camera Version     = " + camera.getVersion());
-		System.out.println( "Camera Serial#     = " + camera.getSerialNumber());
+		System.out.println( "Event Timeout      = " + eventTimeout_ms + " ms" );
+		System.out.println( "Photo Tag Window   = " + photoTagWindow_ms + " ms" );
+		for (Camera camera : cameraPool.getCameras()) {
+			if (camera.getName() != null) {
+				System.out.println( "Camera             = " + camera.getName() + " (" + camera.getPort() + ")");
+			}
+			System.out.println( "Camera Make        = " + camera.getManufacturer());
+			System.out.println( "Camera Model       = " + camera.getModel());
+			System.out.println( "Camera Version     = " + camera.getVersion());
+			System.out.println( "Camera Serial#     = " + camera.getSerialNumber());
+		}
 		System.out.println( "Latitude/Longitude = " + latitude + " / " + longitude);
 		System.out.println( "\n\n" );
 		
@@ -1060,14 +1482,63 @@ public class CirrusII {
 	 * @return void
 	 */
 	private void setRfidState( RfidState newRfidState ) {
+		// Pipelined commands may still be waiting for their Response
+		if ((newRfidState == RfidState.Idle) && (commandPipeline.getInFlight() > 0)) {
+			newRfidState = RfidState.WaitingForResponse;
+		}
 		log.makeEntry(newRfidState.toString(), Log.Level.Debug);
 		synchronized(rfidState) {
 			rfidState = newRfidState;
 		}
+		// Hold back commands while an inventory runs or the module resets
+		commandPipeline.setModuleBusy((newRfidState == RfidState.WaitingForEnd) || (newRfidState == RfidState.WaitingForReset));
+	}
+
+	/** 
+	 * processCommandTimeout<P>
+	 * This method recovers from a command the RFID module never answered.
+	 * Once the pipeline is empty either the inventory is restarted or the
+	 * module is pinged, and after CMD_TIMEOUT_LIMIT timeouts in a row the
+	 * serial port is reopened and the module reset.
+	 * @param cmdHead The command that timed out
+	 * @param elapsed_ms How long the command waited
+	 */
+	private void processCommandTimeout( CmdHead cmdHead, long elapsed_ms ) {
+		log.makeEntry(cmdHead + " timed out after " + elapsed_ms + " ms", Log.Level.Warning);
+		readerClient.commandTimedOut(cmdHead);
+		if ((rfidState == RfidState.WaitingForReset) || (commandPipeline.getInFlight() > 0)) {
+			return;
+		}
+		if (commandPipeline.getConsecutiveTimeouts() >= CMD_TIMEOUT_LIMIT) {
+			resetSerialComms();
+			return;
+		}
+		// Force the state back to idle
+		setRfidState(RfidState.Idle);
+		// Either send another inventory request or ping the module
+		if (!inventoryScheduler.rearm()) {
+			pingModule();
+		}
+	}
+
+	/** 
+	 * resetSerialComms<P>
+	 * This method closes and reopens the serial port and resets the
+	 * RFID module.
+	 */
+	private void resetSerialComms() {
 		try {
-			nextRfidState.put(rfidState);
-		} catch (InterruptedException e) {
-			log.makeEntry("Unable to queue the Next RFID State\n" + e.toString(), Log.Level.Error);
+			// Close and reopen the serial port
+			if ((serialComms != null) && serialComms.isConnected()) {
+				serialComms.disconnect();
+				serialComms = new SerialComms(serialRspQueue, packetPool, serialDebug);
+				serialComms.setLogObject(log);
+				serialComms.connect(rfidCommPort, rfidBaudRate);
+			}
+			sendSoftReset();
+			log.makeEntry("Resetting due to comms error!", Log.Level.Warning);
+		} catch (Exception e) {
+			log.makeEntry("Unable Auto Reset RFID Serial\n" + e.toString(), Log.Level.Error);
 		}
 	}
 		
@@ -1122,16 +1593,11 @@ public class CirrusII {
 
 		} else if (method.equalsIgnoreCase("start")) {
 			System.out.println("Starting autonomous photo capture\n");
-			try {
-				autoRepeat = true;
-				sendInventoryRequest();
-			} catch (InterruptedException e) {
-				log.makeEntry("Unable to queue serial command\n" + e.toString(), Log.Level.Error);
-			}				
+			startInventory();
 		} else if (method.equalsIgnoreCase("stop")) {
 			System.out.println("Stopping autonomous photo capture\n");
 			try {
-				autoRepeat = false;
+				inventoryScheduler.stop();
 				sendInventoryCancel();
 			} catch (InterruptedException e) {
 				log.makeEntry("Unable to queue serial command\n" + e.toString(), Log.Level.Error);
@@ -1144,20 +1610,21 @@ public class CirrusII {
 			led.beacon("Disable");
 		} else if (method.equalsIgnoreCase("manual_trigger")) {
 			System.out.println("Manually trigger a burst using tag 1234567\n");
-			TagData tagData = new TagData();
-			tagData.epc = "1234567";
-			tagData.eventCountDown_sec = eventTimeout_sec;
+			synchronized (tagTable) {
+				int row = tagTable.findOrInsert(Epc.valueOf("1234567"));
+				tagTable.touch(row, tagTimers.getTime());
+				startTagEvent(row, eventTimeout_ms, 0);
+			}
 			tagPresent = true;
-			tagEvents.put(tagData.epc, tagData);
-			tagDatabase.put(tagData.epc, tagData);
-			camera.takePhoto(tagData.epc);
+			cameraPool.takePhoto("1234567", -1);
 		} else if (method.equalsIgnoreCase("show_database")) {
 			printTagDatabase();
 		} else if (method.equalsIgnoreCase("flush_database")) {
 			System.out.println("Flushing Cirrus-II tag database");
-			System.out.println(tagDatabase.size() + " tags erased");
+			System.out.println(tagTable.size() + " tags erased");
 			System.out.println("\n");
-			tagDatabase.clear();
+			tagTable.clear();
+			uniqueTags.clear();
 		} else if (method.equalsIgnoreCase("show_version")) {
 			System.out.println("Cirrus-II Application = " + apiVersionString);
 			System.out.println("RFID Module Firmware Rev. = " + sipVersionString);
@@ -1173,7 +1640,7 @@ public class CirrusII {
 				// Close and reopen the serial port
 				if ((serialComms != null) && serialComms.isConnected()) {
 					serialComms.disconnect();
-					serialComms = new SerialComms(serialRspQueue, serialDebug);
+					serialComms = new SerialComms(serialRspQueue, packetPool, serialDebug);
 					serialComms.setLogObject(log);
 					serialComms.connect(rfidCommPort, rfidBaudRate);
 				}
@@ -1207,129 +1674,132 @@ public class CirrusII {
 	}
 
 	/** 
-	 * processTicTimer<P>
-	 * This method does tic timer things.
+	 * startTimerTasks<P>
+	 * This method schedules the periodic housekeeping tasks and the
+	 * power on sequence.
 	 */
-	private void processTicTimer() {
-		// Autonomous power on things for Fotaflo
-		if (ticTimerCount == 1) {
-			// Turn on the camera
-			camera.enablePower(true);
-			// Upload any leftover pictures from last time
-			queueLeftoverFiles();
-		} else if (ticTimerCount == 7) {
-			camera.requestCameraInfo();
-			camera.updateImageFormat();
-		} else if (ticTimerCount == 10) {
-			if (!useCLI) {
+	private void startTimerTasks() {
+		// Age the tag events
+		tickScheduler.scheduleAtFixedRate("tagTimers", tagTimerTick_ms, new Runnable() {
+			public void run() {
 				try {
-					autoRepeat = true;
-					sendInventoryRequest();
-				} catch (InterruptedException e) {
-					log.makeEntry("Unable to queue serial command\n" + e.toString(), Log.Level.Error);
-				}				
+					ageTagEvents();
+				} catch (NullPointerException npe) {
+					log.makeEntry("Unable to age tag database\n" + npe.toString(), Log.Level.Error);
+				}
 			}
-		}
-		ticTimerCount++;
-		// Check approximately every hour for photos that failed to upload
-		if (checkForFailedUploadsCounter++ > checkForFailedUploadsInterval) {
-			checkForFailedUploadsCounter = 0;
-			checkForFailedUploads = true;
-		}
-		// So we don't get confused by any recently taken pictures, wait until queue is empty
-		if (checkForFailedUploads && pictureQueue.isEmpty()) {
-			checkForFailedUploads = false;
-			queueLeftoverFiles();
-		}
-		// Perform self-tests at a slower periodic rate
-		if (selfTestCounter++ > selfTestInterval) {
-			selfTestCounter = 0;
-			if (selfTest.performSelfTests()) {
-				errorFlag = true;
-			} else {
-				errorFlag = false;
+		});
+		// Recover from any command the module has not answered
+		tickScheduler.scheduleAtFixedRate("cmdTimeouts", cmdExpiryPeriod_ms, new Runnable() {
+			public void run() {
+				commandPipeline.expire(cmdTimeoutListener);
 			}
-			// Check for no RFID Module inactivity
-			if (selfTest.shouldPingRfModule()) {
-				// Force the state back to idle
-				setRfidState(RfidState.Idle);
-				// Either send another inventory request
-				if ((readerDelayCounter <= 0) && (autoRepeat)) {
-					try {
-						sendInventoryRequest();
-					} catch (InterruptedException e) {
-						log.makeEntry("Unable to queue serial command\n" + e.toString(), Log.Level.Error);
-					}
-				} else {
-					// or ping the module
-					pingModule();
-				}
+		});
+		scheduler.scheduleAtFixedRate("housekeeping", housekeepingPeriod_ms, new Runnable() {
+			public void run() {
+				// Update the LED state
+				updateVisualIndicator();
+				// Reset the tag present flag
+				tagPresent = false;
 			}
-			// Handle the case where we missed the END packet due to a serial port overload
-			if ((rfidState != RfidState.WaitingForReset) && (selfTest.getRfModuleCommHealth().contains("Bad"))) {
-				try {
-					// Close and reopen the serial port
-					if ((serialComms != null) && serialComms.isConnected()) {
-						serialComms.disconnect();
-						serialComms = new SerialComms(serialRspQueue, serialDebug);
-						serialComms.setLogObject(log);
-						serialComms.connect(rfidCommPort, rfidBaudRate);
-					}
-					sendSoftReset();
-					log.makeEntry("Resetting due to comms error!", Log.Level.Warning);
-				} catch (Exception e) {
-					log.makeEntry("Unable Auto Reset RFID Serial\n" + e.toString(), Log.Level.Error);
-				}
+		});
+		// Sync the upload journal and retry failed uploads
+		scheduler.scheduleAtFixedRate("uploadRetry", uploadRetryPeriod_ms, new Runnable() {
+			public void run() {
+				queueFailedUploads();
 			}
-			// Update some runtime statistics
-			try {
-				updateStatistics();
-			} catch (Exception e) {
-				log.makeEntry( "Unable to update statistics\n" + e.toString(), Log.Level.Error );
+		});
+		// Perform self-tests at a slower periodic rate
+		scheduler.scheduleAtFixedRate("selfTest", selfTestPeriod_ms, new Runnable() {
+			public void run() {
+				performSelfTests();
 			}
-		}
-		
-		// See if we are waiting for the reader module to finish resetting
-		if ((rfidState == RfidState.WaitingForReset) && (++readerResetCounter >= readerResetCount_tics)) {
-			readerResetCounter = 0;
-			ticTimerCount = 0;
-			setRfidState(RfidState.Idle);
-			try {
-				initializeRfidModuleSettings();
-				log.makeEntry("Autonomous reset complete", Log.Level.Information);
-				// Pick up where we left off
-				if (autoRepeat) {
-					sendInventoryRequest();
-				}
-			} catch (InterruptedException e) {
-				log.makeEntry("Unable to send command to RFID module\n" + e.toString(), Log.Level.Error);
+		});
+		schedulePowerOnSequence();
+	}
+
+	/** 
+	 * schedulePowerOnSequence<P>
+	 * This method schedules the autonomous power on things for Fotaflo.
+	 * It runs at startup and again after the RFID module is reset.
+	 */
+	private void schedulePowerOnSequence() {
+		scheduler.schedule("cameraPower", 1000, new Runnable() {
+			public void run() {
+				// Turn on the camera
+				cameraPool.enablePower(true);
 			}
-		}
-		
-		// See if we are waiting for the delay counter to count down
-		if ((rfidState != RfidState.WaitingForReset) && (readerDelayCounter > 0)) {
-			// Decrement the delay counter and start the next inventory when zero
-			if ((--readerDelayCounter <= 0) && (autoRepeat)) {
-				try {
-					sendInventoryRequest();
-				} catch (InterruptedException e) {
-					log.makeEntry("Unable to queue serial command\n" + e.toString(), Log.Level.Error);
+		});
+		scheduler.schedule("cameraInfo", 7000, new Runnable() {
+			public void run() {
+				cameraPool.requestCameraInfo();
+				cameraPool.updateImageFormat();
+			}
+		});
+		scheduler.schedule("autoStart", 10000, new Runnable() {
+			public void run() {
+				if (!useCLI) {
+					startInventory();
 				}
 			}
+		});
+	}
+
+	/** 
+	 * performSelfTests<P>
+	 * This method runs the self-tests, resets the serial port if the
+	 * module has gone quiet and updates the runtime statistics.
+	 */
+	private void performSelfTests() {
+		if (selfTest.performSelfTests()) {
+			errorFlag = true;
+		} else {
+			errorFlag = false;
+		}
+		// Handle the case where we missed the END packet due to a serial port overload
+		if ((rfidState != RfidState.WaitingForReset) && (selfTest.getRfModuleCommHealth().contains("Bad"))) {
+			resetSerialComms();
+		}
+		// Update some runtime statistics
+		try {
+			updateStatistics();
+		} catch (Exception e) {
+			log.makeEntry( "Unable to update statistics\n" + e.toString(), Log.Level.Error );
 		}
+	}
 
-		// Update the LED state
-		updateVisualIndicator();
-		// Reset the tag present flag
-		tagPresent = false;
-		// Age the tag events
+	/** 
+	 * completeReset<P>
+	 * This method runs once the reader module has had time to finish
+	 * resetting. The module is configured again and the inventory
+	 * restarted if it was running.
+	 */
+	private void completeReset() {
+		if (rfidState != RfidState.WaitingForReset) {
+			return;
+		}
+		setRfidState(RfidState.Idle);
+		schedulePowerOnSequence();
 		try {
-			ageTagEvents();
-		} catch (NullPointerException npe) {
-			log.makeEntry("Unable to age tag database\n" + npe.toString(), Log.Level.Error);
+			initializeRfidModuleSettings();
+			log.makeEntry("Autonomous reset complete", Log.Level.Information);
+			// Pick up where we left off
+			inventoryScheduler.rearm();
+		} catch (InterruptedException e) {
+			log.makeEntry("Unable to send command to RFID module\n" + e.toString(), Log.Level.Error);
 		}
 	}
 	
+	/** 
+	 * startInventory<P>
+	 * This method starts autonomous inventory using the delay and
+	 * operation mode from the inventory profile.
+	 */
+	private void startInventory() {
+		boolean continuous = (profile.getOperationMode() == CmdReaderModuleConfig.OperationMode.Continuous);
+		inventoryScheduler.start(profile.getDefaultDelayTime(), continuous);
+	}
+	
 	/** 
 	 * sendInventoryRequest<P>
 	 * This method sends an Inventory command to RFID module.
@@ -1371,9 +1841,19 @@ public class CirrusII {
 	 * @throws InterruptedException 
 	 */
 	private Boolean sendSoftReset() throws InterruptedException {
-		readerResetCounter = 0;
 		serialCmdQueue.clear();
+		commandPipeline.clear();
+		readerClient.cancelAll();
 		setRfidState(RfidState.WaitingForReset);
+		// Wait for the reader module to finish resetting
+		if (resetWait != null) {
+			resetWait.cancel();
+		}
+		resetWait = scheduler.schedule("resetWait", readerReset_ms, new Runnable() {
+			public void run() {
+				completeReset();
+			}
+		});
 		byte[] cmd = llcs.controlSoftReset();
 		// Send the packet out the serial port immediately
 		if (cmd != null) {
@@ -1391,12 +1871,18 @@ public class CirrusII {
 	 * @return True is successful
 	 */
 	private Boolean sendClearError() {
-		byte[] cmd1 = llcs.getError((byte)1);
-		byte[] cmd2 = llcs.clearError( );
-		if ((cmd1 != null) && (cmd2 != null)) {
+		readerClient.getError((byte)1).thenAccept(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer errorCode) {
+				if (errorCode != 0) {
+					log.makeEntry( "Last MTI MAC Firmware Error Code: 0x" + Integer.toHexString(errorCode), Log.Level.Error);
+				}
+			}
+		});
+		byte[] cmd = llcs.clearError( );
+		if (cmd != null) {
 			try {
-				serialCmdQueue.put(cmd1);
-				serialCmdQueue.put(cmd2);
+				serialCmdQueue.put(cmd);
 			} catch (Exception e) {
 				log.makeEntry("Unable to queue serial commands\n" + e.toString(), Log.Level.Error);
 			}
@@ -1411,17 +1897,63 @@ public class CirrusII {
 	 */
 	private void updateStatistics() throws Exception {
 
-		numberOfUnique = tagDatabase.size();
+		numberOfUnique = (int)uniqueTags.estimate();
 
 		BufferedWriter bw = null;
 		bw = new BufferedWriter(new FileWriter("./statistics.txt", false));
 
-		bw.write("upTimeInSeconds  = " + ticTimerCount + "\n");
+		bw.write("upTimeInSeconds  = " + (System.currentTimeMillis() - startTime_ms) / 1000 + "\n");
 		bw.write("numberOfUniques  = " + numberOfUnique + "\n");
-		bw.write("numberOfUploads  = " + numberOfUploads + "\n");
+		bw.write("numberOfUploads  = " + fotaflo.getUploadCount() + "\n");
+		bw.write("failedUploads    = " + fotaflo.getFailedCount() + "\n");
+		bw.write("activeUploads    = " + fotaflo.getActiveUploads() + "\n");
+		bw.write("pictureBacklog   = " + pictureQueue.size() + "\n");
+		bw.write("uploadsPending   = " + uploadJournal.size() + "\n");
+		bw.write("uploadsToRetry   = " + uploadJournal.getFailedCount() + "\n");
+		bw.write("uploadLatencyMs  = " + fotaflo.getMeanLatency() + " mean, " + fotaflo.getMaxLatency() + " max\n");
+		bw.write("uploadThroughput = " + fotaflo.getThroughput() + " B/s\n");
 		bw.write("numberOfTriggers = " + numberOfTriggers + "\n");
-		bw.write("waitingForCamera = " + camera.isBusy() + "\n");
+		bw.write("recedingHeldOff  = " + numberOfRecedingHeld + "\n");
+		bw.write("triggersPlanned  = " + predictiveTrigger.getPlannedCount() + " ahead, " + predictiveTrigger.getImmediateCount() + " late, " + predictiveTrigger.getHeldTooLongCount() + " held\n");
+		bw.write("triggerLateMs    = " + predictiveTrigger.getMeanFireLateness() + " mean, " + predictiveTrigger.getMaxFireLateness() + " max\n");
+		bw.write("peakPredErrorMs  = " + predictiveTrigger.getMeanError() + " mean, " + predictiveTrigger.getErrorStdDev() + " sd, " + predictiveTrigger.getMaxAbsError() + " max, " + predictiveTrigger.getErrorCount() + " n\n");
+		bw.write("exposureLatency  = " + cameraPool.getExposureLatency() + " ms\n");
+		bw.write("velocitySamples  = " + velocityEstimator.getEstimates() + "\n");
+		bw.write("waitingForCamera = " + cameraPool.isBusy(-1) + "\n");
+		bw.write("photosCaptured   = " + cameraPool.getCaptureCount() + "\n");
+		bw.write("captureTimeouts  = " + cameraPool.getCaptureTimeouts() + "\n");
+		bw.write("droppedTriggers  = " + cameraPool.getDroppedTriggers() + "\n");
+		bw.write("queuedTriggers   = " + triggerQueue.size() + " waiting, " + triggerQueue.getCapturedCount() + " captured, " + triggerQueue.getCoalescedCount() + " coalesced, " + triggerQueue.getExpiredCount() + " expired, " + triggerQueue.getDroppedCount() + " dropped\n");
+		for (Camera camera : cameraPool.getCameras()) {
+			String key = (camera.getName() != null) ? "camera." + camera.getName() : "camera";
+			bw.write(String.format("%-17s= ", key) + Math.round(camera.getUtilization() * 100) + "% busy, " + camera.getDroppedTriggers() + " dropped, " + camera.getCaptureCount() + " photos, " + camera.getMeanCaptureLatency() + " mean ms, " + camera.getMaxCaptureLatency() + " max ms\n");
+		}
 		bw.write("currentRfidState = " + rfidState.toString() + "\n");
+		bw.write("packetPoolHits   = " + packetPool.getPoolHits() + "\n");
+		bw.write("packetPoolMisses = " + packetPool.getPoolExhausted() + "\n");
+		bw.write("resyncDiscarded  = " + serialComms.getResyncDiscardedBytes() + "\n");
+		bw.write("rspQueueDropped  = " + serialRspQueue.getDroppedCount() + "\n");
+		bw.write("tagsInDatabase   = " + tagTable.size() + "\n");
+		bw.write("tagsEvicted      = " + tagTable.getEvictions() + "\n");
+		bw.write("tagTableBytes    = " + tagTable.getFootprintBytes() + "\n");
+		bw.write("bytesPerTag      = " + tagTable.getBytesPerTag() + "\n");
+		bw.write("pendingTagTimers = " + tagTimers.getPending() + "\n");
+		bw.write("tagsPresent      = " + motionEngine.getPresentCount() + "\n");
+		bw.write("tagArrivals      = " + motionEngine.getArrivals() + "\n");
+		bw.write("tagMotions       = " + motionEngine.getMotions() + "\n");
+		bw.write("tagDepartures    = " + motionEngine.getDepartures() + "\n");
+		bw.write("logDropped       = " + log.getDroppedCount() + "\n");
+		bw.write("cmdsSent         = " + commandPipeline.getSentCount() + "\n");
+		bw.write("cmdsPipelined    = " + commandPipeline.getPipelinedCount() + "\n");
+		bw.write("cmdTimeouts      = " + commandPipeline.getTimeoutCount() + "\n");
+		bw.write("inventoryRounds  = " + inventoryScheduler.getRounds() + "\n");
+		bw.write("inventoryDuty    = " + String.format("%.1f", 100.0 * inventoryScheduler.getDutyCycle()) + "%\n");
+		for (Scheduler.Task task : tickScheduler.getTasks()) {
+			bw.write(String.format("%-17s= ", "task." + task.getName()) + task + "\n");
+		}
+		for (Scheduler.Task task : scheduler.getTasks()) {
+			bw.write(String.format("%-17s= ", "task." + task.getName()) + task + "\n");
+		}
 		bw.close();
 	}
 	
@@ -1462,6 +1994,8 @@ public class CirrusII {
 					this.epcFirst = Integer.parseInt(st[1]);
 				} else if (currentLine.startsWith("EPC_LAST") && (st.length == 2)) {
 					this.epcLast = Integer.parseInt(st[1]);
+				} else if (st[0].equals("CAMERA") && ((st.length == 2) || (st.length == 3))) {
+					this.cameraConfigs.add(Arrays.copyOfRange(st, 1, st.length));
 				} else if (currentLine.startsWith("IMAGE_FORMAT") && (st.length == 2)) {
 					this.imageFormat = st[1];
 				} else if (currentLine.startsWith("SHOTS_PER_TRIGGER") && (st.length == 2)) {
@@ -1469,9 +2003,41 @@ public class CirrusII {
 				} else if (currentLine.startsWith("TRIGGERS_PER_EVENT") && (st.length == 2)) {
 					this.triggersPerEvent = Integer.parseInt(st[1]);
 				} else if (currentLine.startsWith("TRIGGER_INTERVAL_SEC") && (st.length == 2)) {
-					this.triggerInterval_sec = Integer.parseInt(st[1]);
+					this.triggerInterval_ms = Integer.parseInt(st[1]) * 1000;
+				} else if (currentLine.startsWith("TRIGGER_INTERVAL_MS") && (st.length == 2)) {
+					this.triggerInterval_ms = Integer.parseInt(st[1]);
 				} else if (currentLine.startsWith("EVENT_TIMEOUT_SEC") && (st.length == 2)) {
-					this.eventTimeout_sec = Integer.parseInt(st[1]);
+					this.eventTimeout_ms = Integer.parseInt(st[1]) * 1000;
+				} else if (currentLine.startsWith("EVENT_TIMEOUT_MS") && (st.length == 2)) {
+					this.eventTimeout_ms = Integer.parseInt(st[1]);
+				} else if (currentLine.startsWith("PHOTO_TAG_WINDOW_MS") && (st.length == 2)) {
+					this.photoTagWindow_ms = Integer.parseInt(st[1]);
+				} else if (currentLine.startsWith("PHOTO_TAG_MIN_RSSI") && (st.length == 2)) {
+					this.photoTagMinRssi = Integer.parseInt(st[1]) * 10;
+				} else if (currentLine.startsWith("MAX_PHOTO_TAGS") && (st.length == 2)) {
+					this.maxPhotoTags = Math.max(1, Integer.parseInt(st[1]));
+				} else if (currentLine.startsWith("SIGHTING_LOG_SIZE") && (st.length == 2)) {
+					this.sightingLogSize = Integer.parseInt(st[1]);
+				} else if (currentLine.startsWith("TAG_DATABASE_SIZE") && (st.length == 2)) {
+					this.tagDatabaseSize = Integer.parseInt(st[1]);
+				} else if (currentLine.startsWith("MOTION_THRESHOLD") && (st.length == 2)) {
+					this.motionThreshold_dB = Integer.parseInt(st[1]);
+				} else if (currentLine.startsWith("DEPARTURE_TIMEOUT_MS") && (st.length == 2)) {
+					this.departureTimeout_ms = Long.parseLong(st[1]);
+				} else if (currentLine.startsWith("APPROACH_TRIGGER") && (st.length == 2)) {
+					this.approachTrigger = Boolean.parseBoolean(st[1]);
+				} else if (currentLine.startsWith("APPROACH_SPEED") && (st.length == 2)) {
+					this.approachSpeed_mps = Float.parseFloat(st[1]);
+				} else if (currentLine.startsWith("PREDICTIVE_TRIGGER") && (st.length == 2)) {
+					this.usePredictiveTrigger = Boolean.parseBoolean(st[1]);
+				} else if (currentLine.startsWith("TRIGGER_MAX_HOLD_MS") && (st.length == 2)) {
+					this.triggerMaxHold_ms = Long.parseLong(st[1]);
+				} else if (currentLine.startsWith("TRIGGER_QUEUE_SIZE") && (st.length == 2)) {
+					this.triggerQueueSize = Integer.parseInt(st[1]);
+				} else if (currentLine.startsWith("TRIGGER_QUEUE_DEADLINE_MS") && (st.length == 2)) {
+					this.triggerQueueDeadline_ms = Long.parseLong(st[1]);
+				} else if (currentLine.startsWith("AGE_THRESHOLD") && (st.length == 2)) {
+					this.ageThreshold_sec = Integer.parseInt(st[1]);
 				} else if (currentLine.startsWith("LATITUDE") && (st.length == 2)) {
 					this.latitude = Double.parseDouble(st[1]);
 				} else if (currentLine.startsWith("LONGITUDE") && (st.length == 2)) {
@@ -1480,8 +2046,42 @@ public class CirrusII {
 					this.profileFilename = st[1];
 				} else if (currentLine.startsWith("LOG_FILENAME") && (st.length == 2)) {
 					logFilename = st[1];
+				} else if (currentLine.startsWith("LOG_MAX_BYTES") && (st.length == 2)) {
+					logMaxBytes = Long.parseLong(st[1]);
+				} else if (currentLine.startsWith("LOG_BACKUPS") && (st.length == 2)) {
+					logBackups = Integer.parseInt(st[1]);
 				} else if (currentLine.startsWith("SERIAL_DEBUG") && (st.length == 2)) {
 					serialDebug = Boolean.parseBoolean(st[1]);
+				} else if (currentLine.startsWith("PACKET_POOL_SLOTS") && (st.length == 2)) {
+					packetPoolSlots = Integer.parseInt(st[1]);
+				} else if (currentLine.startsWith("CMD_PIPELINE_WINDOW") && (st.length == 2)) {
+					cmdPipelineWindow = Integer.parseInt(st[1]);
+				} else if (currentLine.startsWith("CMD_TIMEOUT_MS") && (st.length == 2)) {
+					cmdTimeout_ms = Long.parseLong(st[1]);
+				} else if (currentLine.startsWith("UPLOAD_CONCURRENCY") && (st.length == 2)) {
+					uploadConcurrency = Integer.parseInt(st[1]);
+				} else if (currentLine.startsWith("UPLOAD_JOURNAL") && (st.length == 2)) {
+					uploadJournalFilename = st[1];
+				} else if (currentLine.startsWith("UPLOAD_BACKOFF_MIN_MS") && (st.length == 2)) {
+					uploadBackoffMin_ms = Long.parseLong(st[1]);
+				} else if (currentLine.startsWith("UPLOAD_BACKOFF_MAX_MS") && (st.length == 2)) {
+					uploadBackoffMax_ms = Long.parseLong(st[1]);
+				} else if (currentLine.startsWith("PICTURE_QUEUE_SIZE") && (st.length == 2)) {
+					pictureQueueSize = Math.max(4, Integer.parseInt(st[1]));
+				} else if (currentLine.startsWith("RSP_QUEUE_SIZE") && (st.length == 2)) {
+					rspQueueSize = Integer.parseInt(st[1]);
+				} else if (currentLine.startsWith("RSP_QUEUE_OVERFLOW") && (st.length == 2)) {
+					try {
+						rspQueueOverflow = SpscRingBuffer.OverflowPolicy.valueOf(st[1]);
+			        } catch(IllegalArgumentException iae) {
+			        	System.out.println("Invalid response queue overflow policy in config file!");
+			        }
+				} else if (currentLine.startsWith("RSP_QUEUE_WAIT") && (st.length == 2)) {
+					try {
+						rspQueueWait = SpscRingBuffer.WaitStrategy.valueOf(st[1]);
+			        } catch(IllegalArgumentException iae) {
+			        	System.out.println("Invalid response queue wait strategy in config file!");
+			        }
 				} else if(currentLine.startsWith("LOG_LEVEL") && (st.length == 2)) {
 					try {
 						logLevel = Log.Level.valueOf(st[1]);
@@ -1540,12 +2140,15 @@ public class CirrusII {
 	 * @param tagList An Array of TagData objects.
 	 */
 	private void printTagDatabase( ) {
-		// Iterate through the entire ConcurrentHashMap
-		Set<String> epcs = tagDatabase.keySet();
-		System.out.println( "Unique Tag Count = " + epcs.size() );
-		for (String epc: epcs) {
-			TagData tagData = tagDatabase.get(epc);
-			System.out.println( "EPC = " + tagData.epc );
+		// Iterate through the entire TagTable
+		synchronized (tagTable) {
+			System.out.println( "Unique Tag Count = " + tagTable.size() );
+			int rowLimit = tagTable.getRowLimit();
+			for (int row = 0; row < rowLimit; row++) {
+				if (tagTable.isUsed(row)) {
+					System.out.println( "EPC = " + tagTable.getEpc(row) );
+				}
+			}
 		}
 	}
 	
@@ -1569,7 +2172,7 @@ public class CirrusII {
 	 */
 	private void executeTestModeCommand(String command) throws InterruptedException, NumberFormatException {
 		// Stop any gateway controlled inventory cycle
-		autoRepeat = false;
+		inventoryScheduler.stop();
 		testModeResponsePending = true;
 		String cli[] = command.split(" ");
 
@@ -2621,6 +3224,27 @@ public class CirrusII {
 	 * This method performs all things necessary before exiting the SmartAntenna application.
 	 */
 	private void cleanup() {
+		// Stop starting inventory rounds and the periodic tasks
+		if (inventoryScheduler != null) {
+			inventoryScheduler.shutdown();
+		}
+		if (tickScheduler != null) {
+			tickScheduler.shutdown();
+		}
+		if (scheduler != null) {
+			scheduler.shutdown();
+		}
+		if (triggerScheduler != null) {
+			triggerScheduler.shutdown();
+		}
+		// Stop the gphoto2 shell
+		if (cameraPool != null) {
+			cameraPool.shutdown();
+		}
+		// Record the last upload states
+		if (uploadJournal != null) {
+			uploadJournal.close();
+		}
 		// Close the serial port
 		if ((serialComms != null) && serialComms.isConnected()) {
 			serialComms.disconnect();
@@ -2631,5 +3255,7 @@ public class CirrusII {
 		} catch (IOException e) {
 			log.makeEntry("Unable to control LED\n" + e.toString(), Log.Level.Error);
 		}
+		// Write out any queued log entries
+		log.close();
 	}
 }
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid;
+
+import java.util.Arrays;
+
+/**
+ * Epc Object
+ * <P>An immutable, compact binary EPC. EPCs of up to 128 bits (including
+ * the usual 96-bit EPC) are held in two longs, longer ones in a short
+ * byte array. The hash code is computed once. Hex strings are only
+ * produced by toString() for logging and uploads.
+ *
+ * @author Encinitas Labs
+ * @version 0.1
+ */
+public final class Epc {
+
+	private static final int MAX_PACKED_LENGTH = 16;
+	private static final char[] hexDigits = "0123456789ABCDEF".toCharArray();
+	private final int length;
+	private final long hi;
+	private final long lo;
+	private final byte[] bytes;
+	private final int hash;
+
+	/**
+	 * Epc<P>
+	 * Class Constructor
+	 * @param src The array holding the EPC
+	 * @param offset The index of the first EPC byte
+	 * @param length_ The length of the EPC in bytes
+	 */
+	private Epc( byte[] src, int offset, int length_ ) {
+		length = length_;
+		if (length <= MAX_PACKED_LENGTH) {
+			hi = pack(src, offset, Math.min(length, 8));
+			lo = (length > 8) ? pack(src, offset + 8, length - 8) : 0L;
+			bytes = null;
+		} else {
+			hi = 0L;
+			lo = 0L;
+			bytes = new byte[length];
+			System.arraycopy(src, offset, bytes, 0, length);
+		}
+		hash = hashOf(src, offset, length);
+	}
+
+	/**
+	 * valueOf<P>
+	 * This method creates an EPC from a region of a byte array.
+	 * @param src The array holding the EPC
+	 * @param offset The index of the first EPC byte
+	 * @param length The length of the EPC in bytes
+	 * @return The Epc object
+	 */
+	public static Epc valueOf( byte[] src, int offset, int length ) {
+		if ((length < 0) || (offset < 0) || (offset + length > src.length)) {
+			throw new IllegalArgumentException("Invalid EPC region");
+		}
+		return new Epc(src, offset, length);
+	}
+
+	/**
+	 * valueOf<P>
+	 * This method creates an EPC from a hex string. An odd number of
+	 * digits is treated as having a leading zero.
+	 * @param hex The EPC as hex digits
+	 * @return The Epc object
+	 */
+	public static Epc valueOf( String hex ) {
+		if ((hex.length() & 1) != 0) {
+			hex = "0" + hex;
+		}
+		byte[] src = new byte[hex.length() / 2];
+		for (int i = 0; i < src.length; i++) {
+			src[i] = (byte)Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		return new Epc(src, 0, src.length);
+	}
+
+	/**
+	 * hashOf<P>
+	 * This method computes the hash code an Epc would have for a region
+	 * of a byte array, without creating the Epc.
+	 * @param src The array holding the EPC
+	 * @param offset The index of the first EPC byte
+	 * @param length The length of the EPC in bytes
+	 * @return The hash code
+	 */
+	public static int hashOf( byte[] src, int offset, int length ) {
+		int h = length;
+		for (int i = offset; i < offset + length; i++) {
+			h = 31 * h + src[i];
+		}
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * matches<P>
+	 * This method compares this EPC with a region of a byte array
+	 * without creating a new Epc.
+	 * @param src The array holding the EPC
+	 * @param offset The index of the first EPC byte
+	 * @param length_ The length of the EPC in bytes
+	 * @return True if the EPCs are the same
+	 */
+	public boolean matches( byte[] src, int offset, int length_ ) {
+		if (length_ != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (getByte(i) != src[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * length<P>
+	 * This method returns the length of the EPC in bytes.
+	 * @return The length in bytes
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * getByte<P>
+	 * This method returns one byte of the EPC.
+	 * @param index The index of the byte, 0 being the most significant
+	 * @return The byte
+	 */
+	public byte getByte( int index ) {
+		if (bytes != null) {
+			return bytes[index];
+		} else if (index < 8) {
+			return (byte)(hi >>> (56 - 8 * index));
+		} else {
+			return (byte)(lo >>> (56 - 8 * (index - 8)));
+		}
+	}
+
+	/**
+	 * toString<P>
+	 * This method renders the EPC as upper case hex digits.
+	 * @return The hex string
+	 */
+	@Override
+	public String toString() {
+		char[] hex = new char[2 * length];
+		for (int i = 0; i < length; i++) {
+			int b = getByte(i) & 0xff;
+			hex[2 * i] = hexDigits[b >>> 4];
+			hex[2 * i + 1] = hexDigits[b & 0x0f];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * hashCode<P>
+	 * This method returns the cached hash code.
+	 * @return The hash code
+	 */
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	/**
+	 * equals<P>
+	 * This method overrides the equals method for this class.
+	 * Two Epc objects are equal if they hold the same bytes.
+	 * @return True if the objects are equal
+	 */
+	@Override
+	public boolean equals( Object obj ) {
+		if (this == obj) {
+			return true;
+		}
+		if ((obj instanceof Epc) == false) {
+			return false;
+		}
+		final Epc other = (Epc) obj;
+		if ((hash != other.hash) || (length != other.length)) {
+			return false;
+		}
+		if (bytes != null) {
+			return Arrays.equals(bytes, other.bytes);
+		}
+		return ((hi == other.hi) && (lo == other.lo));
+	}
+
+	/**
+	 * pack<P>
+	 * This helper method packs up to eight bytes big endian into a long,
+	 * left aligned so shorter EPCs compare correctly.
+	 */
+	private static long pack( byte[] src, int offset, int count ) {
+		long value = 0L;
+		for (int i = 0; i < 8; i++) {
+			value <<= 8;
+			if (i < count) {
+				value |= (src[offset + i] & 0xffL);
+			}
+		}
+		return value;
+	}
+}
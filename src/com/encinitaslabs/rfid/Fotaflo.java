@@ -24,29 +24,32 @@ package com.encinitaslabs.rfid;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.Date;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 
 import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.io.IOUtils;
 
 
 /**
  * Fotaflo Object
  * <P>Attributes and functionality corresponding to Fotaflo customer.
+ * <P>Images are uploaded by a fixed number of upload threads. Submitting
+ * an image blocks while every upload thread is busy, so a backlog stays
+ * in the picture queue where the Camera can see it. Connections to the
+ * picture server are kept alive and reused between uploads.
+ * <P>The image is streamed to the server with its length known up front,
+ * so even a RAW image is never held in memory.
  *  
  * @author Encinitas Labs
  * @version 0.1
@@ -59,8 +62,22 @@ public class Fotaflo {
 	private String deviceId = null;
 	private String location = null;
 	private Log logObject = null;
-	
-	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private UploadJournal uploadJournal = null;
+	public static final int DEFAULT_CONCURRENCY = 2;
+	public static final int MAX_CONCURRENCY = 8;
+	private final int CONNECT_TIMEOUT_MS = 10000;
+	private final int READ_TIMEOUT_MS = 60000;
+	private final ExecutorService executor;
+	private final Semaphore uploadSlots;
+	// Upload metrics
+	private long uploadCount = 0;
+	private long failedCount = 0;
+	private long uploadedBytes = 0;
+	private long totalLatency_ms = 0;
+	private long maxLatency_ms = 0;
+	private int activeUploads = 0;
+	private long busyStart_ms = 0;
+	private long busyTime_ms = 0;
 
 	
 	/** 
@@ -68,6 +85,30 @@ public class Fotaflo {
 	 * Class Constructor
 	 */
 	public Fotaflo ( String deviceId_, String location_ ) {
+		this(deviceId_, location_, DEFAULT_CONCURRENCY);
+	}
+	
+	/** 
+	 * Fotaflo<P>
+	 * Class Constructor
+	 * @param concurrency The number of simultaneous uploads
+	 */
+	public Fotaflo ( String deviceId_, String location_, int concurrency ) {
+		if ((concurrency < 1) || (concurrency > MAX_CONCURRENCY)) {
+			concurrency = DEFAULT_CONCURRENCY;
+		}
+		// Keep one idle connection per upload thread for reuse
+		System.setProperty("http.keepAlive", "true");
+		System.setProperty("http.maxConnections", Integer.toString(concurrency));
+		uploadSlots = new Semaphore(concurrency);
+		executor = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+			private int count = 0;
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Upload " + count++);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 		if (deviceId_ != null) {
 			deviceId = deviceId_;
 		} else {
@@ -165,6 +206,27 @@ public class Fotaflo {
 		
 		@Override
 		public void run() {
+			uploadStarted();
+			journal(filename, UploadJournal.State.Uploading);
+			long start = System.currentTimeMillis();
+			long bytes = -1;
+			try {
+				bytes = upload();
+			} finally {
+				journal(filename, (bytes >= 0) ? UploadJournal.State.Uploaded : UploadJournal.State.Failed);
+				uploadFinished(filename, bytes, System.currentTimeMillis() - start);
+				uploadSlots.release();
+			}
+		}
+		
+		/** 
+		 * upload<P>
+		 * This method streams the image to the server, reads the server
+		 * response and deletes the image. The connection is left open for
+		 * reuse unless the upload failed.
+		 * @return The number of bytes uploaded, or -1 if the upload failed
+		 */
+		private long upload() {
 	        String credentials = username + ':' + password;
 	        Base64 encoder = new Base64();
 	        byte[] credArray = credentials.getBytes();
@@ -185,32 +247,35 @@ public class Fotaflo {
 	            uc.setRequestMethod("POST");
 	            uc.setDoInput(true);
 	            uc.setDoOutput(true);
+	            uc.setConnectTimeout(CONNECT_TIMEOUT_MS);
+	            uc.setReadTimeout(READ_TIMEOUT_MS);
 	            
 	        } catch (MalformedURLException e) {
 				log( "Invalid URL " + photoUrl, Log.Level.Error );
-	        	return;
+	        	return -1;
 	        } catch (IOException e) {
 				log( "Unable to open connection to remote server", Log.Level.Error );
-	        	return;
+	        	return -1;
 	        } catch (IllegalStateException e) {
 				log( "Unable to set property", Log.Level.Error );
-	        	return;
+	        	return -1;
 	        } catch (NullPointerException e) {
 				log( "Missing or invalid fields", Log.Level.Error );
-	        	return;
+	        	return -1;
 	        }
 
 	        OutputStream content = null;
-	        InputStream source = null;
+	        long bytes = -1;
 
 	        try {
 	        	File file = new File(filename);
 	            if (file.exists()) {
 	    			log( "Uploading " + filename, Log.Level.Information );
-	                source = new FileInputStream(file);
+	    			// Without a fixed length the whole body is buffered in heap
+	    			uc.setFixedLengthStreamingMode(file.length());
 	                content = uc.getOutputStream();
 
-	                IOUtils.copy(source, content);
+	                long length = Files.copy(file.toPath(), content);
 	                content.flush();
 	                content.close();
 
@@ -227,141 +292,166 @@ public class Fotaflo {
 	                rd.close();
 	                is.close();
 	    			log( "Server Response " + response.toString(), Log.Level.Information );
-	                uc.disconnect();
+	                // The response has been read and closed, so the connection can be reused
+					bytes = length;
 		            // Delete the file once its been uploaded
-					Runtime.getRuntime().exec("rm " + filename);
+					try {
+						Files.delete(file.toPath());
+					} catch (IOException e) {
+						log( "Unable to delete " + filename + "\n" + e.toString(), Log.Level.Warning );
+					}
 
 	            } else {
 	    			log( filename + " does not exist!", Log.Level.Warning );
 	            }
 	        } catch (IOException e) {
 				log( "Error uploading photo", Log.Level.Error );
+				uc.disconnect();
 	        }
 	        
 	        try {
 		        if (content != null){
 		            content.close();
 		        }
-		        if (source != null){
-		            source.close();
-		        }
 	        } catch (IOException e) {
 				log( "Error closing input/output streams", Log.Level.Error );
 	        }
+	        return bytes;
 		}
 	}
 	
 	/**
-     * postImageToServer<P>
-     * THis method posts photos to the Fotaflo picture server.
+     * submitImage<P>
+     * This method queues a photo for upload to the Fotaflo picture server.
+     * It blocks while all the upload threads are busy.
      * @param filename The filename of the image
      * @param tags The serialized string of tags associated with that image
+     * @throws InterruptedException
      */
-	public Boolean postImageToServer( String filename, String tags ) {
-		
+	public void submitImage( String filename, String tags ) throws InterruptedException {
 		PostImage postImage = new PostImage(username, password, photoUrl, deviceId, location, filename, tags);
-		Future<?> future = executor.submit(postImage);
-		
+		uploadSlots.acquire();
 		try {
-			future.get(60, TimeUnit.SECONDS); 
-			return true;
-		} catch (TimeoutException ex) {
-			// handle the timeout
-			future.cancel(true);
-			return false;
-		} catch (InterruptedException e) {
-			// handle the interrupts
-			return false;
-		} catch (ExecutionException e) {
-			// handle other exceptions
-			return false;
+			executor.execute(postImage);
+		} catch (RuntimeException e) {
+			uploadSlots.release();
+			throw e;
 		}
-		
-/*		
-		Boolean success = false;
-        String credentials = username + ':' + password;
-        Base64 encoder = new Base64();
-        byte[] credArray = credentials.getBytes();
-        String encoding = encoder.encodeToString(credArray);
+	}
 
-        URL url = null;
-        HttpURLConnection uc = null;
+	/** 
+	 * setUploadJournal<P>
+	 * This method sets the journal that upload states are recorded in.
+	 * @param uploadJournal_ The upload journal
+	 */
+	public void setUploadJournal( UploadJournal uploadJournal_ ) {
+		uploadJournal = uploadJournal_;
+	}
 
-        try {
-            url = new URL(photoUrl);
-            uc = (HttpURLConnection)url.openConnection();
-            uc.setRequestProperty("Authorization", "Basic " + encoding);
-            uc.setRequestProperty("location", location);
-            uc.setRequestProperty("filename", filename);
-            uc.setRequestProperty("FileDate", new Date().getTime()+"");
-            uc.setRequestProperty("deviceId", deviceId);
-            uc.setRequestProperty("tags", tags);
-            uc.setRequestMethod("POST");
-            uc.setDoInput(true);
-            uc.setDoOutput(true);
-            
-        } catch (MalformedURLException e) {
-			log( "Invalid URL " + photoUrl, Log.Level.Error );
-        	return false;
-        } catch (IOException e) {
-			log( "Unable to open connection to remote server", Log.Level.Error );
-        	return false;
-        } catch (IllegalStateException e) {
-			log( "Unable to set property", Log.Level.Error );
-        	return false;
-        } catch (NullPointerException e) {
-			log( "Missing or invalid fields", Log.Level.Error );
-        	return false;
-        }
+	/** 
+	 * journal<P>
+	 * This helper method records an upload state if there is a journal.
+	 */
+	private void journal( String filename, UploadJournal.State state ) {
+		if (uploadJournal != null) {
+			uploadJournal.record(filename, state);
+		}
+	}
 
-        OutputStream content = null;
-        InputStream source = null;
+	/** 
+	 * uploadStarted<P>
+	 * This helper method starts the busy time clock with the first
+	 * active upload.
+	 */
+	private synchronized void uploadStarted() {
+		if (activeUploads++ == 0) {
+			busyStart_ms = System.currentTimeMillis();
+		}
+	}
 
-        try {
-        	File file = new File(filename);
-            if (file.exists()) {
-    			log( "Uploading " + filename, Log.Level.Information );
-                source = new FileInputStream(file);
-                content = uc.getOutputStream();
+	/** 
+	 * uploadFinished<P>
+	 * This helper method records the outcome of an upload.
+	 * @param filename The filename of the image
+	 * @param bytes The number of bytes uploaded, or -1 if the upload failed
+	 * @param latency_ms The time the upload took
+	 */
+	private void uploadFinished( String filename, long bytes, long latency_ms ) {
+		synchronized (this) {
+			if (--activeUploads == 0) {
+				busyTime_ms += System.currentTimeMillis() - busyStart_ms;
+			}
+			if (bytes < 0) {
+				failedCount++;
+				return;
+			}
+			uploadCount++;
+			uploadedBytes += bytes;
+			totalLatency_ms += latency_ms;
+			if (latency_ms > maxLatency_ms) {
+				maxLatency_ms = latency_ms;
+			}
+		}
+		log( "Uploaded " + filename + ", " + bytes + " bytes in " + latency_ms + " ms", Log.Level.Information );
+	}
 
-                IOUtils.copy(source, content);
-                content.flush();
-                content.close();
+	/** 
+	 * getUploadCount<P>
+	 * This method returns the number of successful uploads.
+	 * @return The number of uploads
+	 */
+	public synchronized long getUploadCount() {
+		return uploadCount;
+	}
 
-                // Get Response
-    			log( "Waiting for Server Response", Log.Level.Information );
-                InputStream is = uc.getInputStream();
-                BufferedReader rd = new BufferedReader(new InputStreamReader(is));
-                String line;
-                StringBuffer response = new StringBuffer();
-                while ((line = rd.readLine()) != null) {
-                    response.append(line);
-                    response.append('\r');
-                }
-                rd.close();
-                is.close();
-    			log( "Server Response " + response.toString(), Log.Level.Information );
-                uc.disconnect();
-    			success = true;
-            } else {
-    			log( filename + " does not exist!", Log.Level.Warning );
-            }
-        } catch (IOException e) {
-			log( "Error uploading photo", Log.Level.Error );
-        }
-        
-        try {
-	        if (content != null){
-	            content.close();
-	        }
-	        if (source != null){
-	            source.close();
-	        }
-        } catch (IOException e) {
-			log( "Error closing input/output streams", Log.Level.Error );
-        }
-        return success;
-*/		
+	/** 
+	 * getFailedCount<P>
+	 * This method returns the number of failed uploads.
+	 * @return The number of failed uploads
+	 */
+	public synchronized long getFailedCount() {
+		return failedCount;
+	}
+
+	/** 
+	 * getActiveUploads<P>
+	 * This method returns the number of uploads in progress.
+	 * @return The number of uploads
+	 */
+	public synchronized int getActiveUploads() {
+		return activeUploads;
+	}
+
+	/** 
+	 * getMeanLatency<P>
+	 * This method returns the mean time a successful upload took.
+	 * @return The mean latency in milliseconds
+	 */
+	public synchronized long getMeanLatency() {
+		return (uploadCount > 0) ? totalLatency_ms / uploadCount : 0;
+	}
+
+	/** 
+	 * getMaxLatency<P>
+	 * This method returns the longest time a successful upload took.
+	 * @return The longest latency in milliseconds
+	 */
+	public synchronized long getMaxLatency() {
+		return maxLatency_ms;
+	}
+
+	/** 
+	 * getThroughput<P>
+	 * This method returns the upload throughput while at least one
+	 * upload was in progress.
+	 * @return The throughput in bytes per second
+	 */
+	public synchronized long getThroughput() {
+		long busy = busyTime_ms;
+		if (activeUploads > 0) {
+			busy += System.currentTimeMillis() - busyStart_ms;
+		}
+		return (busy > 0) ? uploadedBytes * 1000 / busy : 0;
 	}
 
 	/** 
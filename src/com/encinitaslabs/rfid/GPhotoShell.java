@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GPhotoShell Object
+ * <P>A long-lived gphoto2 process driven through its interactive shell,
+ * so a capture costs one line on its stdin instead of a fork and exec
+ * and a new USB session with the camera. gphoto2 runs in a staging
+ * directory that is watched for downloaded files, which removes the
+ * need to poll for them.
+ * <P>gphoto2 downloads into a temporary file and renames it when the
+ * download is complete, so a new file with the expected extension is
+ * ready to be used.
+ * <P>A camera may be given by its gphoto2 port or by its serial number,
+ * in which case the detected cameras are searched for it each time the
+ * shell starts, since the port changes when the camera is powered up.
+ *
+ * @author Encinitas Labs
+ * @version 0.1
+ */
+public class GPhotoShell {
+
+	/**
+	 * Listener Interface
+	 *
+	 * <P>Implemented by anything that wants the output of gphoto2.
+	 */
+	public interface Listener {
+		void lineReceived(String line);
+	}
+
+	public static final String DEFAULT_DIRECTORY = "capture";
+	private static final long STOP_CHECK_MS = 250;
+	private final String prompt = "/> ";
+	private final String error = "*** Error";
+	private final String serialNumber_s = "Serial Number:";
+	private Path directory = null;
+	private String camera = null;
+	private Listener listener = null;
+	private Log logObject = null;
+	private WatchService watcher = null;
+	private Process process = null;
+	private Writer stdin = null;
+
+	/**
+	 * GPhotoShell<P>
+	 * Class Constructor
+	 * @param directory_ The staging directory photos are downloaded into
+	 * @param camera_ The gphoto2 port of the camera, for example
+	 * "usb:001,005", its serial number, or null for the first camera found
+	 * @param listener_ Receives each line gphoto2 writes, or null
+	 * @param logObject_ The log
+	 */
+	public GPhotoShell( Path directory_, String camera_, Listener listener_, Log logObject_ ) {
+		directory = directory_;
+		camera = camera_;
+		listener = listener_;
+		logObject = logObject_;
+	}
+
+	/**
+	 * start<P>
+	 * This method empties the staging directory and starts gphoto2.
+	 * @throws IOException
+	 */
+	public synchronized void start() throws IOException {
+		if (isRunning()) {
+			return;
+		}
+		Files.createDirectories(directory);
+		if (watcher == null) {
+			watcher = FileSystems.getDefault().newWatchService();
+			directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+		}
+		try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory)) {
+			for (Path file : stale) {
+				Files.deleteIfExists(file);
+			}
+		}
+		discardEvents();
+		String port = camera;
+		if ((camera != null) && (camera.indexOf(':') < 0)) {
+			port = findPort(camera);
+		}
+		ProcessBuilder pb = (port != null) ? new ProcessBuilder("gphoto2", "--port", port, "--shell") : new ProcessBuilder("gphoto2", "--shell");
+		pb.directory(directory.toFile());
+		pb.redirectErrorStream(true);
+		process = pb.start();
+		stdin = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.US_ASCII);
+		final BufferedReader stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII));
+		Thread reader = new Thread("gphoto2 shell") {
+			public void run() {
+				try {
+					String line;
+					while ((line = stdout.readLine()) != null) {
+						processLine(line);
+					}
+				} catch (IOException e) {
+					// The process has gone away
+				}
+				log("gphoto2 shell exited", Log.Level.Debug);
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+		log("gphoto2 shell started" + ((port != null) ? " on " + port : ""), Log.Level.Information);
+	}
+
+	/**
+	 * findPort<P>
+	 * This method searches the detected cameras for one with the given
+	 * serial number. Ports already held by another shell do not answer
+	 * and are skipped.
+	 * @param serialNumber The serial number of the camera
+	 * @return The gphoto2 port of the camera
+	 * @throws IOException if no detected camera has the serial number
+	 */
+	public String findPort( String serialNumber ) throws IOException {
+		List<String> ports = new ArrayList<String>();
+		boolean inTable = false;
+		for (String line : run("gphoto2", "--auto-detect")) {
+			if (line.startsWith("---")) {
+				inTable = true;
+			} else if (inTable && !line.trim().isEmpty()) {
+				// The port is the last column
+				String[] columns = line.trim().split("\\s+");
+				ports.add(columns[columns.length - 1]);
+			}
+		}
+		for (String port : ports) {
+			for (String line : run("gphoto2", "--port", port, "--summary")) {
+				line = line.trim();
+				if (line.startsWith(serialNumber_s) && line.substring(serialNumber_s.length()).trim().equals(serialNumber)) {
+					return port;
+				}
+			}
+		}
+		throw new IOException("No camera with serial number " + serialNumber);
+	}
+
+	/**
+	 * run<P>
+	 * This helper method runs a gphoto2 command to completion and
+	 * returns its output.
+	 */
+	private List<String> run( String... command ) throws IOException {
+		ProcessBuilder pb = new ProcessBuilder(command);
+		pb.redirectErrorStream(true);
+		Process proc = pb.start();
+		List<String> lines = new ArrayList<String>();
+		try (BufferedReader stdout = new BufferedReader(new InputStreamReader(proc.getInputStream(), StandardCharsets.US_ASCII))) {
+			String line;
+			while ((line = stdout.readLine()) != null) {
+				lines.add(line);
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * stop<P>
+	 * This method asks gphoto2 to exit and kills it if it does not.
+	 */
+	public synchronized void stop() {
+		if (process == null) {
+			return;
+		}
+		try {
+			stdin.write("exit\n");
+			stdin.flush();
+			if (!process.waitFor(2, TimeUnit.SECONDS)) {
+				process.destroy();
+			}
+		} catch (IOException e) {
+			process.destroy();
+		} catch (InterruptedException e) {
+			process.destroy();
+			Thread.currentThread().interrupt();
+		}
+		process = null;
+		stdin = null;
+	}
+
+	/**
+	 * isRunning<P>
+	 * This method returns true if gphoto2 is running.
+	 * @return True if running
+	 */
+	public synchronized boolean isRunning() {
+		return ((process != null) && process.isAlive());
+	}
+
+	/**
+	 * send<P>
+	 * This method sends a command to the gphoto2 shell, starting it
+	 * first if needed.
+	 * @param command The shell command, for example "summary"
+	 * @throws IOException
+	 */
+	public synchronized void send( String command ) throws IOException {
+		start();
+		log("gphoto2> " + command, Log.Level.Debug);
+		stdin.write(command + "\n");
+		stdin.flush();
+	}
+
+	/**
+	 * discardEvents<P>
+	 * This method deletes files that arrived since the last one was
+	 * taken, such as the other half of a RAW+JPEG capture.
+	 */
+	public void discardEvents() {
+		if (watcher == null) {
+			return;
+		}
+		WatchKey key;
+		while ((key = watcher.poll()) != null) {
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() != StandardWatchEventKinds.OVERFLOW) {
+					discard(directory.resolve((Path)event.context()));
+				}
+			}
+			key.reset();
+		}
+	}
+
+	/**
+	 * awaitFile<P>
+	 * This method waits for gphoto2 to download a file with the given
+	 * extension. Files with other extensions are deleted.
+	 * @param extension The extension, for example ".jpg"
+	 * @param timeout_ms How long to wait
+	 * @return The downloaded file, or null on timeout
+	 * @throws InterruptedException
+	 */
+	public Path awaitFile( String extension, long timeout_ms ) throws InterruptedException {
+		if (watcher == null) {
+			return null;
+		}
+		long deadline = System.currentTimeMillis() + timeout_ms;
+		long remaining = timeout_ms;
+		while (remaining > 0) {
+			// Give up early if the shell is stopped, as when the power is cut
+			if (!isRunning()) {
+				return null;
+			}
+			WatchKey key = watcher.poll(Math.min(remaining, STOP_CHECK_MS), TimeUnit.MILLISECONDS);
+			if (key != null) {
+				Path found = null;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						continue;
+					}
+					Path file = directory.resolve((Path)event.context());
+					String name = file.getFileName().toString();
+					if ((found == null) && name.endsWith(extension)) {
+						found = file;
+					} else {
+						discard(file);
+					}
+				}
+				key.reset();
+				if (found != null) {
+					return found;
+				}
+			}
+			remaining = deadline - System.currentTimeMillis();
+		}
+		return null;
+	}
+
+	/**
+	 * discard<P>
+	 * This helper method deletes an unwanted download. Temporary files,
+	 * which have no extension, are left for gphoto2 to rename.
+	 */
+	private void discard( Path file ) {
+		if (file.getFileName().toString().lastIndexOf('.') > 0) {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				log("Unable to delete " + file + "\n" + e.toString(), Log.Level.Warning);
+			}
+		}
+	}
+
+	/**
+	 * processLine<P>
+	 * This helper method strips the shell prompt from a line of output,
+	 * logs errors and passes the line to the listener.
+	 */
+	private void processLine( String line ) {
+		int index = line.lastIndexOf(prompt);
+		if (index >= 0) {
+			line = line.substring(index + prompt.length());
+		}
+		if (line.isEmpty()) {
+			return;
+		}
+		if (line.startsWith(error)) {
+			log("gphoto2 " + line, Log.Level.Warning);
+		}
+		if (listener != null) {
+			listener.lineReceived(line);
+		}
+	}
+
+	/**
+	 * log<P>
+	 * This method is used for making log entries.
+	 */
+	private void log( String entry, Log.Level logLevel ) {
+		if (logObject != null) {
+			logObject.makeEntry(entry, logLevel);
+		} else {
+			System.out.println(entry);
+		}
+	}
+}
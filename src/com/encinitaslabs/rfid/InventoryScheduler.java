@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InventoryScheduler Object
+ * <P>Starts inventory rounds on the RFID module while autonomous inventory
+ * is running. In NonContinuous mode the next round is started the
+ * configured delay after the End packet of the last one, with millisecond
+ * resolution instead of the one second tic timer. In Continuous mode the
+ * module keeps inventorying on its own, so a round is only started again
+ * if the module stops. The time spent inventorying, from Begin to End, is
+ * measured to report the duty cycle.
+ *
+ * @author Encinitas Labs
+ * @version 0.1
+ */
+public class InventoryScheduler {
+
+	/**
+	 * Listener Interface
+	 * <P>Implemented by whatever sends the Inventory command.
+	 */
+	public interface Listener {
+		void startInventory();
+	}
+
+	private final Listener listener;
+	private final ScheduledExecutorService executor;
+	private final Runnable startTask;
+	private ScheduledFuture<?> pending = null;
+	private boolean running = false;
+	private boolean continuous = false;
+	private long delay_ms = 0;
+	// Duty cycle measurement, in nanoseconds
+	private long startTime = 0;
+	private long roundStart = 0;
+	private long busyTime = 0;
+	private long rounds = 0;
+
+	/**
+	 * InventoryScheduler<P>
+	 * Class Constructor
+	 * @param listener_ Called to start each inventory round
+	 */
+	public InventoryScheduler( Listener listener_ ) {
+		listener = listener_;
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Inventory scheduler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		startTask = new Runnable() {
+			public void run() {
+				synchronized (InventoryScheduler.this) {
+					pending = null;
+					if (!running) {
+						return;
+					}
+				}
+				listener.startInventory();
+			}
+		};
+	}
+
+	/**
+	 * start<P>
+	 * This method starts autonomous inventory with the first round
+	 * started immediately. The duty cycle measurement restarts.
+	 * @param delay_ms_ The delay between rounds in NonContinuous mode
+	 * @param continuous_ True if the module is in Continuous mode
+	 */
+	public synchronized void start( long delay_ms_, boolean continuous_ ) {
+		cancelPending();
+		delay_ms = Math.max(0, delay_ms_);
+		continuous = continuous_;
+		running = true;
+		startTime = System.nanoTime();
+		roundStart = 0;
+		busyTime = 0;
+		rounds = 0;
+		pending = executor.schedule(startTask, 0, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * stop<P>
+	 * This method stops autonomous inventory. A round in progress is not
+	 * cancelled, that is up to the caller.
+	 */
+	public synchronized void stop() {
+		running = false;
+		cancelPending();
+	}
+
+	/**
+	 * rearm<P>
+	 * This method starts a round right away if autonomous inventory is
+	 * running and no round is already scheduled, e.g. after a reset or
+	 * a lost End packet.
+	 * @return True if a round was scheduled
+	 */
+	public synchronized boolean rearm() {
+		if (!running || (pending != null)) {
+			return false;
+		}
+		roundStart = 0;
+		pending = executor.schedule(startTask, 0, TimeUnit.NANOSECONDS);
+		return true;
+	}
+
+	/**
+	 * roundStarted<P>
+	 * This method is called when the Begin packet of a round is received.
+	 */
+	public synchronized void roundStarted() {
+		if (roundStart == 0) {
+			roundStart = System.nanoTime();
+		}
+	}
+
+	/**
+	 * roundEnded<P>
+	 * This method is called when the End packet of a round is received.
+	 * If autonomous inventory is running the next round is scheduled.
+	 */
+	public synchronized void roundEnded() {
+		if (roundStart != 0) {
+			busyTime += System.nanoTime() - roundStart;
+			roundStart = 0;
+			rounds++;
+		}
+		if (running && (pending == null)) {
+			// In Continuous mode an End means the module stopped on its own
+			long delay = continuous ? 0 : delay_ms;
+			pending = executor.schedule(startTask, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * isRunning<P>
+	 * This method returns true while autonomous inventory is running.
+	 * @return True if running
+	 */
+	public synchronized boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * getDutyCycle<P>
+	 * This method returns the share of the time since start() that the
+	 * module has spent inventorying, including a round in progress.
+	 * @return The duty cycle from 0.0 to 1.0
+	 */
+	public synchronized double getDutyCycle() {
+		if (startTime == 0) {
+			return 0.0;
+		}
+		long now = System.nanoTime();
+		long busy = busyTime + ((roundStart != 0) ? now - roundStart : 0);
+		long elapsed = now - startTime;
+		return (elapsed > 0) ? (double)busy / elapsed : 0.0;
+	}
+
+	/**
+	 * getRounds<P>
+	 * This method returns the number of completed rounds since start().
+	 * @return The number of rounds
+	 */
+	public synchronized long getRounds() {
+		return rounds;
+	}
+
+	/**
+	 * shutdown<P>
+	 * This method stops autonomous inventory and the scheduler thread.
+	 */
+	public synchronized void shutdown() {
+		stop();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * cancelPending<P>
+	 * This helper method cancels a round that has been scheduled but
+	 * not started.
+	 */
+	private void cancelPending() {
+		if (pending != null) {
+			pending.cancel(false);
+			pending = null;
+		}
+	}
+}
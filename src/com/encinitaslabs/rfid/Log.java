@@ -23,14 +23,22 @@
 package com.encinitaslabs.rfid;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.function.Supplier;
 
 /**
  * Log Object
  * <P>Attributes and functionality corresponding to logging.
+ * <P>Entries are queued in a fixed ring and written by a single writer
+ * thread, which keeps the log file open, writes entries in batches and
+ * flushes after FLUSH_LINES entries or FLUSH_INTERVAL_MS, whichever
+ * comes first. When the ring is full new entries are counted and
+ * dropped rather than blocking the caller. The log file is rotated
+ * once it reaches its maximum size.
  *  
  * @author Encinitas Labs
  * @version 0.1
@@ -44,24 +52,70 @@ public class Log {
 		Debug
 	}
 	
+	public static final long DEFAULT_MAX_BYTES = 1048576;
+	public static final int DEFAULT_BACKUPS = 3;
+	private static final int QUEUE_SIZE = 1024;
+	private static final int QUEUE_MASK = QUEUE_SIZE - 1;
+	private static final int FLUSH_LINES = 64;
+	private static final long FLUSH_INTERVAL_MS = 500;
 	private String filename = null;
 	private boolean logToFile = false;
 	private boolean logToConsole = false;
-	private Level logLevel = Level.Warning;
+	private volatile Level logLevel = Level.Warning;
+	private long maxBytes = DEFAULT_MAX_BYTES;
+	private int backups = DEFAULT_BACKUPS;
+	// Ring of queued entries, guarded by this
+	private final long[] entryTime = new long[QUEUE_SIZE];
+	private final Level[] entryLevel = new Level[QUEUE_SIZE];
+	private final String[] entryMessage = new String[QUEUE_SIZE];
+	private int entryHead = 0;
+	private int entryCount = 0;
+	private long droppedCount = 0;
+	private boolean running = true;
+	private Thread writerThread = null;
+	// Only used by the writer thread
+	private BufferedWriter fileWriter = null;
+	private long fileBytes = 0;
+	private final SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss:SSS");
+	private final Date entryDate = new Date();
 
 	/** 
 	 * Log<P>
 	 * Class Constructor
 	 * @param filename_ The log file name to use
 	 * @param logLevel_ The threshold level for making a log entry
+	 * @param logToConsole_ Also write entries to the console
 	 */
 	public Log(String filename_, Level logLevel_, boolean logToConsole_) {
+		this(filename_, logLevel_, logToConsole_, DEFAULT_MAX_BYTES, DEFAULT_BACKUPS);
+	}
+
+	/** 
+	 * Log<P>
+	 * Class Constructor
+	 * @param filename_ The log file name to use
+	 * @param logLevel_ The threshold level for making a log entry
+	 * @param logToConsole_ Also write entries to the console
+	 * @param maxBytes_ The size at which the log file is rotated, 0 for never
+	 * @param backups_ The number of rotated files to keep
+	 */
+	public Log(String filename_, Level logLevel_, boolean logToConsole_, long maxBytes_, int backups_) {
 		logLevel = logLevel_;
 		logToConsole = logToConsole_;
+		maxBytes = maxBytes_;
+		backups = Math.max(0, backups_);
 		if ((filename_ != null) && (!filename_.startsWith("none"))) {
 			logToFile = true;
 			filename = filename_;
 		}
+		writerThread = new Thread() {
+			public void run() {
+				writeEntries();
+			}
+		};
+		writerThread.setName("Log writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
 		Date now = new Date();
 		makeEntry("New Log @ " + now.toString(), logLevel);
 	}
@@ -74,6 +128,17 @@ public class Log {
     public void setLevel(Level logLevel_) {
 		logLevel = logLevel_;
     }
+
+    /**
+     * isEnabled<P>
+     * This method returns true if entries of a level will be logged,
+     * so callers can skip building messages that would be discarded.
+     * @param level_ The log level to test
+     * @return True if the level is logged
+     */
+    public boolean isEnabled(Level level_) {
+    	return (level_.compareTo(this.logLevel) <= 0);
+    }
 	
 	/**
      * makeEntry<P>
@@ -82,23 +147,206 @@ public class Log {
      * @param level_ The log level of this particular information
      */
     public void makeEntry(String message, Level level_) {
-    	if (level_.compareTo(this.logLevel) <= 0) {
-    		Date curDate = new Date();
-    		SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss:SSS");
-    		if (logToConsole) {
-        		System.out.println(level_.toString() + "[" + format.format(curDate) + "]:" + message);    			
+    	if (isEnabled(level_)) {
+    		enqueue(message, level_);
+    	}
+    }
+
+	/**
+     * makeEntry<P>
+     * Utility method to handle logging. The message is only built
+     * if the level is logged.
+     * @param message Supplies the message to log
+     * @param level_ The log level of this particular information
+     */
+    public void makeEntry(Supplier<String> message, Level level_) {
+    	if (isEnabled(level_)) {
+    		enqueue(message.get(), level_);
+    	}
+    }
+
+    /**
+     * getDroppedCount<P>
+     * This method returns the number of entries dropped because the
+     * writer thread could not keep up.
+     * @return The number of dropped entries
+     */
+    public synchronized long getDroppedCount() {
+    	return droppedCount;
+    }
+
+    /**
+     * close<P>
+     * This method writes any queued entries, stops the writer thread
+     * and closes the log file.
+     */
+    public void close() {
+    	synchronized (this) {
+    		running = false;
+    		notifyAll();
+    	}
+    	try {
+    		writerThread.join(2000);
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    	}
+    }
+
+    /**
+     * enqueue<P>
+     * This helper method adds an entry to the ring, dropping it if
+     * the ring is full.
+     */
+    private synchronized void enqueue(String message, Level level_) {
+    	if (!running) {
+    		return;
+    	}
+    	if (entryCount == QUEUE_SIZE) {
+    		droppedCount++;
+    		return;
+    	}
+    	int index = (entryHead + entryCount) & QUEUE_MASK;
+    	entryTime[index] = System.currentTimeMillis();
+    	entryLevel[index] = level_;
+    	entryMessage[index] = message;
+    	entryCount++;
+    	if ((entryCount == 1) || (level_ == Level.Error)) {
+    		notifyAll();
+    	}
+    }
+
+    /**
+     * writeEntries<P>
+     * This helper method is the body of the writer thread. It takes
+     * every queued entry at once, writes them and flushes the file
+     * when enough entries or enough time have built up.
+     */
+    private void writeEntries() {
+    	long[] times = new long[QUEUE_SIZE];
+    	Level[] levels = new Level[QUEUE_SIZE];
+    	String[] messages = new String[QUEUE_SIZE];
+    	int unflushed = 0;
+    	long lastFlush = System.currentTimeMillis();
+    	boolean stop = false;
+    	while (!stop) {
+    		int count = 0;
+    		synchronized (this) {
+    			if ((entryCount == 0) && running) {
+    				try {
+    					wait(FLUSH_INTERVAL_MS);
+    				} catch (InterruptedException e) {
+    					running = false;
+    				}
+    			}
+    			count = entryCount;
+    			for (int i = 0; i < count; i++) {
+    				int index = (entryHead + i) & QUEUE_MASK;
+    				times[i] = entryTime[index];
+    				levels[i] = entryLevel[index];
+    				messages[i] = entryMessage[index];
+    				entryMessage[index] = null;
+    			}
+    			entryHead = (entryHead + count) & QUEUE_MASK;
+    			entryCount = 0;
+    			stop = !running;
+    		}
+    		boolean urgent = false;
+    		for (int i = 0; i < count; i++) {
+    			writeEntry(times[i], levels[i], messages[i]);
+    			urgent |= (levels[i] == Level.Error);
+    			messages[i] = null;
+    		}
+    		unflushed += count;
+    		long now = System.currentTimeMillis();
+    		// An idle wake up also flushes whatever is left
+    		if ((unflushed > 0) && (urgent || stop || (count == 0) || (unflushed >= FLUSH_LINES) || (now - lastFlush >= FLUSH_INTERVAL_MS))) {
+    			flushFile();
+    			unflushed = 0;
+    			lastFlush = now;
     		}
-        	if (logToFile) {
-    		    FileWriter fstream;
-    			try {
-    				fstream = new FileWriter(filename, true);
-    			    BufferedWriter out = new BufferedWriter(fstream);
-    			    out.write(level_.toString() + "[" + format.format(curDate) + "]:" + message + "\n");
-    			    out.close();
-    			} catch (IOException e) {
-    				System.out.println("Unable to open log file\n" + e.toString());
+    	}
+    	closeFile();
+    }
+
+    /**
+     * writeEntry<P>
+     * This helper method formats one entry and writes it to the
+     * console and the log file.
+     */
+    private void writeEntry(long time, Level level_, String message) {
+    	entryDate.setTime(time);
+    	String line = level_.toString() + "[" + format.format(entryDate) + "]:" + message;
+		if (logToConsole) {
+			System.out.println(line);
+		}
+    	if (logToFile) {
+    		try {
+    			if (fileWriter == null) {
+    				// Appending to an existing file, count what is already there
+    				fileBytes = new File(filename).length();
+    			}
+    			if ((maxBytes > 0) && (fileBytes + line.length() + 1 > maxBytes)) {
+    				rotateFile();
     			}
-        	}
+    			if (fileWriter == null) {
+    				fileWriter = new BufferedWriter(new FileWriter(filename, true));
+    			}
+    			fileWriter.write(line);
+    			fileWriter.write('\n');
+    			fileBytes += line.length() + 1;
+    		} catch (IOException e) {
+    			System.out.println("Unable to open log file\n" + e.toString());
+    			closeFile();
+    		}
+    	}
+    }
+
+    /**
+     * rotateFile<P>
+     * This helper method renames the log file to filename.1, shifting
+     * older files up by one and discarding the oldest.
+     */
+    private void rotateFile() {
+    	closeFile();
+    	if (backups > 0) {
+    		new File(filename + "." + backups).delete();
+    		for (int i = backups - 1; i >= 1; i--) {
+    			new File(filename + "." + i).renameTo(new File(filename + "." + (i + 1)));
+    		}
+    		new File(filename).renameTo(new File(filename + ".1"));
+    	} else {
+    		new File(filename).delete();
+    	}
+    	fileBytes = 0;
+    }
+
+    /**
+     * flushFile<P>
+     * This helper method flushes the log file.
+     */
+    private void flushFile() {
+    	if (fileWriter != null) {
+    		try {
+    			fileWriter.flush();
+    		} catch (IOException e) {
+    			System.out.println("Unable to write log file\n" + e.toString());
+    			closeFile();
+    		}
+    	}
+    }
+
+    /**
+     * closeFile<P>
+     * This helper method closes the log file.
+     */
+    private void closeFile() {
+    	if (fileWriter != null) {
+    		try {
+    			fileWriter.close();
+    		} catch (IOException e) {
+    			System.out.println("Unable to close log file\n" + e.toString());
+    		}
+    		fileWriter = null;
     	}
     }
 }
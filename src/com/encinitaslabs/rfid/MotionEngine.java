@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid;
+
+import java.util.Arrays;
+
+/**
+ * MotionEngine Object
+ * <P>Streaming motion detection from tag reads. Every tag has a track
+ * per antenna port, held like the TagTable in primitive arrays indexed
+ * by the tag's row, so a read costs a constant amount of work and
+ * allocates nothing. Each track keeps an exponentially weighted mean
+ * and variance of the RSSI and a short history of the latest reads.
+ * <P>A read whose RSSI is further from the mean than both the motion
+ * threshold and three standard deviations is a possible motion, and a
+ * second one in a row is motion, after which the mean starts again
+ * from the new RSSI. A track returns to idle after a full history of
+ * quiet reads. Tracks not read for the departure timeout
+ * depart; they are kept on a least recently read list so finding them
+ * only visits the tracks that depart.
+ * <P>The engine notices when a row has been given to a different tag
+ * by the Epc object it holds, so it needs no notice of evictions.
+ *
+ * @author Encinitas Labs
+ * @version 0.1
+ */
+public class MotionEngine implements TagTable.CapacityListener {
+
+	/**
+	 * Listener Interface
+	 *
+	 * <P>Implemented by anything that handles departures. It is called
+	 * without the engine locked.
+	 */
+	public interface Listener {
+		void motionEvent(int row, int antenna, Event event);
+	}
+
+	public enum Event {
+		Arrival,
+		Motion,
+		Departure
+	}
+
+	public static final int HISTORY = 8;
+	public static final long DEFAULT_DEPARTURE_MS = 3000;
+	private static final int NO_TRACK = -1;
+	private static final float ALPHA = 0.125f;
+	private static final float SIGMA_K_SQUARED = 9.0f;
+	private static final byte IDLE = (byte)TagData.MotionState.Idle.ordinal();
+	private static final byte POSSIBLE = (byte)TagData.MotionState.PossibleMotion.ordinal();
+	private static final byte MOVING = (byte)TagData.MotionState.InMotion.ordinal();
+	private final int antennas;
+	private int rows = 0;
+	private int threshold = 0;
+	private long departure_ms = DEFAULT_DEPARTURE_MS;
+	private int present = 0;
+	private long arrivals = 0;
+	private long motions = 0;
+	private long departures = 0;
+	// Least recently read list of present tracks, lruHead is the most recent
+	private int lruHead = NO_TRACK;
+	private int lruTail = NO_TRACK;
+	// Indexed by row
+	private Epc[] owners = null;
+	// Indexed by track, which is row * antennas + antenna
+	private float[] mean = null;
+	private float[] variance = null;
+	private byte[] state = null;
+	private byte[] quietReads = null;
+	private int[] reads = null;
+	private long[] lastSeen = null;
+	private boolean[] isPresent = null;
+	private int[] lruPrev = null;
+	private int[] lruNext = null;
+	// Indexed by track * HISTORY + read number modulo HISTORY
+	private long[] timeHistory = null;
+	private short[] rssiHistory = null;
+	private byte[] phaseHistory = null;
+
+	/**
+	 * MotionEngine<P>
+	 * Class Constructor
+	 * @param antennas_ The number of antenna ports
+	 * @param rows_ The capacity of the TagTable
+	 * @param thresholdDb The change in RSSI that is motion, in dB
+	 * @param departure_ms_ How long a track may go unread before it departs
+	 */
+	public MotionEngine( int antennas_, int rows_, int thresholdDb, long departure_ms_ ) {
+		antennas = Math.max(1, antennas_);
+		threshold = thresholdDb * 10;
+		if (departure_ms_ > 0) {
+			departure_ms = departure_ms_;
+		}
+		capacityChanged(rows_);
+	}
+
+	/**
+	 * update<P>
+	 * This method adds a read to the track of a tag and antenna.
+	 * @param row The TagTable row of the tag
+	 * @param epc The Epc object the TagTable holds for the row
+	 * @param antenna The antenna port
+	 * @param time_ms When the tag was read
+	 * @param rssi The RSSI in tenths of a dB
+	 * @param phase The phase
+	 * @return Arrival, Motion or null if nothing happened
+	 */
+	public synchronized Event update( int row, Epc epc, int antenna, long time_ms, short rssi, byte phase ) {
+		if (owners[row] != epc) {
+			// The row belongs to a new tag
+			for (int a = 0; a < antennas; a++) {
+				forget(row * antennas + a);
+			}
+			owners[row] = epc;
+		}
+		int track = row * antennas + Math.floorMod(antenna, antennas);
+		int slot = track * HISTORY + (reads[track] & (HISTORY - 1));
+		timeHistory[slot] = time_ms;
+		rssiHistory[slot] = rssi;
+		phaseHistory[slot] = phase;
+		// Past a full history only the position in it matters
+		if (++reads[track] >= 2 * HISTORY) {
+			reads[track] -= HISTORY;
+		}
+		lastSeen[track] = time_ms;
+		if (!isPresent[track]) {
+			isPresent[track] = true;
+			present++;
+			linkAtHead(track);
+			mean[track] = rssi;
+			variance[track] = 0.0f;
+			state[track] = IDLE;
+			quietReads[track] = 0;
+			arrivals++;
+			return Event.Arrival;
+		}
+		if (lruHead != track) {
+			unlink(track);
+			linkAtHead(track);
+		}
+		float deviation = rssi - mean[track];
+		float squared = deviation * deviation;
+		boolean moved = (Math.abs(deviation) > threshold) && (squared > SIGMA_K_SQUARED * variance[track]);
+		if (moved) {
+			// Outliers are kept out of the mean and variance
+			quietReads[track] = 0;
+			if (state[track] == IDLE) {
+				state[track] = POSSIBLE;
+			} else if (state[track] == POSSIBLE) {
+				// Start again from the new location
+				state[track] = MOVING;
+				mean[track] = rssi;
+				variance[track] = 0.0f;
+				motions++;
+				return Event.Motion;
+			}
+			return null;
+		}
+		mean[track] += ALPHA * deviation;
+		variance[track] = (1.0f - ALPHA) * (variance[track] + ALPHA * squared);
+		if (state[track] == POSSIBLE) {
+			// A false alarm
+			state[track] = IDLE;
+		} else if ((state[track] == MOVING) && (++quietReads[track] >= HISTORY)) {
+			state[track] = IDLE;
+		}
+		return null;
+	}
+
+	/**
+	 * expire<P>
+	 * This method departs the tracks not read for the departure timeout
+	 * and passes each one to the listener. The list is walked from the
+	 * least recently read end and stops at the first track still within
+	 * the timeout.
+	 * @param now_ms The current time
+	 * @param listener The handler for departures
+	 * @return The number of tracks that departed
+	 */
+	public int expire( long now_ms, Listener listener ) {
+		int departed = 0;
+		while (true) {
+			int track;
+			synchronized (this) {
+				track = lruTail;
+				if ((track == NO_TRACK) || (lastSeen[track] + departure_ms > now_ms)) {
+					break;
+				}
+				forget(track);
+				departures++;
+			}
+			departed++;
+			if (listener != null) {
+				listener.motionEvent(track / antennas, track % antennas, Event.Departure);
+			}
+		}
+		return departed;
+	}
+
+	/**
+	 * getState<P>
+	 * This method returns the motion state of a tag on one antenna.
+	 * @param row The TagTable row of the tag
+	 * @param antenna The antenna port
+	 * @return The MotionState, Idle if the tag is not present
+	 */
+	public synchronized TagData.MotionState getState( int row, int antenna ) {
+		int track = row * antennas + Math.floorMod(antenna, antennas);
+		if ((row >= rows) || !isPresent[track]) {
+			return TagData.MotionState.Idle;
+		}
+		return TagData.MotionState.values()[state[track]];
+	}
+
+	/**
+	 * isPresent<P>
+	 * This method returns true if a tag is present on any antenna.
+	 * @param row The TagTable row of the tag
+	 * @return True if present
+	 */
+	public synchronized boolean isPresent( int row ) {
+		if (row >= rows) {
+			return false;
+		}
+		for (int a = 0; a < antennas; a++) {
+			if (isPresent[row * antennas + a]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * copyHistory<P>
+	 * This method copies the latest reads of a tag on one antenna,
+	 * oldest first, into the arrays given.
+	 * @param row The TagTable row of the tag
+	 * @param antenna The antenna port
+	 * @param times Receives the read times, at least HISTORY long
+	 * @param rssis Receives the RSSIs, at least HISTORY long
+	 * @param phases Receives the phases, at least HISTORY long, or null
+	 * @return The number of reads copied
+	 */
+	public synchronized int copyHistory( int row, int antenna, long[] times, short[] rssis, byte[] phases ) {
+		int track = row * antennas + Math.floorMod(antenna, antennas);
+		if ((row >= rows) || !isPresent[track]) {
+			return 0;
+		}
+		int count = Math.min(reads[track], HISTORY);
+		int first = reads[track] - count;
+		for (int i = 0; i < count; i++) {
+			int slot = track * HISTORY + ((first + i) & (HISTORY - 1));
+			times[i] = timeHistory[slot];
+			rssis[i] = rssiHistory[slot];
+			if (phases != null) {
+				phases[i] = phaseHistory[slot];
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * getPresentCount<P>
+	 * This method returns the number of tracks currently present.
+	 * @return The number of tracks
+	 */
+	public synchronized int getPresentCount() {
+		return present;
+	}
+
+	/**
+	 * getArrivals<P>
+	 * This method returns the number of arrival events.
+	 * @return The number of arrivals
+	 */
+	public synchronized long getArrivals() {
+		return arrivals;
+	}
+
+	/**
+	 * getMotions<P>
+	 * This method returns the number of motion events.
+	 * @return The number of motions
+	 */
+	public synchronized long getMotions() {
+		return motions;
+	}
+
+	/**
+	 * getDepartures<P>
+	 * This method returns the number of departure events.
+	 * @return The number of departures
+	 */
+	public synchronized long getDepartures() {
+		return departures;
+	}
+
+	/**
+	 * forget<P>
+	 * This helper method removes a track from the present list and
+	 * clears its history.
+	 */
+	private void forget( int track ) {
+		if (isPresent[track]) {
+			isPresent[track] = false;
+			present--;
+			unlink(track);
+		}
+		reads[track] = 0;
+		state[track] = IDLE;
+	}
+
+	/**
+	 * linkAtHead<P>
+	 * This helper method makes a track the most recently read.
+	 */
+	private void linkAtHead( int track ) {
+		lruPrev[track] = NO_TRACK;
+		lruNext[track] = lruHead;
+		if (lruHead != NO_TRACK) {
+			lruPrev[lruHead] = track;
+		}
+		lruHead = track;
+		if (lruTail == NO_TRACK) {
+			lruTail = track;
+		}
+	}
+
+	/**
+	 * unlink<P>
+	 * This helper method takes a track off the least recently read list.
+	 */
+	private void unlink( int track ) {
+		int prev = lruPrev[track];
+		int next = lruNext[track];
+		if (prev != NO_TRACK) {
+			lruNext[prev] = next;
+		} else {
+			lruHead = next;
+		}
+		if (next != NO_TRACK) {
+			lruPrev[next] = prev;
+		} else {
+			lruTail = prev;
+		}
+		lruPrev[track] = NO_TRACK;
+		lruNext[track] = NO_TRACK;
+	}
+
+	/**
+	 * capacityChanged<P>
+	 * This method grows the tracks to cover a number of tag rows, keeping
+	 * the tracks already there. The TagTable calls it as it grows.
+	 * @param rows_ The number of rows in the TagTable
+	 */
+	@Override
+	public synchronized void capacityChanged( int rows_ ) {
+		if (rows_ <= rows) {
+			return;
+		}
+		rows = rows_;
+		int tracks = rows * antennas;
+		owners = (owners == null) ? new Epc[rows] : Arrays.copyOf(owners, rows);
+		mean = (mean == null) ? new float[tracks] : Arrays.copyOf(mean, tracks);
+		variance = (variance == null) ? new float[tracks] : Arrays.copyOf(variance, tracks);
+		state = (state == null) ? new byte[tracks] : Arrays.copyOf(state, tracks);
+		quietReads = (quietReads == null) ? new byte[tracks] : Arrays.copyOf(quietReads, tracks);
+		reads = (reads == null) ? new int[tracks] : Arrays.copyOf(reads, tracks);
+		lastSeen = (lastSeen == null) ? new long[tracks] : Arrays.copyOf(lastSeen, tracks);
+		isPresent = (isPresent == null) ? new boolean[tracks] : Arrays.copyOf(isPresent, tracks);
+		lruPrev = (lruPrev == null) ? new int[tracks] : Arrays.copyOf(lruPrev, tracks);
+		lruNext = (lruNext == null) ? new int[tracks] : Arrays.copyOf(lruNext, tracks);
+		timeHistory = (timeHistory == null) ? new long[tracks * HISTORY] : Arrays.copyOf(timeHistory, tracks * HISTORY);
+		rssiHistory = (rssiHistory == null) ? new short[tracks * HISTORY] : Arrays.copyOf(rssiHistory, tracks * HISTORY);
+		phaseHistory = (phaseHistory == null) ? new byte[tracks * HISTORY] : Arrays.copyOf(phaseHistory, tracks * HISTORY);
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid;
+
+/**
+ * Picture Object
+ * <P>A photo waiting on the picture queue for upload, with the tags
+ * that were resolved for it when it was captured.
+ *  
+ * @author Encinitas Labs
+ * @version 0.1
+ */
+public class Picture {
+	public final String filename;
+	public final String tags;
+
+	/** 
+	 * Picture<P>
+	 * Class Constructor
+	 * @param filename_ The photo file, or the camera TIMEOUT marker
+	 * @param tags_ The comma separated sub-EPCs, the triggering tag
+	 * first, or null if they are not known
+	 */
+	public Picture( String filename_, String tags_ ) {
+		filename = filename_;
+		tags = tags_;
+	}
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid;
+
+import java.util.Arrays;
+
+/**
+ * PredictiveTrigger Object
+ * <P>Decides when to trigger the camera for a tag so that the photo is
+ * exposed as the tag passes closest to the antenna, which is taken to
+ * be the peak of its RSSI. A quadratic is fitted by least squares to
+ * the reads of each tag since it was first seen, older reads slowly
+ * fading, from running sums that each read updates in constant time.
+ * When the fit has a peak still to come, and no further ahead than the
+ * reads already span, the trigger is planned for the peak less the
+ * measured trigger to exposure latency. A tag whose RSSI is falling is
+ * triggered at once, and one whose RSSI is still rising without a
+ * trusted peak is held until it has been seen for the maximum hold time.
+ * <P>The RSSI peak each tag actually reached is tracked as it is read,
+ * and when the tag departs the error of the last prediction is added
+ * to running statistics. State is a fixed amount per TagTable row and
+ * nothing is allocated per read.
+ *
+ * @author Encinitas Labs
+ * @version 0.1
+ */
+public class PredictiveTrigger implements TagTable.CapacityListener {
+
+	public static final long WAIT = Long.MAX_VALUE;
+	public static final long DEFAULT_MAX_HOLD_MS = 1500;
+	public static final long DEFAULT_LATENCY_MS = 1000;
+	private static final int MIN_READS = 6;
+	private static final long MIN_SPAN_MS = 200;
+	// Peaks predicted further ahead than this are not trusted
+	private static final long MAX_LOOKAHEAD_MS = 3000;
+	// The weight kept by the earlier reads at each new read
+	private static final double FORGET = 0.98;
+	private static final int SUMS = 8;
+	private final long maxHold_ms;
+	private int rows = 0;
+	// Indexed by row
+	private Epc[] owners = null;
+	private long[] firstSeen = null;
+	private long[] lastSeen = null;
+	private int[] reads = null;
+	// Indexed by row * SUMS, the weighted sums of 1, x .. x^4, y, xy, x^2 y
+	// where x is the seconds since the tag was first seen
+	private double[] sums = null;
+	private long[] peakTime = null;
+	private short[] peakRssi = null;
+	private long[] predictedPeak = null;
+	private boolean[] pending = null;
+	// Statistics
+	private long planned = 0;
+	private long immediate = 0;
+	private long heldTooLong = 0;
+	private long errorCount = 0;
+	private double errorMean = 0.0;
+	private double errorM2 = 0.0;
+	private long maxAbsError = 0;
+	private long fireCount = 0;
+	private long totalFireLate_ms = 0;
+	private long maxFireLate_ms = 0;
+
+	/**
+	 * PredictiveTrigger<P>
+	 * Class Constructor
+	 * @param rows_ The capacity of the TagTable
+	 * @param maxHold_ms_ The longest a rising tag is held before triggering
+	 */
+	public PredictiveTrigger( int rows_, long maxHold_ms_ ) {
+		maxHold_ms = (maxHold_ms_ > 0) ? maxHold_ms_ : DEFAULT_MAX_HOLD_MS;
+		capacityChanged(rows_);
+	}
+
+	/**
+	 * update<P>
+	 * This method adds a read of a tag to its fit and tracks the peak
+	 * of its RSSI.
+	 * @param row The TagTable row of the tag
+	 * @param epc The Epc object the TagTable holds for the row
+	 * @param time_ms When the tag was read
+	 * @param rssi The RSSI in tenths of a dB
+	 */
+	public synchronized void update( int row, Epc epc, long time_ms, short rssi ) {
+		if (owners[row] != epc) {
+			// The row belongs to a new tag
+			owners[row] = epc;
+			reset(row);
+		}
+		if (firstSeen[row] == 0) {
+			firstSeen[row] = time_ms;
+		}
+		lastSeen[row] = time_ms;
+		reads[row]++;
+		if ((peakTime[row] == 0) || (rssi > peakRssi[row])) {
+			peakRssi[row] = rssi;
+			peakTime[row] = time_ms;
+		}
+		double x = (time_ms - firstSeen[row]) / 1000.0;
+		double xx = x * x;
+		int base = row * SUMS;
+		for (int i = base; i < base + SUMS; i++) {
+			sums[i] *= FORGET;
+		}
+		sums[base] += 1.0;
+		sums[base + 1] += x;
+		sums[base + 2] += xx;
+		sums[base + 3] += xx * x;
+		sums[base + 4] += xx * xx;
+		sums[base + 5] += rssi;
+		sums[base + 6] += x * rssi;
+		sums[base + 7] += xx * rssi;
+	}
+
+	/**
+	 * plan<P>
+	 * This method decides when a tag that may trigger the camera should
+	 * do so.
+	 * @param row The TagTable row of the tag
+	 * @param now_ms The current time
+	 * @param latency_ms The expected time from trigger to exposure
+	 * @return The time to trigger, now_ms or earlier meaning at once, or
+	 * WAIT to decide again on the next read
+	 */
+	public synchronized long plan( int row, long now_ms, long latency_ms ) {
+		if ((row >= rows) || pending[row]) {
+			return WAIT;
+		}
+		long span_ms = lastSeen[row] - firstSeen[row];
+		if ((reads[row] >= MIN_READS) && (span_ms >= MIN_SPAN_MS)) {
+			// Fit rssi = a x^2 + b x + c
+			int base = row * SUMS;
+			double n = sums[base];
+			double s1 = sums[base + 1];
+			double s2 = sums[base + 2];
+			double s3 = sums[base + 3];
+			double s4 = sums[base + 4];
+			double y0 = sums[base + 5];
+			double y1 = sums[base + 6];
+			double y2 = sums[base + 7];
+			double det = s4 * (s2 * n - s1 * s1) - s3 * (s3 * n - s1 * s2) + s2 * (s3 * s1 - s2 * s2);
+			if (Math.abs(det) > 1e-12) {
+				double a = (y2 * (s2 * n - s1 * s1) - s3 * (y1 * n - s1 * y0) + s2 * (y1 * s1 - s2 * y0)) / det;
+				double b = (s4 * (y1 * n - s1 * y0) - y2 * (s3 * n - s1 * s2) + s2 * (s3 * y0 - y1 * s2)) / det;
+				if (a < 0) {
+					long peak_ms = firstSeen[row] + Math.round(-b / (2 * a) * 1000.0);
+					if (peak_ms <= now_ms) {
+						// The peak has passed
+						immediate++;
+						return now_ms;
+					}
+					// Extrapolate no further than the reads reach back
+					if (peak_ms - now_ms <= Math.min(span_ms, MAX_LOOKAHEAD_MS)) {
+						predictedPeak[row] = peak_ms;
+						planned++;
+						return Math.max(now_ms, peak_ms - latency_ms);
+					}
+				} else if (b <= 0) {
+					// Falling away
+					immediate++;
+					return now_ms;
+				}
+			}
+		}
+		// Still rising, or too few reads to tell
+		if (now_ms - firstSeen[row] >= maxHold_ms) {
+			heldTooLong++;
+			return now_ms;
+		}
+		return WAIT;
+	}
+
+	/**
+	 * setPending<P>
+	 * This method marks a tag as having a trigger planned, so it is not
+	 * planned again until the trigger has happened.
+	 * @param row The TagTable row of the tag
+	 * @param pending_ True while the trigger is planned
+	 */
+	public synchronized void setPending( int row, boolean pending_ ) {
+		if (row < rows) {
+			pending[row] = pending_;
+		}
+	}
+
+	/**
+	 * complete<P>
+	 * This method is called when a tag has departed. The error of its
+	 * last predicted peak is added to the statistics and the tag is
+	 * forgotten.
+	 * @param row The TagTable row of the tag
+	 */
+	public synchronized void complete( int row ) {
+		if (row >= rows) {
+			return;
+		}
+		if ((predictedPeak[row] != 0) && (peakTime[row] != 0)) {
+			// Welford's running mean and variance
+			long error = peakTime[row] - predictedPeak[row];
+			errorCount++;
+			double delta = error - errorMean;
+			errorMean += delta / errorCount;
+			errorM2 += delta * (error - errorMean);
+			maxAbsError = Math.max(maxAbsError, Math.abs(error));
+		}
+		reset(row);
+	}
+
+	/**
+	 * fired<P>
+	 * This method records how late a planned trigger actually fired, as
+	 * the camera exposes that much after the predicted peak.
+	 * @param late_ms The milliseconds after the planned time
+	 */
+	public synchronized void fired( long late_ms ) {
+		late_ms = Math.max(0, late_ms);
+		fireCount++;
+		totalFireLate_ms += late_ms;
+		maxFireLate_ms = Math.max(maxFireLate_ms, late_ms);
+	}
+
+	/**
+	 * getMeanFireLateness<P>
+	 * This method returns the mean time planned triggers fired after
+	 * their planned time.
+	 * @return The mean lateness in milliseconds
+	 */
+	public synchronized long getMeanFireLateness() {
+		return (fireCount > 0) ? totalFireLate_ms / fireCount : 0;
+	}
+
+	/**
+	 * getMaxFireLateness<P>
+	 * This method returns the longest time a planned trigger fired after
+	 * its planned time.
+	 * @return The longest lateness in milliseconds
+	 */
+	public synchronized long getMaxFireLateness() {
+		return maxFireLate_ms;
+	}
+
+	/**
+	 * getPlannedCount<P>
+	 * This method returns the number of triggers planned ahead of a
+	 * predicted peak.
+	 * @return The number of triggers
+	 */
+	public synchronized long getPlannedCount() {
+		return planned;
+	}
+
+	/**
+	 * getImmediateCount<P>
+	 * This method returns the number of triggers made at once because
+	 * the peak had passed.
+	 * @return The number of triggers
+	 */
+	public synchronized long getImmediateCount() {
+		return immediate;
+	}
+
+	/**
+	 * getHeldTooLongCount<P>
+	 * This method returns the number of triggers made because the tag
+	 * was held for the maximum time without a predicted peak.
+	 * @return The number of triggers
+	 */
+	public synchronized long getHeldTooLongCount() {
+		return heldTooLong;
+	}
+
+	/**
+	 * getErrorCount<P>
+	 * This method returns the number of predictions checked against the
+	 * peak the tag actually reached.
+	 * @return The number of predictions
+	 */
+	public synchronized long getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * getMeanError<P>
+	 * This method returns the mean prediction error, positive when the
+	 * actual peak came after the predicted one.
+	 * @return The mean error in milliseconds
+	 */
+	public synchronized long getMeanError() {
+		return Math.round(errorMean);
+	}
+
+	/**
+	 * getErrorStdDev<P>
+	 * This method returns the standard deviation of the prediction error.
+	 * @return The standard deviation in milliseconds
+	 */
+	public synchronized long getErrorStdDev() {
+		return (errorCount > 1) ? Math.round(Math.sqrt(errorM2 / (errorCount - 1))) : 0;
+	}
+
+	/**
+	 * getMaxAbsError<P>
+	 * This method returns the largest prediction error either way.
+	 * @return The largest error in milliseconds
+	 */
+	public synchronized long getMaxAbsError() {
+		return maxAbsError;
+	}
+
+	/**
+	 * reset<P>
+	 * This helper method forgets the reads and prediction of a row.
+	 */
+	private void reset( int row ) {
+		firstSeen[row] = 0;
+		lastSeen[row] = 0;
+		reads[row] = 0;
+		Arrays.fill(sums, row * SUMS, (row + 1) * SUMS, 0.0);
+		peakTime[row] = 0;
+		peakRssi[row] = 0;
+		predictedPeak[row] = 0;
+		pending[row] = false;
+	}
+
+	/**
+	 * capacityChanged<P>
+	 * This method grows the fit sums and pending flags to cover a number
+	 * of tag rows. The TagTable calls it as it grows.
+	 * @param rows_ The number of rows in the TagTable
+	 */
+	@Override
+	public synchronized void capacityChanged( int rows_ ) {
+		if (rows_ <= rows) {
+			return;
+		}
+		rows = rows_;
+		owners = (owners == null) ? new Epc[rows] : Arrays.copyOf(owners, rows);
+		firstSeen = (firstSeen == null) ? new long[rows] : Arrays.copyOf(firstSeen, rows);
+		lastSeen = (lastSeen == null) ? new long[rows] : Arrays.copyOf(lastSeen, rows);
+		reads = (reads == null) ? new int[rows] : Arrays.copyOf(reads, rows);
+		sums = (sums == null) ? new double[rows * SUMS] : Arrays.copyOf(sums, rows * SUMS);
+		peakTime = (peakTime == null) ? new long[rows] : Arrays.copyOf(peakTime, rows);
+		peakRssi = (peakRssi == null) ? new short[rows] : Arrays.copyOf(peakRssi, rows);
+		predictedPeak = (predictedPeak == null) ? new long[rows] : Arrays.copyOf(predictedPeak, rows);
+		pending = (pending == null) ? new boolean[rows] : Arrays.copyOf(pending, rows);
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SightingLog Object
+ * <P>A fixed size ring of recent tag reads, each a time, EPC and RSSI,
+ * kept in time order. Finding the reads around a moment is a
+ * binary search, so associating a photo with every tag seen near the
+ * time it was taken costs O(log n) plus the reads returned. Once the
+ * ring is full the oldest reads are overwritten.
+ *
+ * @author Encinitas Labs
+ * @version 0.1
+ */
+public class SightingLog {
+
+	public static final int DEFAULT_CAPACITY = 16384;
+	private final long[] times;
+	private final Epc[] epcs;
+	private final short[] rssis;
+	private final int mask;
+	// The number of reads ever added, the newest being at count - 1
+	private long count = 0;
+	private long lastTime_ms = 0;
+
+	/**
+	 * SightingLog<P>
+	 * Class Constructor
+	 * @param capacity_ The minimum number of reads kept, rounded up to a power of two
+	 */
+	public SightingLog( int capacity_ ) {
+		int size = 2;
+		while (size < capacity_) {
+			size <<= 1;
+		}
+		times = new long[size];
+		epcs = new Epc[size];
+		rssis = new short[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * add<P>
+	 * This method records a tag read. A time earlier than the previous
+	 * read, as after a clock change, is recorded as the previous time
+	 * so the ring stays in order.
+	 * @param time_ms When the tag was read
+	 * @param epc The EPC read
+	 * @param rssi The RSSI in tenths of a dB
+	 */
+	public synchronized void add( long time_ms, Epc epc, short rssi ) {
+		if (time_ms < lastTime_ms) {
+			time_ms = lastTime_ms;
+		}
+		int slot = (int)(count & mask);
+		times[slot] = time_ms;
+		epcs[slot] = epc;
+		rssis[slot] = rssi;
+		lastTime_ms = time_ms;
+		count++;
+	}
+
+	/**
+	 * getTagsNear<P>
+	 * This method returns the distinct tags read within a window around
+	 * a moment, in the order they were first read in the window. Reads
+	 * weaker than minRssi, usually tags passing further away, are ignored.
+	 * @param time_ms The middle of the window
+	 * @param window_ms How far the window extends either side
+	 * @param minRssi The weakest RSSI counted, in tenths of a dB
+	 * @param max The most tags to return
+	 * @return The EPCs of the tags
+	 */
+	public synchronized List<Epc> getTagsNear( long time_ms, long window_ms, int minRssi, int max ) {
+		List<Epc> tags = new ArrayList<Epc>();
+		long end = time_ms + window_ms;
+		for (long i = firstAtOrAfter(time_ms - window_ms); (i < count) && (tags.size() < max); i++) {
+			int slot = (int)(i & mask);
+			if (times[slot] > end) {
+				break;
+			}
+			// Windows hold a handful of tags, so a list beats a set
+			if ((rssis[slot] >= minRssi) && !tags.contains(epcs[slot])) {
+				tags.add(epcs[slot]);
+			}
+		}
+		return tags;
+	}
+
+	/**
+	 * size<P>
+	 * This method returns the number of reads in the ring.
+	 * @return The number of reads
+	 */
+	public synchronized int size() {
+		return (int)Math.min(count, times.length);
+	}
+
+	/**
+	 * getOldestTime<P>
+	 * This method returns the time of the oldest read in the ring, which
+	 * is how far back the ring reaches.
+	 * @return The time in milliseconds, or 0 if the ring is empty
+	 */
+	public synchronized long getOldestTime() {
+		return (count > 0) ? times[(int)((count - size()) & mask)] : 0;
+	}
+
+	/**
+	 * firstAtOrAfter<P>
+	 * This helper method binary searches for the oldest read at or
+	 * after a time.
+	 * @return Its sequence number, or count if there is none
+	 */
+	private long firstAtOrAfter( long time_ms ) {
+		long low = count - size();
+		long high = count;
+		while (low < high) {
+			long mid = (low + high) >>> 1;
+			if (times[(int)(mid & mask)] < time_ms) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
@@ -24,23 +24,23 @@ package com.encinitaslabs.rfid;
 
 /**
  * TagData Object
- * <P>Attributes corresponding to a single tag read.
+ * <P>Attributes corresponding to a single tag read. When parsed from
+ * an inventory packet the EPC is left in the packet, at epcOffset
+ * for epcLength bytes, so a tag already in the TagTable is found
+ * without creating an Epc.
  *  
  * @author Encinitas Labs
  * @version 0.1
  */
 public class TagData {
-	public String epc = null;
+	public int epcOffset = 0;
+	public int epcLength = -1;
 	public byte antPort = 0x00;
 	public short rssi = 0;
 	public byte phase = 0x00;
 	public int freqKHz = 0;
 	public byte temp = 0x00;
 	public boolean crcValid = false;
-	public int triggerCountDown_sec = 0;
-	public int eventCountDown_sec = 0;
-	public int shotCount = 0;
-	public MotionState motionState = MotionState.Idle;
 
 	public enum MotionState {
 		Idle,
@@ -57,59 +57,18 @@ public class TagData {
 	}
 
 	/** 
-	 * update<P>
-	 * This method uses RSSI to determine possible tag motion.
-	 * Sets the motion bit is the change in RSSI exceeds the threshold
+	 * clear<P>
+	 * This method resets every attribute, so a TagData reused for
+	 * each read carries nothing over from the previous tag.
 	 */
-	public void update(TagData tagData, int motionThresholdDb) {
-		// Look for possible motion
-		boolean motionDetect = false;
-		if (this.rssi > tagData.rssi) {
-			motionDetect = ((this.rssi - tagData.rssi) > (motionThresholdDb * 10));
-		} else {
-			motionDetect = ((tagData.rssi - this.rssi) > (motionThresholdDb * 10));
-		}
-		// Process based on the current MotionState
-		if (motionState.compareTo(MotionState.InMotion) == 0) {
-			// Do nothing here once we reach this state
-		} else if (motionState.compareTo(MotionState.PossibleMotion) == 0) {
-			// See if motion is detected again
-			if (motionDetect) {
-				motionState = MotionState.InMotion; // Change state
-				this.rssi = tagData.rssi; // Update the RSSI to the new location
-			} else {
-				motionState = MotionState.Idle; // We had a false alarm
-			}
-		} else { // MotionState.Idle
-			if (motionDetect) {
-				motionState = MotionState.PossibleMotion; // We might have motion
-			}
-		}
-	}
-
-	/** 
-	 * equals<P>
-	 * This method overrides the equals method for this class.
-	 * Two TagData objects are equal if their epc and
-	 * antenna port values are the same.
-	 * @return True if the objects are equal
-	 */
-	@Override
-	public boolean equals(Object obj) {
-	    if (obj == null) {
-	        return false;
-	    }
-	    if ((obj instanceof TagData) == false) {
-	        return false;
-	    }
-	    try {
-		    final TagData other = (TagData) obj;
-		    if (this.epc.equalsIgnoreCase(other.epc) && (this.antPort == other.antPort)) {
-		        return true;
-		    }
-	    } catch (NullPointerException npe) {
-		    return false;
-	    }
-	    return false;
+	public void clear( ) {
+		epcOffset = 0;
+		epcLength = -1;
+		antPort = 0x00;
+		rssi = 0;
+		phase = 0x00;
+		freqKHz = 0;
+		temp = 0x00;
+		crcValid = false;
 	}
 }
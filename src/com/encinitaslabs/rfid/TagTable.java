@@ -0,0 +1,686 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TagTable Object
+ * <P>The tag database. Tags are found through an open addressing index
+ * keyed by the binary EPC and each tag owns a stable row in a set of
+ * primitive arrays, one array per attribute. A tag that is read again
+ * is updated in place, so only the first read of a tag allocates.
+ * Rows that are part of an active photo event are flagged, which
+ * replaces the separate tag event map.
+ * <P>The table is bounded. Rows are kept on a least recently seen list;
+ * when the table is full the least recently seen tag is evicted, and
+ * tags not seen within the retention time are evicted as they age.
+ * Tags in an active event are passed over for eviction where possible.
+ * <P>All methods synchronize on the table; callers that read and then
+ * update a row synchronize on the table around the whole sequence.
+ * <P>Other classes that keep state per row register a CapacityListener
+ * and are grown with the table, so a row is always in range for them.
+ *
+ * @author Encinitas Labs
+ * @version 0.1
+ */
+public class TagTable {
+
+	/**
+	 * CapacityListener Interface
+	 *
+	 * <P>Implemented by anything that keeps arrays indexed by row.
+	 */
+	public interface CapacityListener {
+		void capacityChanged(int capacity);
+	}
+
+	public static final int DEFAULT_CAPACITY = 1024;
+	public static final int DEFAULT_MAX_SIZE = 10000;
+	private static final int NO_ROW = -1;
+	// How far up the LRU list to look for a tag that is not in an event
+	private static final int EVICTION_SCAN = 16;
+	// Shallow size of an Epc object plus the reference to it
+	private static final int EPC_OBJECT_BYTES = 48;
+	private static final TagData.MotionState[] motionStates = TagData.MotionState.values();
+	// The index holds row + 1, zero marks an empty slot
+	private int[] index = null;
+	private int indexMask = 0;
+	private int capacity = 0;
+	private int size = 0;
+	private int maxSize = DEFAULT_MAX_SIZE;
+	private long evictions = 0;
+	// Least recently seen list, lruHead is the most recent
+	private int lruHead = NO_ROW;
+	private int lruTail = NO_ROW;
+	// Rows below rowLimit have been used at least once
+	private int rowLimit = 0;
+	private int freeRow = NO_ROW;
+	// Struct of arrays, indexed by row
+	private Epc[] epcs = null;
+	private int[] hashes = null;
+	private int[] nextFree = null;
+	private short[] rssi = null;
+	private byte[] antPort = null;
+	private byte[] phase = null;
+	private int[] freqKHz = null;
+	private long[] triggerDeadline = null;
+	private long[] eventDeadline = null;
+	private int[] shotCount = null;
+	private byte[] motionState = null;
+	private boolean[] inEvent = null;
+	private long[] lastSeen = null;
+	private int[] lruPrev = null;
+	private int[] lruNext = null;
+	private final List<CapacityListener> capacityListeners = new ArrayList<CapacityListener>();
+
+	/**
+	 * TagTable<P>
+	 * Class Constructor
+	 * @param capacity_ The initial number of rows, rounded up to a power of two
+	 * @param maxSize_ The maximum number of tags held
+	 */
+	public TagTable( int capacity_, int maxSize_ ) {
+		if (maxSize_ > 0) {
+			maxSize = maxSize_;
+		}
+		int rows = 16;
+		while ((rows < capacity_) && (rows < maxSize)) {
+			rows <<= 1;
+		}
+		allocate(rows);
+	}
+
+	/**
+	 * find<P>
+	 * This method looks up a tag by the EPC bytes in a received packet.
+	 * @param src The array holding the EPC
+	 * @param offset The index of the first EPC byte
+	 * @param length The length of the EPC in bytes
+	 * @return The row of the tag, or -1 if it is not in the table
+	 */
+	public synchronized int find( byte[] src, int offset, int length ) {
+		int hash = Epc.hashOf(src, offset, length);
+		for (int slot = hash & indexMask; index[slot] != 0; slot = (slot + 1) & indexMask) {
+			int row = index[slot] - 1;
+			if ((hashes[row] == hash) && epcs[row].matches(src, offset, length)) {
+				return row;
+			}
+		}
+		return NO_ROW;
+	}
+
+	/**
+	 * find<P>
+	 * This method looks up a tag by EPC.
+	 * @param epc The EPC of the tag
+	 * @return The row of the tag, or -1 if it is not in the table
+	 */
+	public synchronized int find( Epc epc ) {
+		int hash = epc.hashCode();
+		for (int slot = hash & indexMask; index[slot] != 0; slot = (slot + 1) & indexMask) {
+			int row = index[slot] - 1;
+			if ((hashes[row] == hash) && epcs[row].equals(epc)) {
+				return row;
+			}
+		}
+		return NO_ROW;
+	}
+
+	/**
+	 * findOrInsert<P>
+	 * This method looks up a tag by the EPC bytes in a received packet,
+	 * adding it to the table if it has not been seen before.
+	 * @param src The array holding the EPC
+	 * @param offset The index of the first EPC byte
+	 * @param length The length of the EPC in bytes
+	 * @return The row of the tag
+	 */
+	public synchronized int findOrInsert( byte[] src, int offset, int length ) {
+		int row = find(src, offset, length);
+		if (row == NO_ROW) {
+			row = insert(Epc.valueOf(src, offset, length));
+		}
+		return row;
+	}
+
+	/**
+	 * findOrInsert<P>
+	 * This method looks up a tag by EPC, adding it to the table if it
+	 * has not been seen before.
+	 * @param epc The EPC of the tag
+	 * @return The row of the tag
+	 */
+	public synchronized int findOrInsert( Epc epc ) {
+		int row = find(epc);
+		if (row == NO_ROW) {
+			row = insert(epc);
+		}
+		return row;
+	}
+
+	/**
+	 * remove<P>
+	 * This method removes a tag from the table and frees its row.
+	 * @param row The row of the tag
+	 */
+	public synchronized void remove( int row ) {
+		if (!isUsed(row)) {
+			return;
+		}
+		// Find the index slot pointing at this row
+		int slot = hashes[row] & indexMask;
+		while (index[slot] != row + 1) {
+			slot = (slot + 1) & indexMask;
+		}
+		// Backward shift deletion keeps every probe sequence unbroken
+		index[slot] = 0;
+		int next = (slot + 1) & indexMask;
+		while (index[next] != 0) {
+			int home = hashes[index[next] - 1] & indexMask;
+			boolean canMove = (next > slot) ? ((home <= slot) || (home > next)) : ((home <= slot) && (home > next));
+			if (canMove) {
+				index[slot] = index[next];
+				index[next] = 0;
+				slot = next;
+			}
+			next = (next + 1) & indexMask;
+		}
+		unlink(row);
+		epcs[row] = null;
+		clearRow(row);
+		nextFree[row] = freeRow;
+		freeRow = row;
+		size--;
+	}
+
+	/**
+	 * clear<P>
+	 * This method removes every tag from the table.
+	 */
+	public synchronized void clear() {
+		Arrays.fill(index, 0);
+		Arrays.fill(epcs, 0, rowLimit, null);
+		for (int row = 0; row < rowLimit; row++) {
+			clearRow(row);
+		}
+		size = 0;
+		rowLimit = 0;
+		freeRow = NO_ROW;
+		lruHead = NO_ROW;
+		lruTail = NO_ROW;
+	}
+
+	/**
+	 * touch<P>
+	 * This method records that a tag has just been seen, making it the
+	 * last to be evicted.
+	 * @param row The row of the tag
+	 * @param now The current time
+	 */
+	public synchronized void touch( int row, long now ) {
+		lastSeen[row] = now;
+		if (lruHead != row) {
+			unlink(row);
+			linkAtHead(row);
+		}
+	}
+
+	/**
+	 * evictExpired<P>
+	 * This method evicts the tags that have not been seen for the
+	 * retention time. The list is walked from the least recently seen
+	 * end and stops at the first tag still within the retention time,
+	 * so the cost depends on the number of expired tags.
+	 * @param now The current time
+	 * @param retention The retention time in the same units, 0 to keep tags forever
+	 * @return The number of tags evicted
+	 */
+	public synchronized int evictExpired( long now, long retention ) {
+		int evicted = 0;
+		if (retention <= 0) {
+			return evicted;
+		}
+		int row = lruTail;
+		while ((row != NO_ROW) && (lastSeen[row] + retention <= now)) {
+			int prev = lruPrev[row];
+			if (!inEvent[row]) {
+				remove(row);
+				evicted++;
+			}
+			row = prev;
+		}
+		evictions += evicted;
+		return evicted;
+	}
+
+	/**
+	 * clearEvents<P>
+	 * This method ends every active photo event so that any tag
+	 * may trigger the camera again.
+	 */
+	public synchronized void clearEvents() {
+		for (int row = 0; row < rowLimit; row++) {
+			endEvent(row);
+		}
+	}
+
+	/**
+	 * update<P>
+	 * This method copies the attributes of a new read into a row.
+	 * @param row The row of the tag
+	 * @param tagData The parsed tag read
+	 */
+	public synchronized void update( int row, TagData tagData ) {
+		rssi[row] = tagData.rssi;
+		antPort[row] = tagData.antPort;
+		phase[row] = tagData.phase;
+		freqKHz[row] = tagData.freqKHz;
+	}
+
+	/**
+	 * startEvent<P>
+	 * This method records a camera trigger for a tag, starting a photo
+	 * event if one is not already active. Deadlines are in the ticks of
+	 * whatever clock the caller ages the table with, zero meaning none.
+	 * @param row The row of the tag
+	 * @param eventDeadline_ The tick at which the event expires
+	 * @param triggerDeadline_ The tick at which the tag may trigger again
+	 */
+	public synchronized void startEvent( int row, long eventDeadline_, long triggerDeadline_ ) {
+		inEvent[row] = true;
+		shotCount[row]++;
+		eventDeadline[row] = eventDeadline_;
+		triggerDeadline[row] = triggerDeadline_;
+	}
+
+	/**
+	 * endEvent<P>
+	 * This method ends the photo event of a tag.
+	 * @param row The row of the tag
+	 */
+	public synchronized void endEvent( int row ) {
+		inEvent[row] = false;
+		shotCount[row] = 0;
+		eventDeadline[row] = 0;
+		triggerDeadline[row] = 0;
+	}
+
+	/**
+	 * isUsed<P>
+	 * This method returns true if a row holds a tag.
+	 * @param row The row
+	 * @return True if the row holds a tag
+	 */
+	public synchronized boolean isUsed( int row ) {
+		return ((row >= 0) && (row < rowLimit) && (epcs[row] != null));
+	}
+
+	/**
+	 * isInEvent<P>
+	 * This method returns true if the tag is part of an active photo event.
+	 * @param row The row of the tag
+	 * @return True if in an event
+	 */
+	public synchronized boolean isInEvent( int row ) {
+		return inEvent[row];
+	}
+
+	/**
+	 * getEpc<P>
+	 * This method returns the EPC of a tag.
+	 * @param row The row of the tag
+	 * @return The Epc
+	 */
+	public synchronized Epc getEpc( int row ) {
+		return epcs[row];
+	}
+
+	/**
+	 * getRssi<P>
+	 * This method returns the RSSI of the last read of a tag.
+	 * @param row The row of the tag
+	 * @return The RSSI in tenths of a dBm
+	 */
+	public synchronized short getRssi( int row ) {
+		return rssi[row];
+	}
+
+	/**
+	 * getAntPort<P>
+	 * This method returns the antenna port of the last read of a tag.
+	 * @param row The row of the tag
+	 * @return The antenna port
+	 */
+	public synchronized byte getAntPort( int row ) {
+		return antPort[row];
+	}
+
+	/**
+	 * getPhase<P>
+	 * This method returns the phase of the last read of a tag.
+	 * @param row The row of the tag
+	 * @return The phase
+	 */
+	public synchronized byte getPhase( int row ) {
+		return phase[row];
+	}
+
+	/**
+	 * getFreqKHz<P>
+	 * This method returns the frequency of the last read of a tag.
+	 * @param row The row of the tag
+	 * @return The frequency in kHz
+	 */
+	public synchronized int getFreqKHz( int row ) {
+		return freqKHz[row];
+	}
+
+	/**
+	 * getShotCount<P>
+	 * This method returns the number of photos taken in the current event.
+	 * @param row The row of the tag
+	 * @return The number of photos
+	 */
+	public synchronized int getShotCount( int row ) {
+		return shotCount[row];
+	}
+
+	/**
+	 * getTriggerDeadline<P>
+	 * This method returns the tick at which the tag may trigger again.
+	 * @param row The row of the tag
+	 * @return The deadline, or zero if the tag is not held off
+	 */
+	public synchronized long getTriggerDeadline( int row ) {
+		return triggerDeadline[row];
+	}
+
+	/**
+	 * setTriggerDeadline<P>
+	 * This method sets the tick at which the tag may trigger again.
+	 * @param row The row of the tag
+	 * @param deadline The deadline, or zero to end the holdoff
+	 */
+	public synchronized void setTriggerDeadline( int row, long deadline ) {
+		triggerDeadline[row] = deadline;
+	}
+
+	/**
+	 * getEventDeadline<P>
+	 * This method returns the tick at which the photo event expires.
+	 * @param row The row of the tag
+	 * @return The deadline, or zero if there is no event
+	 */
+	public synchronized long getEventDeadline( int row ) {
+		return eventDeadline[row];
+	}
+
+	/**
+	 * getMotionState<P>
+	 * This method returns the motion state of a tag.
+	 * @param row The row of the tag
+	 * @return The MotionState
+	 */
+	public synchronized TagData.MotionState getMotionState( int row ) {
+		return motionStates[motionState[row]];
+	}
+
+	/**
+	 * setMotionState<P>
+	 * This method sets the motion state of a tag.
+	 * @param row The row of the tag
+	 * @param state The MotionState
+	 */
+	public synchronized void setMotionState( int row, TagData.MotionState state ) {
+		motionState[row] = (byte)state.ordinal();
+	}
+
+	/**
+	 * size<P>
+	 * This method returns the number of tags in the table.
+	 * @return The number of tags
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * getMaxSize<P>
+	 * This method returns the maximum number of tags held.
+	 * @return The maximum number of tags
+	 */
+	public synchronized int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * getEvictions<P>
+	 * This method returns the number of tags evicted, either because the
+	 * table was full or because they were not seen within the retention time.
+	 * @return The number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * getRowLimit<P>
+	 * This method returns one past the highest row ever used, which
+	 * bounds a scan of the table with isUsed().
+	 * @return The row limit
+	 */
+	public synchronized int getRowLimit() {
+		return rowLimit;
+	}
+
+	/**
+	 * addCapacityListener<P>
+	 * This method registers a listener that is told the number of rows
+	 * now, and again each time the table grows. It is called with the
+	 * table locked.
+	 * @param listener The listener
+	 */
+	public synchronized void addCapacityListener( CapacityListener listener ) {
+		capacityListeners.add(listener);
+		listener.capacityChanged(capacity);
+	}
+
+	/**
+	 * getCapacity<P>
+	 * This method returns the number of rows allocated.
+	 * @return The number of rows
+	 */
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * getBytesPerTag<P>
+	 * This method returns the memory used by one row, including its
+	 * share of the index and its Epc object.
+	 * @return The number of bytes per tag
+	 */
+	public synchronized int getBytesPerTag() {
+		int indexBytes = (index.length / capacity) * 4;
+		// epcs reference, hashes, nextFree, rssi, antPort, phase, freqKHz,
+		// triggerDeadline, eventDeadline, shotCount, motionState, inEvent,
+		// lastSeen, lruPrev, lruNext
+		int rowBytes = 4 + 4 + 4 + 2 + 1 + 1 + 4 + 8 + 8 + 4 + 1 + 1 + 8 + 4 + 4;
+		return indexBytes + rowBytes + EPC_OBJECT_BYTES;
+	}
+
+	/**
+	 * getFootprintBytes<P>
+	 * This method returns an estimate of the memory used by the table,
+	 * the allocated arrays plus the Epc objects of the tags it holds.
+	 * @return The number of bytes
+	 */
+	public synchronized long getFootprintBytes() {
+		long arrayBytes = (long)capacity * (getBytesPerTag() - EPC_OBJECT_BYTES);
+		return arrayBytes + ((long)size * EPC_OBJECT_BYTES);
+	}
+
+	/**
+	 * insert<P>
+	 * This helper method adds a tag that is known not to be in the table.
+	 */
+	private int insert( Epc epc ) {
+		if (size >= maxSize) {
+			evictOne();
+		}
+		if (size == capacity) {
+			allocate(capacity << 1);
+		}
+		int row;
+		if (freeRow != NO_ROW) {
+			row = freeRow;
+			freeRow = nextFree[row];
+		} else {
+			row = rowLimit++;
+		}
+		epcs[row] = epc;
+		hashes[row] = epc.hashCode();
+		clearRow(row);
+		int slot = hashes[row] & indexMask;
+		while (index[slot] != 0) {
+			slot = (slot + 1) & indexMask;
+		}
+		index[slot] = row + 1;
+		size++;
+		linkAtHead(row);
+		return row;
+	}
+
+	/**
+	 * evictOne<P>
+	 * This helper method evicts the least recently seen tag, passing
+	 * over a few tags that are in an event before giving up on them.
+	 */
+	private void evictOne() {
+		int row = lruTail;
+		for (int i = 0; (i < EVICTION_SCAN) && (row != NO_ROW) && inEvent[row]; i++) {
+			row = lruPrev[row];
+		}
+		if ((row == NO_ROW) || inEvent[row]) {
+			row = lruTail;
+		}
+		remove(row);
+		evictions++;
+	}
+
+	/**
+	 * linkAtHead<P>
+	 * This helper method makes a row the most recently seen.
+	 */
+	private void linkAtHead( int row ) {
+		lruPrev[row] = NO_ROW;
+		lruNext[row] = lruHead;
+		if (lruHead != NO_ROW) {
+			lruPrev[lruHead] = row;
+		}
+		lruHead = row;
+		if (lruTail == NO_ROW) {
+			lruTail = row;
+		}
+	}
+
+	/**
+	 * unlink<P>
+	 * This helper method takes a row off the least recently seen list.
+	 */
+	private void unlink( int row ) {
+		int prev = lruPrev[row];
+		int next = lruNext[row];
+		if (prev != NO_ROW) {
+			lruNext[prev] = next;
+		} else {
+			lruHead = next;
+		}
+		if (next != NO_ROW) {
+			lruPrev[next] = prev;
+		} else {
+			lruTail = prev;
+		}
+		lruPrev[row] = NO_ROW;
+		lruNext[row] = NO_ROW;
+	}
+
+	/**
+	 * clearRow<P>
+	 * This helper method resets the attributes of a row.
+	 */
+	private void clearRow( int row ) {
+		rssi[row] = 0;
+		antPort[row] = 0;
+		phase[row] = 0;
+		freqKHz[row] = 0;
+		triggerDeadline[row] = 0;
+		eventDeadline[row] = 0;
+		shotCount[row] = 0;
+		motionState[row] = (byte)TagData.MotionState.Idle.ordinal();
+		inEvent[row] = false;
+		lastSeen[row] = 0;
+	}
+
+	/**
+	 * allocate<P>
+	 * This helper method sizes the row arrays and rebuilds the index,
+	 * which is kept at twice the number of rows, then tells the
+	 * capacity listeners.
+	 */
+	private void allocate( int rows ) {
+		capacity = rows;
+		epcs = (epcs == null) ? new Epc[rows] : Arrays.copyOf(epcs, rows);
+		hashes = (hashes == null) ? new int[rows] : Arrays.copyOf(hashes, rows);
+		nextFree = (nextFree == null) ? new int[rows] : Arrays.copyOf(nextFree, rows);
+		rssi = (rssi == null) ? new short[rows] : Arrays.copyOf(rssi, rows);
+		antPort = (antPort == null) ? new byte[rows] : Arrays.copyOf(antPort, rows);
+		phase = (phase == null) ? new byte[rows] : Arrays.copyOf(phase, rows);
+		freqKHz = (freqKHz == null) ? new int[rows] : Arrays.copyOf(freqKHz, rows);
+		triggerDeadline = (triggerDeadline == null) ? new long[rows] : Arrays.copyOf(triggerDeadline, rows);
+		eventDeadline = (eventDeadline == null) ? new long[rows] : Arrays.copyOf(eventDeadline, rows);
+		shotCount = (shotCount == null) ? new int[rows] : Arrays.copyOf(shotCount, rows);
+		motionState = (motionState == null) ? new byte[rows] : Arrays.copyOf(motionState, rows);
+		inEvent = (inEvent == null) ? new boolean[rows] : Arrays.copyOf(inEvent, rows);
+		lastSeen = (lastSeen == null) ? new long[rows] : Arrays.copyOf(lastSeen, rows);
+		lruPrev = (lruPrev == null) ? new int[rows] : Arrays.copyOf(lruPrev, rows);
+		lruNext = (lruNext == null) ? new int[rows] : Arrays.copyOf(lruNext, rows);
+		index = new int[rows << 1];
+		indexMask = index.length - 1;
+		for (int row = 0; row < rowLimit; row++) {
+			if (epcs[row] != null) {
+				int slot = hashes[row] & indexMask;
+				while (index[slot] != 0) {
+					slot = (slot + 1) & indexMask;
+				}
+				index[slot] = row + 1;
+			}
+		}
+		for (CapacityListener listener : capacityListeners) {
+			listener.capacityChanged(rows);
+		}
+	}
+}
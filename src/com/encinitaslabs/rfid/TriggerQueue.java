@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid;
+
+/**
+ * TriggerQueue Object
+ * 
+ * <P>Triggers for tags read while every camera for their antenna is
+ * busy. A tag has at most one pending trigger, so further reads of it
+ * are coalesced into the one already queued. Each trigger has a
+ * deadline after which a photo would be too late, and the queue is
+ * bounded so a long capture cannot build an unbounded backlog.
+ * <P>The queue is drained in arrival order whenever a camera becomes
+ * idle. Entries are kept in parallel arrays and nothing is allocated
+ * per trigger. The caller holds the tagTable lock.
+ *  
+ * @author Encinitas Labs
+ * @version 0.1
+ */
+public class TriggerQueue {
+
+	/**
+	 * Handler Interface
+	 * 
+	 * <P>Implemented by whatever fires the camera for a drained trigger.
+	 */
+	public interface Handler {
+		/**
+		 * Called for each live trigger, oldest first.
+		 * @param row The row of the tag
+		 * @param antenna The antenna the tag was last seen on
+		 * @return True if a camera took the trigger, false to keep it queued
+		 */
+		boolean trigger(int row, int antenna);
+	}
+
+	public static final int DEFAULT_SIZE = 16;
+	public static final long DEFAULT_DEADLINE_MS = 2000;
+	private final int capacity;
+	private int count = 0;
+	// Indexed by position in the queue, oldest first
+	private final int[] rows;
+	private final Epc[] owners;
+	private final int[] antennas;
+	private final long[] deadlines;
+	// Statistics
+	private long captured = 0;
+	private long coalesced = 0;
+	private long expired = 0;
+	private long dropped = 0;
+
+	/** 
+	 * TriggerQueue<P>
+	 * Class Constructor
+	 * @param capacity_ The most triggers held at once
+	 */
+	public TriggerQueue( int capacity_ ) {
+		capacity = Math.max(1, capacity_);
+		rows = new int[capacity];
+		owners = new Epc[capacity];
+		antennas = new int[capacity];
+		deadlines = new long[capacity];
+	}
+
+	/** 
+	 * offer<P>
+	 * This method queues a trigger for a tag, or coalesces it into the
+	 * one already queued for the tag, which keeps its deadline and
+	 * takes the latest antenna.
+	 * @param row The row of the tag
+	 * @param epc The EPC of the tag, to detect the row being reused
+	 * @param antenna The antenna the tag was seen on
+	 * @param deadline_ms The time after which the trigger is useless
+	 * @return False if the queue was full and the trigger was dropped
+	 */
+	public synchronized boolean offer( int row, Epc epc, int antenna, long deadline_ms ) {
+		int index = indexOf(row);
+		if ((index >= 0) && (owners[index] == epc)) {
+			antennas[index] = antenna;
+			coalesced++;
+			return true;
+		} else if (index >= 0) {
+			// The row now belongs to a different tag
+			removeAt(index);
+			dropped++;
+		}
+		if (count == capacity) {
+			dropped++;
+			return false;
+		}
+		rows[count] = row;
+		owners[count] = epc;
+		antennas[count] = antenna;
+		deadlines[count] = deadline_ms;
+		count++;
+		return true;
+	}
+
+	/** 
+	 * drain<P>
+	 * This method hands the queued triggers to the handler, oldest
+	 * first. Triggers past their deadline are expired and triggers
+	 * whose tag no longer owns its row are dropped. A trigger the
+	 * handler refuses stays queued, since a camera for another antenna
+	 * may still be free for the triggers behind it.
+	 * @param tagTable The tag database
+	 * @param now_ms The current time
+	 * @param handler Fires the camera
+	 * @return The number of triggers captured
+	 */
+	public synchronized int drain( TagTable tagTable, long now_ms, Handler handler ) {
+		int taken = 0;
+		int i = 0;
+		while (i < count) {
+			if (deadlines[i] < now_ms) {
+				removeAt(i);
+				expired++;
+			} else if (!tagTable.isUsed(rows[i]) || (tagTable.getEpc(rows[i]) != owners[i])) {
+				removeAt(i);
+				dropped++;
+			} else if (handler.trigger(rows[i], antennas[i])) {
+				removeAt(i);
+				captured++;
+				taken++;
+			} else {
+				i++;
+			}
+		}
+		return taken;
+	}
+
+	/** 
+	 * remove<P>
+	 * This method takes the trigger for a tag off the queue because the
+	 * tag has left the field. It is counted as dropped.
+	 * @param row The row of the tag
+	 */
+	public synchronized void remove( int row ) {
+		int index = indexOf(row);
+		if (index >= 0) {
+			removeAt(index);
+			dropped++;
+		}
+	}
+
+	/** 
+	 * satisfied<P>
+	 * This method takes the trigger for a tag off the queue because the
+	 * tag has been photographed by a later read. It is counted as
+	 * captured.
+	 * @param row The row of the tag
+	 */
+	public synchronized void satisfied( int row ) {
+		int index = indexOf(row);
+		if (index >= 0) {
+			removeAt(index);
+			captured++;
+		}
+	}
+
+	/** 
+	 * size<P>
+	 * This method returns the number of triggers waiting.
+	 * @return The number of triggers
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	/** 
+	 * getCapturedCount<P>
+	 * This method returns the number of queued triggers that ended in
+	 * a photo.
+	 * @return The number of triggers
+	 */
+	public synchronized long getCapturedCount() {
+		return captured;
+	}
+
+	/** 
+	 * getCoalescedCount<P>
+	 * This method returns the number of triggers merged into one already
+	 * queued for the same tag.
+	 * @return The number of triggers
+	 */
+	public synchronized long getCoalescedCount() {
+		return coalesced;
+	}
+
+	/** 
+	 * getExpiredCount<P>
+	 * This method returns the number of triggers that passed their
+	 * deadline before a camera was free.
+	 * @return The number of triggers
+	 */
+	public synchronized long getExpiredCount() {
+		return expired;
+	}
+
+	/** 
+	 * getDroppedCount<P>
+	 * This method returns the number of triggers refused because the
+	 * queue was full or discarded because their tag left the field.
+	 * @return The number of triggers
+	 */
+	public synchronized long getDroppedCount() {
+		return dropped;
+	}
+
+	/** 
+	 * indexOf<P>
+	 * This helper method returns the position of the trigger for a row,
+	 * or -1 if there is none.
+	 */
+	private int indexOf( int row ) {
+		for (int i = 0; i < count; i++) {
+			if (rows[i] == row) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** 
+	 * removeAt<P>
+	 * This helper method removes a trigger, keeping the rest in order.
+	 */
+	private void removeAt( int index ) {
+		count--;
+		for (int i = index; i < count; i++) {
+			rows[i] = rows[i + 1];
+			owners[i] = owners[i + 1];
+			antennas[i] = antennas[i + 1];
+			deadlines[i] = deadlines[i + 1];
+		}
+		owners[count] = null;
+	}
+}
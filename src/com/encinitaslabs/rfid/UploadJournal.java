@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UploadJournal Object
+ * <P>An append-only journal of the state of every photo waiting to be
+ * uploaded. Each state change is one line of the form
+ * "time state failures filename [tags]", where the time of a Failed
+ * record is when its retry is due. The tags of a photo are written with
+ * its Captured record and kept, so a retry uploads the same tags. Appends are buffered and forced to disk by
+ * sync(), which is called periodically, so a crash loses at most the
+ * last few transitions, and those only cause a photo to be retried.
+ * At startup the journal is replayed in a single pass and rewritten
+ * with just the photos that still need uploading.
+ * <P>Failed uploads are retried with exponential backoff. Photos that
+ * were captured, queued or uploading when the application stopped are
+ * treated as failed and retried straight away.
+ *
+ * @author Encinitas Labs
+ * @version 0.1
+ */
+public class UploadJournal {
+
+	public enum State {
+		Captured,
+		Queued,
+		Uploading,
+		Uploaded,
+		Failed,
+		Discarded
+	}
+
+	public static final String DEFAULT_FILENAME = "upload_journal.log";
+	public static final long DEFAULT_MIN_BACKOFF_MS = 30000;
+	public static final long DEFAULT_MAX_BACKOFF_MS = 1800000;
+	private final int COMPACT_RATIO = 4;
+	private final int COMPACT_MIN_RECORDS = 1024;
+
+	/**
+	 * Entry Object
+	 * <P>The latest state of one photo.
+	 */
+	private static final class Entry {
+		State state;
+		int failures = 0;
+		long retryTime_ms = 0;
+		String tags = null;
+	}
+
+	private final File file;
+	private final long minBackoff_ms;
+	private final long maxBackoff_ms;
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+	private FileOutputStream stream = null;
+	private Writer writer = null;
+	private int records = 0;
+	private boolean dirty = false;
+	private Log logObject = null;
+
+	/**
+	 * UploadJournal<P>
+	 * Class Constructor
+	 * @param filename_ The journal file
+	 * @param minBackoff_ms_ The delay before the first retry
+	 * @param maxBackoff_ms_ The longest delay between retries
+	 * @param logObject_ Used for making log entries
+	 */
+	public UploadJournal( String filename_, long minBackoff_ms_, long maxBackoff_ms_, Log logObject_ ) {
+		file = new File(filename_);
+		minBackoff_ms = Math.max(1, minBackoff_ms_);
+		maxBackoff_ms = Math.max(minBackoff_ms, maxBackoff_ms_);
+		logObject = logObject_;
+	}
+
+	/**
+	 * open<P>
+	 * This method replays the journal and starts a compacted journal.
+	 * If there is no journal yet, the photos already in its directory
+	 * are added so that none are lost when the journal is first used.
+	 * @param pattern The glob matching photo files, e.g. "*.jpg"
+	 * @return The number of photos waiting to be uploaded
+	 * @throws IOException
+	 */
+	public synchronized int open( String pattern ) throws IOException {
+		entries.clear();
+		if (file.exists()) {
+			replay();
+		} else {
+			// Photos taken before the journal existed
+			Path dir = file.getAbsoluteFile().getParentFile().toPath();
+			try (DirectoryStream<Path> photos = Files.newDirectoryStream(dir, pattern)) {
+				for (Path photo : photos) {
+					Entry entry = new Entry();
+					entry.state = State.Captured;
+					entries.put(photo.getFileName().toString(), entry);
+				}
+			}
+		}
+		// Anything not finished when we stopped is retried now
+		long now = System.currentTimeMillis();
+		for (Entry entry : entries.values()) {
+			if (entry.state != State.Failed) {
+				entry.state = State.Failed;
+				entry.retryTime_ms = now;
+			}
+		}
+		compact();
+		return entries.size();
+	}
+
+	/**
+	 * record<P>
+	 * This method appends a state change for a photo. Uploaded and
+	 * Discarded photos are forgotten, a failed photo is given its next
+	 * retry time.
+	 * @param filename The photo
+	 * @param state The new state
+	 */
+	public synchronized void record( String filename, State state ) {
+		record(filename, state, null);
+	}
+
+	/**
+	 * record<P>
+	 * This method appends a state change for a photo along with the tags
+	 * to upload with it.
+	 * @param filename The photo
+	 * @param state The new state
+	 * @param tags The comma separated sub-EPCs, or null to keep the
+	 * tags already recorded
+	 */
+	public synchronized void record( String filename, State state, String tags ) {
+		long now = System.currentTimeMillis();
+		Entry entry = entries.get(filename);
+		int failures = (entry != null) ? entry.failures : 0;
+		long time = now;
+		if (state == State.Failed) {
+			failures++;
+			time = now + getBackoff(failures);
+		}
+		apply(filename, state, failures, time, tags);
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.write(time + " " + state.name() + " " + failures + " " + filename + ((tags != null) ? " " + tags : "") + "\n");
+			records++;
+			dirty = true;
+		} catch (IOException e) {
+			log("Unable to write upload journal\n" + e.toString(), Log.Level.Error);
+		}
+	}
+
+	/**
+	 * sync<P>
+	 * This method forces the appended state changes to disk, and
+	 * compacts the journal once it is mostly finished photos.
+	 */
+	public synchronized void sync() {
+		if (!dirty || (writer == null)) {
+			return;
+		}
+		try {
+			writer.flush();
+			stream.getFD().sync();
+			dirty = false;
+			if ((records > COMPACT_MIN_RECORDS) && (records > COMPACT_RATIO * entries.size())) {
+				compact();
+			}
+		} catch (IOException e) {
+			log("Unable to sync upload journal\n" + e.toString(), Log.Level.Error);
+		}
+	}
+
+	/**
+	 * takeDue<P>
+	 * This method returns the failed photos whose backoff has passed
+	 * and marks them Queued. Photos that no longer exist are discarded.
+	 * @param max The most photos to return
+	 * @return The filenames, oldest first
+	 */
+	public synchronized List<String> takeDue( int max ) {
+		long now = System.currentTimeMillis();
+		File directory = file.getAbsoluteFile().getParentFile();
+		List<String> due = new ArrayList<String>();
+		List<String> missing = new ArrayList<String>();
+		for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext() && (due.size() < max); ) {
+			Map.Entry<String, Entry> e = it.next();
+			Entry entry = e.getValue();
+			if ((entry.state == State.Failed) && (entry.retryTime_ms <= now)) {
+				if (new File(directory, e.getKey()).exists()) {
+					due.add(e.getKey());
+				} else {
+					missing.add(e.getKey());
+				}
+			}
+		}
+		// The entries are only changed once the iteration is over
+		for (String filename : due) {
+			record(filename, State.Queued);
+		}
+		for (String filename : missing) {
+			log(filename + " no longer exists, not retried", Log.Level.Warning);
+			record(filename, State.Discarded);
+		}
+		return due;
+	}
+
+	/**
+	 * getTags<P>
+	 * This method returns the tags recorded for a photo.
+	 * @param filename The photo
+	 * @return The comma separated sub-EPCs, or null if none were recorded
+	 */
+	public synchronized String getTags( String filename ) {
+		Entry entry = entries.get(filename);
+		return (entry != null) ? entry.tags : null;
+	}
+
+	/**
+	 * size<P>
+	 * This method returns the number of photos waiting to be uploaded.
+	 * @return The number of photos
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * getFailedCount<P>
+	 * This method returns the number of photos waiting for a retry.
+	 * @return The number of photos
+	 */
+	public synchronized int getFailedCount() {
+		int failed = 0;
+		for (Entry entry : entries.values()) {
+			if (entry.state == State.Failed) {
+				failed++;
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * close<P>
+	 * This method syncs and closes the journal.
+	 */
+	public synchronized void close() {
+		sync();
+		try {
+			if (writer != null) {
+				writer.close();
+			}
+		} catch (IOException e) {
+			log("Unable to close upload journal\n" + e.toString(), Log.Level.Error);
+		}
+		writer = null;
+		stream = null;
+	}
+
+	/**
+	 * replay<P>
+	 * This helper method rebuilds the photo states from the journal.
+	 * A torn last line is ignored.
+	 */
+	private void replay() throws IOException {
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				// Records written before tags were kept have four fields
+				String[] st = line.split(" ", 5);
+				if (st.length < 4) {
+					continue;
+				}
+				try {
+					apply(st[3], State.valueOf(st[1]), Integer.parseInt(st[2]), Long.parseLong(st[0]), (st.length == 5) ? st[4] : null);
+				} catch (IllegalArgumentException e) {
+					// Skip a corrupt record
+				}
+			}
+		}
+	}
+
+	/**
+	 * getBackoff<P>
+	 * This helper method returns the delay before a retry, doubling with
+	 * each failure up to the maximum.
+	 */
+	private long getBackoff( int failures ) {
+		int shift = Math.min(Math.max(failures - 1, 0), 30);
+		return Math.min(maxBackoff_ms, minBackoff_ms << shift);
+	}
+
+	/**
+	 * apply<P>
+	 * This helper method applies a state change to the in-memory state.
+	 */
+	private void apply( String filename, State state, int failures, long time_ms, String tags ) {
+		if ((state == State.Uploaded) || (state == State.Discarded)) {
+			entries.remove(filename);
+			return;
+		}
+		Entry entry = entries.get(filename);
+		if (entry == null) {
+			entry = new Entry();
+			entries.put(filename, entry);
+		}
+		entry.state = state;
+		entry.failures = failures;
+		if (tags != null) {
+			entry.tags = tags;
+		}
+		if (state == State.Failed) {
+			entry.retryTime_ms = time_ms;
+		}
+	}
+
+	/**
+	 * compact<P>
+	 * This helper method rewrites the journal with one record per photo
+	 * still waiting and reopens it for appending. The new journal is
+	 * written to a temporary file and moved into place, so a crash
+	 * leaves either the old or the new journal.
+	 */
+	private void compact() throws IOException {
+		if (writer != null) {
+			writer.close();
+		}
+		File temp = new File(file.getPath() + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(temp)) {
+			Writer w = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+			long now = System.currentTimeMillis();
+			for (Map.Entry<String, Entry> e : entries.entrySet()) {
+				Entry entry = e.getValue();
+				long time = (entry.state == State.Failed) ? entry.retryTime_ms : now;
+				w.write(time + " " + entry.state.name() + " " + entry.failures + " " + e.getKey() + ((entry.tags != null) ? " " + entry.tags : "") + "\n");
+			}
+			w.flush();
+			out.getFD().sync();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		records = entries.size();
+		stream = new FileOutputStream(file, true);
+		writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+		dirty = false;
+	}
+
+	/**
+	 * log<P>
+	 * This method is used for making log entries.
+	 */
+	private void log( String entry, Log.Level logLevel ) {
+		if (logObject != null) {
+			logObject.makeEntry(entry, logLevel);
+		} else {
+			System.out.println(entry);
+		}
+	}
+}
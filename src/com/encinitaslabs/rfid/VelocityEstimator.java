@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid;
+
+import java.util.Arrays;
+
+/**
+ * VelocityEstimator Object
+ * <P>Estimates the radial velocity of each tag from the backscatter
+ * phase reported with the R2000 extra hardware data. The round trip
+ * phase advances by 4 pi f d / c, so the change in phase between two
+ * reads on the same channel and antenna gives the change in distance.
+ * Each channel has its own phase offset, so the last read is kept per
+ * (channel, antenna) in a few slots per tag, the least recently used
+ * slot being reused when the reader hops. Unwrapping assumes the tag
+ * moves less than a quarter wavelength, about 8 cm, between reads,
+ * so pairs further apart than MAX_GAP_MS are not used.
+ * <P>Like the TagTable, state is held in primitive arrays indexed by
+ * the tag's row, a fixed amount per tag, and an update allocates
+ * nothing. A negative velocity is a tag getting closer.
+ *
+ * @author Encinitas Labs
+ * @version 0.1
+ */
+public class VelocityEstimator implements TagTable.CapacityListener {
+
+	public static final int SLOTS = 4;
+	// The phase is reported in 64ths of a cycle
+	private static final int PHASE_STEPS = 64;
+	private static final long MAX_GAP_MS = 100;
+	private static final long STALE_MS = 500;
+	private static final float ALPHA = 0.25f;
+	private static final double SPEED_OF_LIGHT = 299792458.0;
+	private int rows = 0;
+	private long estimates = 0;
+	// Indexed by row
+	private Epc[] owners = null;
+	private float[] velocity = null;
+	private long[] velocityTime = null;
+	// Indexed by row * SLOTS + slot
+	private int[] slotFreqKHz = null;
+	private byte[] slotAntenna = null;
+	private byte[] slotPhase = null;
+	private long[] slotTime = null;
+
+	/**
+	 * VelocityEstimator<P>
+	 * Class Constructor
+	 * @param rows_ The capacity of the TagTable
+	 */
+	public VelocityEstimator( int rows_ ) {
+		capacityChanged(rows_);
+	}
+
+	/**
+	 * update<P>
+	 * This method adds a read of a tag. Reads without extra hardware
+	 * data, which have no frequency, are ignored.
+	 * @param row The TagTable row of the tag
+	 * @param epc The Epc object the TagTable holds for the row
+	 * @param antenna The antenna port
+	 * @param freqKHz The channel frequency
+	 * @param phase The phase in 64ths of a cycle
+	 * @param time_ms When the tag was read
+	 */
+	public synchronized void update( int row, Epc epc, byte antenna, int freqKHz, byte phase, long time_ms ) {
+		if (freqKHz <= 0) {
+			return;
+		}
+		int base = row * SLOTS;
+		if (owners[row] != epc) {
+			// The row belongs to a new tag
+			owners[row] = epc;
+			velocityTime[row] = 0;
+			Arrays.fill(slotTime, base, base + SLOTS, 0);
+		}
+		// Find the slot for this channel, or the least recently used one
+		int slot = base;
+		for (int i = base; i < base + SLOTS; i++) {
+			if ((slotFreqKHz[i] == freqKHz) && (slotAntenna[i] == antenna) && (slotTime[i] != 0)) {
+				slot = i;
+				break;
+			}
+			if (slotTime[i] < slotTime[slot]) {
+				slot = i;
+			}
+		}
+		long gap = time_ms - slotTime[slot];
+		if ((slotFreqKHz[slot] == freqKHz) && (slotAntenna[slot] == antenna) && (slotTime[slot] != 0) && (gap > 0) && (gap <= MAX_GAP_MS)) {
+			// Unwrap to the smallest change in phase
+			int steps = phase - slotPhase[slot];
+			if (steps >= PHASE_STEPS / 2) {
+				steps -= PHASE_STEPS;
+			} else if (steps < -PHASE_STEPS / 2) {
+				steps += PHASE_STEPS;
+			}
+			double distance = steps * SPEED_OF_LIGHT / (2.0 * PHASE_STEPS * freqKHz * 1000.0);
+			float sample = (float)(distance * 1000.0 / gap);
+			if (time_ms - velocityTime[row] > STALE_MS) {
+				velocity[row] = sample;
+			} else {
+				velocity[row] += ALPHA * (sample - velocity[row]);
+			}
+			velocityTime[row] = time_ms;
+			estimates++;
+		}
+		slotFreqKHz[slot] = freqKHz;
+		slotAntenna[slot] = antenna;
+		slotPhase[slot] = phase;
+		slotTime[slot] = time_ms;
+	}
+
+	/**
+	 * getVelocity<P>
+	 * This method returns the radial velocity of a tag.
+	 * @param row The TagTable row of the tag
+	 * @param now_ms The current time
+	 * @return The velocity in metres per second, negative when the tag
+	 * is getting closer, or NaN if there is no recent estimate
+	 */
+	public synchronized float getVelocity( int row, long now_ms ) {
+		if ((row >= rows) || (velocityTime[row] == 0) || (now_ms - velocityTime[row] > STALE_MS)) {
+			return Float.NaN;
+		}
+		return velocity[row];
+	}
+
+	/**
+	 * getEstimates<P>
+	 * This method returns the number of velocity samples taken.
+	 * @return The number of samples
+	 */
+	public synchronized long getEstimates() {
+		return estimates;
+	}
+
+	/**
+	 * capacityChanged<P>
+	 * This method grows the phase slots and velocities to cover a number
+	 * of tag rows. The TagTable calls it as it grows.
+	 * @param rows_ The number of rows in the TagTable
+	 */
+	@Override
+	public synchronized void capacityChanged( int rows_ ) {
+		if (rows_ <= rows) {
+			return;
+		}
+		rows = rows_;
+		owners = (owners == null) ? new Epc[rows] : Arrays.copyOf(owners, rows);
+		velocity = (velocity == null) ? new float[rows] : Arrays.copyOf(velocity, rows);
+		velocityTime = (velocityTime == null) ? new long[rows] : Arrays.copyOf(velocityTime, rows);
+		slotFreqKHz = (slotFreqKHz == null) ? new int[rows * SLOTS] : Arrays.copyOf(slotFreqKHz, rows * SLOTS);
+		slotAntenna = (slotAntenna == null) ? new byte[rows * SLOTS] : Arrays.copyOf(slotAntenna, rows * SLOTS);
+		slotPhase = (slotPhase == null) ? new byte[rows * SLOTS] : Arrays.copyOf(slotPhase, rows * SLOTS);
+		slotTime = (slotTime == null) ? new long[rows * SLOTS] : Arrays.copyOf(slotTime, rows * SLOTS);
+	}
+}
@@ -182,11 +182,28 @@ public enum CmdHead {
 	RFID_EngGetRFPower((byte)0x93);
 
 	private byte byte1st;
+	private static final CmdHead[] byValue = new CmdHead[256];
+	
+	static {
+		for (CmdHead cmdHead : values()) {
+			byValue[cmdHead.byte1st & 0xff] = cmdHead;
+		}
+	}
 	
 	CmdHead(byte byte1st) {
 		this.byte1st = byte1st;
 	}
 	
+	/** 
+	 * fromByte<P>
+	 * This method looks up a command by its id byte without copying values().
+	 * @param value The command id byte
+	 * @return The command, or null if the byte is not a valid command id
+	 */
+	public static CmdHead fromByte(byte value) {
+		return byValue[value & 0xff];
+	}
+	
 	public byte get1stCmd() {
 		return this.byte1st;
 	}
@@ -580,7 +580,7 @@ public class CmdReaderModuleTestSupport {
 	 * @author Encinitas Laboratories, Inc.
 	 * @version 0.1
 	 */
-	static final class RFID_EngGetTemperature extends MtiCmd {
+	public static final class RFID_EngGetTemperature extends MtiCmd {
 		public RFID_EngGetTemperature(){
 			mCmdHead = CmdHead.RFID_EngGetTemperature;
 		};
@@ -622,7 +622,7 @@ public class CmdReaderModuleTestSupport {
 		 * 
 		 * @return Temperature
 		 */
-		public short getTemperature(byte[] response) {
+		public static short getTemperature(byte[] response) {
 			return getShort(response, STATUS_POS + 1);
 		}
 	}
@@ -235,13 +235,15 @@ public class CmdTagProtocol {
 		 * parseResponse
 		 * <P>This method is called to copy the values returned on the serial port
 		 * following an Inventory Response. This method can be called several times
-		 * until the Command-End packet is seen.
+		 * until the Command-End packet is seen. The EPC is not copied, its
+		 * position in the response buffer is recorded in epcOffset and
+		 * epcLength, which is -1 if the EPC could not be located.
 		 * 
 		 * @param response The response buffer.
-		 * @param addSpace Add a space between EPC bytes.
 		 * @param tagData A storage class to put all the parsed data.
 		 */
-		public static void parseResponse(byte[] response, boolean addSpace, TagData tagData) {
+		public static void parseResponse(byte[] response, TagData tagData) {
+			tagData.clear();
 			tagData.crcValid = ((response[FLAGS_INDEX] & (byte)0x01) == (byte)0x00);
 			if (tagData.crcValid) {
 				byte pkt_relseq = response[REL_SEQ_INDEX];
@@ -270,14 +272,12 @@ public class CmdTagProtocol {
 					tagDataIndex = tagDataIndex + 8;
 					epcLengthBytes = epcLengthBytes - 8;
 				}
-				try {
-					tagData.epc =  byteArrayToString(response, tagDataIndex + 2, epcLengthBytes, addSpace);
-				} catch (ArrayIndexOutOfBoundsException e) {
-					System.out.println(TAG + "ArrayIndexOutOfBoundsException");
-				} catch (IllegalArgumentException e) {
-					System.out.println(TAG + "IllegalArgumentException");				
-				} catch (NullPointerException e) {
-					System.out.println(TAG + "NullPointerException");
+				int epcIndex = tagDataIndex + 2;
+				if ((epcLengthBytes >= 0) && (epcIndex + epcLengthBytes <= response.length)) {
+					tagData.epcOffset = epcIndex;
+					tagData.epcLength = epcLengthBytes;
+				} else {
+					System.out.println(TAG + "Invalid EPC length " + epcLengthBytes);
 				}
 			}
 		}
@@ -22,14 +22,36 @@
  */
 package com.encinitaslabs.rfid.cmd;
 
+/**
+ * Llcs Object
+ *
+ * <P>This class returns the serial frames for the MTI RFID Low Level Command
+ * Set. Frames for commands without parameters, and for every combination of
+ * Inventory flags, are built once when the object is created and the same
+ * array is returned on every call. Callers must not modify a returned frame.
+ *
+ * @author Encinitas Laboratories, Inc.
+ * @version 0.1
+ */
 public class Llcs extends MtiCmd {
 
+	private final byte[][] fixedFrames = new byte[CmdHead.values().length][];
+	private final byte[][] inventoryFrames = new byte[8][];
+
 	/** 
 	 * Llcs<P>
 	 * Class Constructor
 	 */
 	public Llcs( ) {
-		
+		MtiFrameBuilder frameBuilder = new MtiFrameBuilder();
+		for (CmdHead cmdHead : CmdHead.values()) {
+			fixedFrames[cmdHead.ordinal()] = frameBuilder.compose(cmdHead);
+		}
+		for (int i = 0; i < inventoryFrames.length; i++) {
+			frameBuilder.clear();
+			frameBuilder.add((byte)((i >>> 2) & 1)).add((byte)((i >>> 1) & 1)).add((byte)(i & 1));
+			inventoryFrames[i] = frameBuilder.compose(CmdHead.RFID_18K6CTagInventory);
+		}
 	}
 	
 	/** 
@@ -54,10 +76,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] getDeviceID( ) {
-    	CmdReaderModuleConfig.RFID_RadioGetDeviceID mtiCmd = new CmdReaderModuleConfig.RFID_RadioGetDeviceID();
-    	byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-    	serialCmd = mtiCmd.setCmd();
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_RadioGetDeviceID.ordinal()]);
     }
 
 	/** 
@@ -82,10 +101,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] getOperationMode( ) {
-    	CmdReaderModuleConfig.RFID_RadioGetOperationMode mtiCmd = new CmdReaderModuleConfig.RFID_RadioGetOperationMode();
-    	byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-    	serialCmd = mtiCmd.setCmd();
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_RadioGetOperationMode.ordinal()]);
     }
 
 	/** 
@@ -110,10 +126,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] getCurrentLinkProfile( ) {
-    	CmdReaderModuleConfig.RFID_RadioGetCurrentLinkProfile mtiCmd = new CmdReaderModuleConfig.RFID_RadioGetCurrentLinkProfile();
-    	byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-    	serialCmd = mtiCmd.setCmd();
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_RadioGetCurrentLinkProfile.ordinal()]);
     }
 
 	/** 
@@ -198,10 +211,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] getInventoryPacketFormat( ) {
-    	CmdReaderModuleConfig.RFID_RadioGetInventoryPacketFormat mtiCmd = new CmdReaderModuleConfig.RFID_RadioGetInventoryPacketFormat();
-    	byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-    	serialCmd = mtiCmd.setCmd();
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_RadioGetInventoryPacketFormat.ordinal()]);
     }
     
 	/** 
@@ -419,10 +429,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] getPostMatchCriteria( ) {
-    	CmdTagSelect.RFID_18K6CGetPostMatchCriteria mtiCmd = new CmdTagSelect.RFID_18K6CGetPostMatchCriteria();
-    	byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-    	serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_18K6CGetPostMatchCriteria.ordinal()]);
     }
     
 	/** 
@@ -479,10 +486,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] getQueryTagGroup( ) {
-    	CmdTagAccess.RFID_18K6CGetQueryTagGroup mtiCmd = new CmdTagAccess.RFID_18K6CGetQueryTagGroup();
-    	byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-    	serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_18K6CGetQueryTagGroup.ordinal()]);
     }
     
 	/** 
@@ -507,10 +511,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] getCurrentSingulationAlgorithm( ) {
-		CmdTagAccess.RFID_18K6CGetCurrentSingulationAlgorithm mtiCmd = new CmdTagAccess.RFID_18K6CGetCurrentSingulationAlgorithm();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_18K6CGetCurrentSingulationAlgorithm.ordinal()]);
     }
 
 	/** 
@@ -581,10 +582,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] getTagAccessPassword( ) {
-		CmdTagAccess.RFID_18K6CGetTagAccessPassword mtiCmd = new CmdTagAccess.RFID_18K6CGetTagAccessPassword();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_18K6CGetTagAccessPassword.ordinal()]);
     }
 
 	/** 
@@ -617,10 +615,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] getGuardBufferTagNum( ) {
-		CmdTagAccess.RFID_18K6CGetGuardBufferTagNum mtiCmd = new CmdTagAccess.RFID_18K6CGetGuardBufferTagNum();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_18K6CGetGuardBufferTagNum.ordinal()]);
     }
 
 	/** 
@@ -644,10 +639,7 @@ public class Llcs extends MtiCmd {
     	if ((select >= 0) && (select <= 1) &&
     		(postMatch >= 0) && (postMatch <= 1) &&
     		(guardMode >= 0) && (guardMode <= 1)) {
-    		CmdTagProtocol.RFID_18K6CTagInventory mtiCmd = new CmdTagProtocol.RFID_18K6CTagInventory();
-    		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-    		serialCmd = mtiCmd.setCmd(select, postMatch, guardMode);
-        	return (serialCmd);
+        	return (inventoryFrames[(select << 2) | (postMatch << 1) | guardMode]);
     	} else {
     		return null;
     	}
@@ -780,10 +772,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] controlCancel( ) {
-		CmdReaderModuleControl.RFID_ControlCancel mtiCmd = new CmdReaderModuleControl.RFID_ControlCancel();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_ControlCancel.ordinal()]);
     }
 
 	/** 
@@ -792,10 +781,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] controlPause( ) {
-		CmdReaderModuleControl.RFID_ControlPause mtiCmd = new CmdReaderModuleControl.RFID_ControlPause();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_ControlPause.ordinal()]);
     }
 
 	/** 
@@ -804,10 +790,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] controlResume( ) {
-		CmdReaderModuleControl.RFID_ControlResume mtiCmd = new CmdReaderModuleControl.RFID_ControlResume();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_ControlResume.ordinal()]);
     }
 
 	/** 
@@ -816,10 +799,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] controlSoftReset( ) {
-		CmdReaderModuleControl.RFID_ControlSoftReset mtiCmd = new CmdReaderModuleControl.RFID_ControlSoftReset();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_ControlSoftReset.ordinal()]);
     }
 
 	/** 
@@ -828,10 +808,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] controlResetToBootloader( ) {
-		CmdReaderModuleControl.RFID_ControlResetToBootloader mtiCmd = new CmdReaderModuleControl.RFID_ControlResetToBootloader();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_ControlResetToBootloader.ordinal()]);
     }
 
 	/** 
@@ -856,10 +833,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] controlGetPowerState( ) {
-		CmdReaderModuleControl.RFID_ControlGetPowerState mtiCmd = new CmdReaderModuleControl.RFID_ControlGetPowerState();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_ControlGetPowerState.ordinal()]);
     }
 
 	/** 
@@ -868,10 +842,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] getFirmwareVersion( ) {
-    	CmdReaderModuleFirmwareAccess.RFID_MacGetFirmwareVersion mtiCmd = new CmdReaderModuleFirmwareAccess.RFID_MacGetFirmwareVersion();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_MacGetFirmwareVersion.ordinal()]);
     }
 
 	/** 
@@ -880,10 +851,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] getDebug( ) {
-    	CmdReaderModuleFirmwareAccess.RFID_MacGetDebug mtiCmd = new CmdReaderModuleFirmwareAccess.RFID_MacGetDebug();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_MacGetDebug.ordinal()]);
     }
 
 	/** 
@@ -892,10 +860,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] clearError( ) {
-    	CmdReaderModuleFirmwareAccess.RFID_MacClearError mtiCmd = new CmdReaderModuleFirmwareAccess.RFID_MacClearError();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_MacClearError.ordinal()]);
     }
 
 	/** 
@@ -920,10 +885,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] getBootloaderVersion( ) {
-    	CmdReaderModuleFirmwareAccess.RFID_MacGetBootloaderVersion mtiCmd = new CmdReaderModuleFirmwareAccess.RFID_MacGetBootloaderVersion();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_MacGetBootloaderVersion.ordinal()]);
     }
 
 	/** 
@@ -996,10 +958,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] getRegion( ) {
-    	CmdReaderModuleFirmwareAccess.RFID_MacGetRegion mtiCmd = new CmdReaderModuleFirmwareAccess.RFID_MacGetRegion();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_MacGetRegion.ordinal()]);
     }
 
 	/** 
@@ -1008,10 +967,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] getOEMCfgVersion( ) {
-    	CmdReaderModuleFirmwareAccess.RFID_MacGetOEMCfgVersion mtiCmd = new CmdReaderModuleFirmwareAccess.RFID_MacGetOEMCfgVersion();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_MacGetOEMCfgVersion.ordinal()]);
     }
 
 	/** 
@@ -1020,10 +976,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] getOEMCfgUpdateNumber( ) {
-    	CmdReaderModuleFirmwareAccess.RFID_MacGetOEMCfgUpdateNumber mtiCmd = new CmdReaderModuleFirmwareAccess.RFID_MacGetOEMCfgUpdateNumber();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_MacGetOEMCfgUpdateNumber.ordinal()]);
     }
 
 	/** 
@@ -1078,10 +1031,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] getGpioPinsConfiguration( ) {
-    	CmdReaderModuleGpioPinAccess.RFID_RadioGetGpioPinsConfiguration mtiCmd = new CmdReaderModuleGpioPinAccess.RFID_RadioGetGpioPinsConfiguration();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_RadioGetGpioPinsConfiguration.ordinal()]);
     }
 
 	/** 
@@ -1138,10 +1088,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] testGetAntennaPortConfiguration( ) {
-		CmdReaderModuleTestSupport.RFID_TestGetAntennaPortConfiguration mtiCmd = new CmdReaderModuleTestSupport.RFID_TestGetAntennaPortConfiguration();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_TestGetAntennaPortConfiguration.ordinal()]);
     }
 
 	/** 
@@ -1166,10 +1113,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] testGetFrequencyConfiguration( ) {
-		CmdReaderModuleTestSupport.RFID_TestGetFrequencyConfiguration mtiCmd = new CmdReaderModuleTestSupport.RFID_TestGetFrequencyConfiguration();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_TestGetFrequencyConfiguration.ordinal()]);
     }
 
 	/** 
@@ -1190,10 +1134,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] testGetRandomDataPulseTime( ) {
-		CmdReaderModuleTestSupport.RFID_TestGetRandomDataPulseTime mtiCmd = new CmdReaderModuleTestSupport.RFID_TestGetRandomDataPulseTime();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_TestGetRandomDataPulseTime.ordinal()]);
     }
 
 	/** 
@@ -1218,10 +1159,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] testGetInventoryConfiguration( ) {
-		CmdReaderModuleTestSupport.RFID_TestGetInventoryConfiguration mtiCmd = new CmdReaderModuleTestSupport.RFID_TestGetInventoryConfiguration();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_TestGetInventoryConfiguration.ordinal()]);
     }
 
 	/** 
@@ -1230,10 +1168,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] testTurnOnCarrierWave( ) {
-		CmdReaderModuleTestSupport.RFID_TestTurnOnCarrierWave mtiCmd = new CmdReaderModuleTestSupport.RFID_TestTurnOnCarrierWave();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_TestTurnOnCarrierWave.ordinal()]);
     }
 
 	/** 
@@ -1242,10 +1177,7 @@ public class Llcs extends MtiCmd {
 	 * @return A byte[] containing the bit-packed message
 	 */
     public byte[] testTurnOffCarrierWave( ) {
-		CmdReaderModuleTestSupport.RFID_TestTurnOffCarrierWave mtiCmd = new CmdReaderModuleTestSupport.RFID_TestTurnOffCarrierWave();
-		byte[] serialCmd = new byte[LENGTH_OF_MTIC];
-		serialCmd = mtiCmd.setCmd( );
-    	return (serialCmd);
+    	return (fixedFrames[CmdHead.RFID_TestTurnOffCarrierWave.ordinal()]);
     }
 
 	/** 
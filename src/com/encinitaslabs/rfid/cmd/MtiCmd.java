@@ -22,11 +22,8 @@
  */
 package com.encinitaslabs.rfid.cmd;
 
-import com.encinitaslabs.rfid.utils.Crc16;
-
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Locale;
 
@@ -121,30 +118,50 @@ public abstract class MtiCmd {
 	}
 
 	public static enum MtiPacketType {
-		Command((byte)'C'),
-		Response((byte)'R'),
-		Begin((byte)'B'),
-		End((byte)'E'),
-		Inventory((byte)'I'),
-		Access((byte)'A'),
-		Work((byte)'W');
+		Command((byte)'C', LENGTH_OF_MTIC),
+		Response((byte)'R', LENGTH_OF_MTIR),
+		Begin((byte)'B', LENGTH_OF_MTIB),
+		End((byte)'E', LENGTH_OF_MTIE),
+		Inventory((byte)'I', LENGTH_OF_MTII),
+		Access((byte)'A', LENGTH_OF_MTIA),
+		Work((byte)'W', LENGTH_OF_MTIW);
 		
 		private byte mtiPacketType;
+		private int length;
+		private static final MtiPacketType[] byType = new MtiPacketType[256];
 		
-		MtiPacketType(byte mtiPacketType) {
+		static {
+			for (MtiPacketType packetType : values()) {
+				byType[packetType.mtiPacketType & 0xff] = packetType;
+			}
+		}
+		
+		MtiPacketType(byte mtiPacketType, int length) {
 			this.mtiPacketType = mtiPacketType;
+			this.length = length;
 		}
 		
 		public byte getValue() {
 			return mtiPacketType;
 		}
+		
+		public int getLength() {
+			return length;
+		}
+		
+		/** 
+		 * fromByte<P>
+		 * This method classifies a packet by its type byte with a table lookup.
+		 * @param type The first byte of the packet
+		 * @return The packet type, or null if the byte is not a valid type
+		 */
+		public static MtiPacketType fromByte(byte type) {
+			return byType[type & 0xff];
+		}
 	}
 
-	private ByteBuffer shortBuffer = ByteBuffer.allocate(2);
-	private ByteBuffer intBuffer = ByteBuffer.allocate(4);
-		
 	protected CmdHead mCmdHead;
-	protected ArrayList<Byte> mParam = new ArrayList<Byte>();
+	protected MtiFrameBuilder mParam = new MtiFrameBuilder();
 
 	public byte[] mFinalCmd = new byte[MAX_CMD_LENGTH];
 
@@ -158,21 +175,7 @@ public abstract class MtiCmd {
 	 * @return The packed RU-824/861 command
 	 */
 	protected byte[] composeCmd() {
-		int cmdLength = 14;
-		
-		mFinalCmd = Arrays.copyOfRange(cmdHeader, 0, 16);
-		
-		mFinalCmd[HEADER_SIZE] = (byte)0xff;
-		mFinalCmd[HEADER_SIZE+1] = mCmdHead.get1stCmd();
-		
-		int arrLength = mParam.size();
-		for(int i = 0; i < arrLength; i++) {
-			mFinalCmd[HEADER_SIZE+2+i] = mParam.get(i).byteValue();
-		}
-		
-		int Crc = ~Crc16.calculate(mFinalCmd, cmdLength);
-		mFinalCmd[cmdLength++] = (byte)((Crc & 0x000000ff));
-		mFinalCmd[cmdLength++] = (byte)((Crc & 0x0000ff00) >>> 8);
+		mFinalCmd = mParam.compose(mCmdHead);
 		
 		// log whole command for debug
 		if (DEBUG) {
@@ -188,25 +191,8 @@ public abstract class MtiCmd {
 	 * @return The length in bytes of the command
 	 */
 	public static int getCommandLength(byte command) {
-		int length = 0;
-		if (command == 'C') {
-			length = MtiCmd.LENGTH_OF_MTIC;
-		} else if (command == 'R') {
-			length = MtiCmd.LENGTH_OF_MTIR;
-		} else if (command == 'B') {
-			length = MtiCmd.LENGTH_OF_MTIB;
-		} else if (command == 'E') {
-			length = MtiCmd.LENGTH_OF_MTIE;
-		} else if (command == 'I') {
-			length = MtiCmd.LENGTH_OF_MTII;
-		} else if (command == 'A') {
-			length = MtiCmd.LENGTH_OF_MTIA;
-		} else if (command == 'W') {
-			length = MtiCmd.LENGTH_OF_MTIW;
-		} else {
-			length = 0;
-		}
-		return length;
+		MtiPacketType packetType = MtiPacketType.fromByte(command);
+		return (packetType != null) ? packetType.getLength() : 0;
 	}
 	
 	/** 
@@ -216,25 +202,8 @@ public abstract class MtiCmd {
 	 * @return The name of the command
 	 */
 	public static String getCommandType(byte command) {
-		String type = null;
-		if (command == 'C') {
-			type = "Command";
-		} else if (command == 'R') {
-			type = "Response";
-		} else if (command == 'B') {
-			type = "Begin";
-		} else if (command == 'E') {
-			type = "End";
-		} else if (command == 'I') {
-			type = "Inventory";
-		} else if (command == 'A') {
-			type = "Access";
-		} else if (command == 'W') {
-			type = "Work";
-		} else {
-			type = null;
-		}
-		return type;
+		MtiPacketType packetType = MtiPacketType.fromByte(command);
+		return (packetType != null) ? packetType.name() : null;
 	}
 	
 	/** 
@@ -264,14 +233,7 @@ public abstract class MtiCmd {
 	 * @return The MTI CmdHead enum value for this command
 	 */
 	public static CmdHead getCmdHead(byte[] command) {
-		// This business here takes into account that the byte commands
-		// 0x80 through 0x8B end up being negative values in Java.
-		Byte byteIndex = command[MtiCmd.CMD_ID_INDEX];
-		int index = byteIndex.intValue();
-		if (index < 0) {
-			index = index + 256;
-		}
-		return CmdHead.values()[index];
+		return CmdHead.fromByte(command[MtiCmd.CMD_ID_INDEX]);
 	}
 	
 	/** 
@@ -398,12 +360,7 @@ public abstract class MtiCmd {
 	 * @return void
 	 */
     public void addParam(short param) {
-//		ByteBuffer shortBuffer = ByteBuffer.allocate(2);
-		shortBuffer.clear();
-		shortBuffer.order(ByteOrder.LITTLE_ENDIAN);
-		shortBuffer.putShort(param);
-		for(int i = 0; i < 2; i++)
-			mParam.add(shortBuffer.get(i));
+		mParam.add(param);
     }
     
 	/** 
@@ -414,12 +371,7 @@ public abstract class MtiCmd {
 	 * @return void
 	 */
     public void addParam(int param) {
-//		ByteBuffer intBuffer = ByteBuffer.allocate(4);
-    	intBuffer.clear();
-		intBuffer.order(ByteOrder.LITTLE_ENDIAN);
-		intBuffer.putInt(param);
-		for(int i = 0; i < 4; i++)
-			mParam.add(intBuffer.get(i));
+		mParam.add(param);
     }
     
 	/** 
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid.cmd;
+
+import com.encinitaslabs.rfid.utils.Crc16;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * MtiFrameBuilder Object
+ *
+ * <P>This class assembles MTI Command frames. Parameters are written
+ * straight into a reusable little endian ByteBuffer that already holds the
+ * frame header, so nothing is boxed or copied until the finished frame is
+ * returned. A builder is not thread safe, each command object owns one.
+ *
+ * @author Encinitas Laboratories, Inc.
+ * @version 0.1
+ */
+public class MtiFrameBuilder {
+
+	private static final int PARAM_INDEX = MtiCmd.HEADER_SIZE + 2;
+	private static final int CRC_INDEX = 14;
+	private final ByteBuffer frame;
+
+	/**
+	 * MtiFrameBuilder<P>
+	 * Class Constructor
+	 */
+	public MtiFrameBuilder() {
+		frame = ByteBuffer.allocate(MtiCmd.LENGTH_OF_MTIC);
+		frame.order(ByteOrder.LITTLE_ENDIAN);
+		frame.put(MtiCmd.cmdHeader);
+		frame.put((byte)0xff);
+		clear();
+	}
+
+	/**
+	 * clear<P>
+	 * This method discards any parameters added so far.
+	 */
+	public void clear() {
+		frame.limit(CRC_INDEX);
+		frame.position(PARAM_INDEX);
+	}
+
+	/**
+	 * add<P>
+	 * This method appends a byte parameter.
+	 * @param param The byte to add
+	 * @return This builder
+	 */
+	public MtiFrameBuilder add(byte param) {
+		frame.put(param);
+		return this;
+	}
+
+	/**
+	 * add<P>
+	 * This method appends a short parameter in little endian format.
+	 * @param param The short to add
+	 * @return This builder
+	 */
+	public MtiFrameBuilder add(short param) {
+		frame.putShort(param);
+		return this;
+	}
+
+	/**
+	 * add<P>
+	 * This method appends an integer parameter in little endian format.
+	 * @param param The integer to add
+	 * @return This builder
+	 */
+	public MtiFrameBuilder add(int param) {
+		frame.putInt(param);
+		return this;
+	}
+
+	/**
+	 * size<P>
+	 * This method returns the number of parameter bytes added so far.
+	 * @return The number of bytes
+	 */
+	public int size() {
+		return frame.position() - PARAM_INDEX;
+	}
+
+	/**
+	 * compose<P>
+	 * This method pads the parameters with zeros, appends the checksum
+	 * and returns a copy of the finished frame. The parameters are kept
+	 * so the same frame can be composed again.
+	 * @param cmdHead The command
+	 * @return The packed RU-824/861 command
+	 */
+	public byte[] compose(CmdHead cmdHead) {
+		byte[] bytes = frame.array();
+		bytes[MtiCmd.HEADER_SIZE + 1] = cmdHead.get1stCmd();
+		Arrays.fill(bytes, frame.position(), CRC_INDEX, (byte)0x00);
+		int crc = ~Crc16.calculate(bytes, CRC_INDEX);
+		bytes[CRC_INDEX] = (byte)(crc & 0x000000ff);
+		bytes[CRC_INDEX + 1] = (byte)((crc & 0x0000ff00) >>> 8);
+		return Arrays.copyOf(bytes, MtiCmd.LENGTH_OF_MTIC);
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid.cmd;
+
+/**
+ * MtiPacketDispatcher Object
+ *
+ * <P>This class is a registry of handlers for received MTI packets. Packets
+ * are dispatched through a table indexed by the packet type byte, and
+ * Response packets can be further dispatched through a table indexed by
+ * the CmdHead ordinal of the command they answer.
+ *
+ * @author Encinitas Laboratories, Inc.
+ * @version 0.1
+ */
+public class MtiPacketDispatcher {
+
+	/**
+	 * Handler Interface
+	 *
+	 * <P>Implemented by anything that processes a received packet.
+	 */
+	public interface Handler {
+		void handle(CmdHead cmdHead, byte[] packet);
+	}
+
+	private final Handler[] packetHandlers = new Handler[256];
+	private final Handler[] responseHandlers = new Handler[CmdHead.values().length];
+
+	/**
+	 * setPacketHandler<P>
+	 * This method registers the handler for one type of packet.
+	 * @param packetType The packet type
+	 * @param handler The handler, or null to remove it
+	 */
+	public void setPacketHandler(MtiCmd.MtiPacketType packetType, Handler handler) {
+		packetHandlers[packetType.getValue() & 0xff] = handler;
+	}
+
+	/**
+	 * setResponseHandler<P>
+	 * This method registers the handler for the Response to one command.
+	 * @param cmdHead The command
+	 * @param handler The handler, or null to remove it
+	 */
+	public void setResponseHandler(CmdHead cmdHead, Handler handler) {
+		responseHandlers[cmdHead.ordinal()] = handler;
+	}
+
+	/**
+	 * dispatch<P>
+	 * This method passes a packet to the handler for its packet type.
+	 * @param packet The received packet
+	 * @return True if a handler was found
+	 */
+	public boolean dispatch(byte[] packet) {
+		Handler handler = packetHandlers[packet[MtiCmd.TYPE_INDEX] & 0xff];
+		if (handler != null) {
+			handler.handle(MtiCmd.getCmdHead(packet), packet);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * dispatchResponse<P>
+	 * This method passes a Response packet to the handler for its command.
+	 * @param cmdHead The command the packet answers
+	 * @param packet The received packet
+	 * @return True if a handler was found
+	 */
+	public boolean dispatchResponse(CmdHead cmdHead, byte[] packet) {
+		if (cmdHead != null) {
+			Handler handler = responseHandlers[cmdHead.ordinal()];
+			if (handler != null) {
+				handler.handle(cmdHead, packet);
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid.comms;
+
+import com.encinitaslabs.rfid.cmd.CmdHead;
+import java.util.EnumSet;
+
+/**
+ * CommandPipeline Object
+ *
+ * <P>Tracks the commands sent to the RFID module that are still waiting
+ * for their Response packet. Commands that only change a setting and
+ * answer with a single Response may be pipelined, up to a configurable
+ * window, so a burst of configuration commands does not cost a serial
+ * round trip each. Any other command is only sent once nothing is in
+ * flight and holds the pipeline until its Response arrives.
+ * <P>Responses are matched to the oldest outstanding command with the
+ * same CmdHead. Each outstanding command has its own timeout; expired
+ * commands are removed and passed to a Listener.
+ *
+ * @author Encinitas Laboratories, Inc.
+ * @version 0.1
+ */
+public class CommandPipeline {
+
+	/**
+	 * Listener Interface
+	 *
+	 * <P>Implemented by anything that recovers from a command that was
+	 * never answered.
+	 */
+	public interface Listener {
+		void commandTimedOut(CmdHead cmdHead, long elapsed_ms);
+	}
+
+	public static final int DEFAULT_WINDOW = 4;
+	public static final long DEFAULT_TIMEOUT_MS = 2000;
+	private static final int MAX_WINDOW = 32;
+	// Set commands that answer with exactly one Response packet
+	private static final EnumSet<CmdHead> pipelineable = EnumSet.of(
+			CmdHead.RFID_RadioSetOperationMode,
+			CmdHead.RFID_RadioSetCurrentLinkProfile,
+			CmdHead.RFID_RadioSetInventoryPacketFormat,
+			CmdHead.RFID_AntennaPortSetState,
+			CmdHead.RFID_AntennaPortSetConfiguration,
+			CmdHead.RFID_AntennaPortSetSenseThreshold,
+			CmdHead.RFID_18K6CSetActiveSelectCriteria,
+			CmdHead.RFID_18K6CSetSelectCriteria,
+			CmdHead.RFID_18K6CSetSelectMaskData,
+			CmdHead.RFID_18K6CSetPostMatchCriteria,
+			CmdHead.RFID_18K6CSetPostMatchMaskData,
+			CmdHead.RFID_18K6CSetQueryTagGroup,
+			CmdHead.RFID_18K6CSetCurrentSingulationAlgorithm,
+			CmdHead.RFID_18K6CSetCurrentSingulationAlgorithmParameters,
+			CmdHead.RFID_18K6CSetTagAccessPassword,
+			CmdHead.RFID_18K6CSetTagWriteDataBuffer,
+			CmdHead.RFID_MacClearError);
+	private final int window;
+	private final long timeout_ms;
+	// Outstanding commands in the order they were sent
+	private final CmdHead[] inFlightCmd;
+	private final long[] inFlightSent_ms;
+	private int inFlightCount = 0;
+	private int exclusiveInFlight = 0;
+	private boolean moduleBusy = false;
+	private int consecutiveTimeouts = 0;
+	// Statistics
+	private long sentCount = 0;
+	private long pipelinedCount = 0;
+	private long timeoutCount = 0;
+	private long unmatchedCount = 0;
+
+	/**
+	 * CommandPipeline<P>
+	 * Class Constructor
+	 * @param window_ The number of pipelineable commands allowed in flight, 1 disables pipelining
+	 * @param timeout_ms_ The time allowed for each command to be answered
+	 */
+	public CommandPipeline( int window_, long timeout_ms_ ) {
+		window = Math.max(1, Math.min(MAX_WINDOW, window_));
+		timeout_ms = (timeout_ms_ > 0) ? timeout_ms_ : DEFAULT_TIMEOUT_MS;
+		inFlightCmd = new CmdHead[window];
+		inFlightSent_ms = new long[window];
+	}
+
+	/**
+	 * isPipelineable<P>
+	 * This method returns true if a command may be sent while other
+	 * pipelineable commands are still in flight.
+	 * @param cmdHead The command
+	 * @return True if the command may be pipelined
+	 */
+	public static boolean isPipelineable( CmdHead cmdHead ) {
+		return ((cmdHead != null) && pipelineable.contains(cmdHead));
+	}
+
+	/**
+	 * beginCommand<P>
+	 * This method waits until a command may be sent and then records
+	 * it as in flight. Only the serial command thread calls this.
+	 * @param cmdHead The command about to be sent
+	 * @throws InterruptedException
+	 */
+	public synchronized void beginCommand( CmdHead cmdHead ) throws InterruptedException {
+		while (!canSend(cmdHead)) {
+			wait(timeout_ms);
+		}
+		if (inFlightCount > 0) {
+			pipelinedCount++;
+		}
+		inFlightCmd[inFlightCount] = cmdHead;
+		inFlightSent_ms[inFlightCount] = System.currentTimeMillis();
+		inFlightCount++;
+		if (!isPipelineable(cmdHead)) {
+			exclusiveInFlight++;
+		}
+		sentCount++;
+	}
+
+	/**
+	 * responseReceived<P>
+	 * This method matches a Response packet to the oldest outstanding
+	 * command with the same CmdHead.
+	 * @param cmdHead The command named in the Response
+	 * @return True if an outstanding command was found
+	 */
+	public synchronized boolean responseReceived( CmdHead cmdHead ) {
+		consecutiveTimeouts = 0;
+		for (int i = 0; i < inFlightCount; i++) {
+			if (inFlightCmd[i] == cmdHead) {
+				removeAt(i);
+				notifyAll();
+				return true;
+			}
+		}
+		unmatchedCount++;
+		return false;
+	}
+
+	/**
+	 * expire<P>
+	 * This method removes every command that has waited longer than
+	 * the timeout and passes it to the listener, outside the lock.
+	 * @param listener The handler for timed out commands
+	 * @return The number of commands that timed out
+	 */
+	public int expire( Listener listener ) {
+		CmdHead[] expiredCmd = null;
+		long[] elapsed_ms = null;
+		int expired = 0;
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			for (int i = 0; i < inFlightCount; ) {
+				if (now - inFlightSent_ms[i] >= timeout_ms) {
+					if (expiredCmd == null) {
+						expiredCmd = new CmdHead[inFlightCount];
+						elapsed_ms = new long[inFlightCount];
+					}
+					expiredCmd[expired] = inFlightCmd[i];
+					elapsed_ms[expired] = now - inFlightSent_ms[i];
+					expired++;
+					removeAt(i);
+				} else {
+					i++;
+				}
+			}
+			if (expired > 0) {
+				timeoutCount += expired;
+				consecutiveTimeouts += expired;
+				notifyAll();
+			}
+		}
+		for (int i = 0; i < expired; i++) {
+			listener.commandTimedOut(expiredCmd[i], elapsed_ms[i]);
+		}
+		return expired;
+	}
+
+	/**
+	 * setModuleBusy<P>
+	 * This method holds back every command while the module is busy,
+	 * for example running an inventory or resetting.
+	 * @param busy True while the module cannot accept commands
+	 */
+	public synchronized void setModuleBusy( boolean busy ) {
+		moduleBusy = busy;
+		if (!busy) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * clear<P>
+	 * This method forgets every outstanding command, for example
+	 * after the module has been reset.
+	 */
+	public synchronized void clear() {
+		for (int i = 0; i < inFlightCount; i++) {
+			inFlightCmd[i] = null;
+		}
+		inFlightCount = 0;
+		exclusiveInFlight = 0;
+		consecutiveTimeouts = 0;
+		notifyAll();
+	}
+
+	/**
+	 * getInFlight<P>
+	 * This method returns the number of commands waiting for a Response.
+	 * @return The number of outstanding commands
+	 */
+	public synchronized int getInFlight() {
+		return inFlightCount;
+	}
+
+	/**
+	 * getConsecutiveTimeouts<P>
+	 * This method returns the number of commands that have timed out
+	 * since the last Response was received.
+	 * @return The number of timeouts
+	 */
+	public synchronized int getConsecutiveTimeouts() {
+		return consecutiveTimeouts;
+	}
+
+	/**
+	 * getSentCount<P>
+	 * This method returns the number of commands sent.
+	 * @return The number of commands
+	 */
+	public synchronized long getSentCount() {
+		return sentCount;
+	}
+
+	/**
+	 * getPipelinedCount<P>
+	 * This method returns the number of commands sent while another
+	 * command was still in flight.
+	 * @return The number of pipelined commands
+	 */
+	public synchronized long getPipelinedCount() {
+		return pipelinedCount;
+	}
+
+	/**
+	 * getTimeoutCount<P>
+	 * This method returns the number of commands that timed out.
+	 * @return The number of timeouts
+	 */
+	public synchronized long getTimeoutCount() {
+		return timeoutCount;
+	}
+
+	/**
+	 * getUnmatchedCount<P>
+	 * This method returns the number of Responses that did not match
+	 * any outstanding command.
+	 * @return The number of unmatched Responses
+	 */
+	public synchronized long getUnmatchedCount() {
+		return unmatchedCount;
+	}
+
+	/**
+	 * canSend<P>
+	 * This helper method decides if a command may be sent now.
+	 */
+	private boolean canSend( CmdHead cmdHead ) {
+		if (moduleBusy) {
+			return false;
+		}
+		if (inFlightCount == 0) {
+			return true;
+		}
+		return (isPipelineable(cmdHead) && (exclusiveInFlight == 0) && (inFlightCount < window));
+	}
+
+	/**
+	 * removeAt<P>
+	 * This helper method removes one outstanding command, keeping
+	 * the rest in the order they were sent.
+	 */
+	private void removeAt( int i ) {
+		if (!isPipelineable(inFlightCmd[i])) {
+			exclusiveInFlight--;
+		}
+		System.arraycopy(inFlightCmd, i + 1, inFlightCmd, i, inFlightCount - i - 1);
+		System.arraycopy(inFlightSent_ms, i + 1, inFlightSent_ms, i, inFlightCount - i - 1);
+		inFlightCount--;
+		inFlightCmd[inFlightCount] = null;
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid.comms;
+
+import com.encinitaslabs.rfid.cmd.MtiCmd;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PacketPool Object
+ *
+ * <P>A fixed ring of MTI packet slots shared between the serial reader
+ * and the response worker. The reader acquires a slot for every framed
+ * packet and the worker releases it once the packet has been processed,
+ * so steady state traffic does not allocate.
+ * <P>Free slots are kept in a lock-free ring with exactly one thread on
+ * each side: only the serial reader acquires and only the response
+ * worker releases. A slot the reader cannot hand on is given back with
+ * recycle, which keeps it for the reader's next acquire instead of
+ * touching the ring.
+ *
+ * @author Encinitas Labs
+ * @version 0.1
+ */
+public class PacketPool {
+
+	public static final int DEFAULT_SLOTS = 256;
+	private final byte[][] freeSlots;
+	private final int mask;
+	// head is the next free slot to acquire, tail is where the next release goes
+	private final AtomicLong head = new AtomicLong(0);
+	private final AtomicLong tail = new AtomicLong(0);
+	// A slot recycled by the reader, only touched by the reader
+	private byte[] spareSlot = null;
+	private AtomicLong poolHits = new AtomicLong(0);
+	private AtomicLong poolExhausted = new AtomicLong(0);
+
+	/**
+	 * PacketPool<P>
+	 * Class Constructor
+	 * @param numSlots The number of packet slots to preallocate
+	 */
+	public PacketPool( int numSlots ) {
+		if (numSlots <= 0) {
+			numSlots = DEFAULT_SLOTS;
+		}
+		int size = 2;
+		while (size < numSlots) {
+			size <<= 1;
+		}
+		freeSlots = new byte[size][];
+		mask = size - 1;
+		for (int i = 0; i < numSlots; i++) {
+			freeSlots[i] = new byte[MtiCmd.MAX_CMD_LENGTH];
+		}
+		tail.set(numSlots);
+	}
+
+	/**
+	 * acquire<P>
+	 * This method returns a free packet slot. When the pool is
+	 * exhausted a new slot is allocated and counted; it joins the
+	 * pool when it is released if there is room. Serial reader only.
+	 * @return A byte[] of MtiCmd.MAX_CMD_LENGTH bytes
+	 */
+	public byte[] acquire() {
+		byte[] slot = spareSlot;
+		if (slot != null) {
+			spareSlot = null;
+			poolHits.incrementAndGet();
+			return slot;
+		}
+		long h = head.get();
+		if (h < tail.get()) {
+			int index = (int)(h & mask);
+			slot = freeSlots[index];
+			freeSlots[index] = null;
+			head.set(h + 1);
+			poolHits.incrementAndGet();
+		} else {
+			poolExhausted.incrementAndGet();
+			slot = new byte[MtiCmd.MAX_CMD_LENGTH];
+		}
+		return slot;
+	}
+
+	/**
+	 * release<P>
+	 * This method returns a packet slot to the pool once it has
+	 * been processed. Slots of the wrong size are ignored. Response
+	 * worker only.
+	 * @param slot The packet slot to return
+	 */
+	public void release(byte[] slot) {
+		if ((slot != null) && (slot.length == MtiCmd.MAX_CMD_LENGTH)) {
+			long t = tail.get();
+			if (t - head.get() < freeSlots.length) {
+				freeSlots[(int)(t & mask)] = slot;
+				tail.set(t + 1);
+			}
+		}
+	}
+
+	/**
+	 * recycle<P>
+	 * This method gives back a packet slot the serial reader acquired
+	 * but could not pass on. It is kept for the next acquire. Serial
+	 * reader only.
+	 * @param slot The packet slot to return
+	 */
+	public void recycle(byte[] slot) {
+		if ((slot != null) && (slot.length == MtiCmd.MAX_CMD_LENGTH)) {
+			spareSlot = slot;
+		}
+	}
+
+	/**
+	 * getPoolHits<P>
+	 * This method returns the number of packets served from the pool.
+	 * @return The number of pool hits.
+	 */
+	public long getPoolHits() {
+		return poolHits.get();
+	}
+
+	/**
+	 * getPoolExhausted<P>
+	 * This method returns the number of packets that had to be
+	 * allocated because the pool was empty.
+	 * @return The number of pool exhaustions.
+	 */
+	public long getPoolExhausted() {
+		return poolExhausted.get();
+	}
+
+	/**
+	 * getFreeSlots<P>
+	 * This method returns the number of slots currently available.
+	 * @return The number of free slots.
+	 */
+	public int getFreeSlots() {
+		return (int)(tail.get() - head.get());
+	}
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid.comms;
+
+import com.encinitaslabs.rfid.cmd.CmdHead;
+import com.encinitaslabs.rfid.cmd.CmdReaderModuleFirmwareAccess;
+import com.encinitaslabs.rfid.cmd.CmdReaderModuleTestSupport;
+import com.encinitaslabs.rfid.cmd.Llcs;
+import com.encinitaslabs.rfid.cmd.MtiCmd;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * ReaderClient Object
+ *
+ * <P>An asynchronous interface to the RFID module. Each command built by
+ * Llcs is queued for the serial command thread and a CompletableFuture
+ * is returned that completes when the matching Response packet arrives.
+ * Responses are matched to the oldest outstanding request for the same
+ * CmdHead, the same way the CommandPipeline matches them, and parsed on
+ * the response thread by the typed parsers of the cmd package.
+ * <P>A future fails with CommandFailedException if the module reports an
+ * error status, with TimeoutException if the command times out and with
+ * CancellationException if the module is reset first.
+ *
+ * @author Encinitas Laboratories, Inc.
+ * @version 0.1
+ */
+public class ReaderClient {
+
+	/**
+	 * Parser Interface
+	 *
+	 * <P>Turns a Response packet into a typed result. The packet buffer
+	 * is reused once the parser returns, so a parser must copy anything
+	 * it keeps.
+	 */
+	public interface Parser<T> {
+		T parse(byte[] response);
+	}
+
+	/**
+	 * Response Object
+	 *
+	 * <P>A copy of a Response packet for callers without a typed parser.
+	 */
+	public static final class Response {
+		private final CmdHead cmdHead;
+		private final byte status;
+		private final byte[] packet;
+
+		Response( byte[] response ) {
+			cmdHead = MtiCmd.getCmdHead(response);
+			status = response[MtiCmd.STATUS_POS];
+			packet = Arrays.copyOf(response, MtiCmd.MtiPacketType.Response.getLength());
+		}
+
+		public CmdHead getCmdHead() {
+			return cmdHead;
+		}
+
+		public byte getStatus() {
+			return status;
+		}
+
+		public byte[] getPacket() {
+			return packet;
+		}
+	}
+
+	/**
+	 * CommandFailedException Object
+	 *
+	 * <P>Reports a Response packet with a non-zero status byte.
+	 */
+	public static class CommandFailedException extends Exception {
+		private static final long serialVersionUID = 1L;
+		private final CmdHead cmdHead;
+		private final byte status;
+
+		public CommandFailedException( CmdHead cmdHead_, byte status_ ) {
+			super(cmdHead_ + " failed with status " + status_);
+			cmdHead = cmdHead_;
+			status = status_;
+		}
+
+		public CmdHead getCmdHead() {
+			return cmdHead;
+		}
+
+		public byte getStatus() {
+			return status;
+		}
+	}
+
+	/**
+	 * Request Object
+	 *
+	 * <P>An outstanding command and the future waiting for it.
+	 */
+	private static final class Request<T> {
+		final Parser<T> parser;
+		final CompletableFuture<T> future;
+
+		Request( Parser<T> parser_, CompletableFuture<T> future_ ) {
+			parser = parser_;
+			future = future_;
+		}
+
+		void complete( byte[] response ) {
+			try {
+				future.complete(parser.parse(response));
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		}
+	}
+
+	private static final Parser<Response> responseParser = new Parser<Response>() {
+		public Response parse(byte[] response) {
+			return new Response(response);
+		}
+	};
+	private final Llcs llcs;
+	private final BlockingQueue<byte[]> cmdQueue;
+	// Outstanding requests in send order, one queue per CmdHead
+	private final ArrayDeque<Request<?>>[] requests;
+	private int pendingCount = 0;
+
+	/**
+	 * ReaderClient<P>
+	 * Class Constructor
+	 * @param llcs_ The command builder
+	 * @param cmdQueue_ The queue read by the serial command thread
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public ReaderClient( Llcs llcs_, BlockingQueue<byte[]> cmdQueue_ ) {
+		llcs = llcs_;
+		cmdQueue = cmdQueue_;
+		requests = new ArrayDeque[CmdHead.values().length];
+	}
+
+	/**
+	 * submit<P>
+	 * This method queues a command and returns a future for its
+	 * parsed Response.
+	 * @param cmd The command built by Llcs
+	 * @param parser The parser for the Response packet
+	 * @return The future result
+	 */
+	public <T> CompletableFuture<T> submit( byte[] cmd, Parser<T> parser ) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		CmdHead cmdHead = (cmd != null) ? MtiCmd.getCmdHead(cmd) : null;
+		if (cmdHead == null) {
+			future.completeExceptionally(new IllegalArgumentException("Invalid command"));
+			return future;
+		}
+		Request<T> request = new Request<T>(parser, future);
+		synchronized (requests) {
+			if (requests[cmdHead.ordinal()] == null) {
+				requests[cmdHead.ordinal()] = new ArrayDeque<Request<?>>();
+			}
+			requests[cmdHead.ordinal()].add(request);
+			pendingCount++;
+		}
+		if (!cmdQueue.offer(cmd)) {
+			synchronized (requests) {
+				if (requests[cmdHead.ordinal()].remove(request)) {
+					pendingCount--;
+				}
+			}
+			future.completeExceptionally(new IllegalStateException("Command queue full"));
+		}
+		return future;
+	}
+
+	/**
+	 * submit<P>
+	 * This method queues a command and returns a future for a copy of
+	 * its Response packet.
+	 * @param cmd The command built by Llcs
+	 * @return The future Response
+	 */
+	public CompletableFuture<Response> submit( byte[] cmd ) {
+		return submit(cmd, responseParser);
+	}
+
+	/**
+	 * getFirmwareVersion<P>
+	 * This method requests the MAC firmware version.
+	 * @return The future version string
+	 */
+	public CompletableFuture<String> getFirmwareVersion() {
+		return submit(llcs.getFirmwareVersion(), new Parser<String>() {
+			public String parse(byte[] response) {
+				return CmdReaderModuleFirmwareAccess.RFID_MacGetFirmwareVersion.getVersion(response);
+			}
+		});
+	}
+
+	/**
+	 * getError<P>
+	 * This method requests a MAC firmware error code.
+	 * @param errorType 0 for the current error, 1 for the last error
+	 * @return The future error code
+	 */
+	public CompletableFuture<Integer> getError( byte errorType ) {
+		return submit(llcs.getError(errorType), new Parser<Integer>() {
+			public Integer parse(byte[] response) {
+				return CmdReaderModuleFirmwareAccess.RFID_MacGetError.parseResponse(response);
+			}
+		});
+	}
+
+	/**
+	 * getTemperature<P>
+	 * This method requests a temperature from the module.
+	 * @param source 0 for the PA, 1 for ambient
+	 * @return The future temperature in degrees C
+	 */
+	public CompletableFuture<Short> getTemperature( byte source ) {
+		return submit(llcs.testGetTemperature(source), new Parser<Short>() {
+			public Short parse(byte[] response) {
+				return CmdReaderModuleTestSupport.RFID_EngGetTemperature.getTemperature(response);
+			}
+		});
+	}
+
+	/**
+	 * complete<P>
+	 * This method completes the oldest outstanding request for the
+	 * command a Response packet answers. Called on the response thread.
+	 * @param cmdHead The command named in the Response
+	 * @param response The Response packet
+	 * @return True if a request was waiting for this Response
+	 */
+	public boolean complete( CmdHead cmdHead, byte[] response ) {
+		Request<?> request = take(cmdHead);
+		if (request == null) {
+			return false;
+		}
+		byte status = response[MtiCmd.STATUS_POS];
+		if (status != 0) {
+			request.future.completeExceptionally(new CommandFailedException(cmdHead, status));
+		} else {
+			request.complete(response);
+		}
+		return true;
+	}
+
+	/**
+	 * commandTimedOut<P>
+	 * This method fails the oldest outstanding request for a command
+	 * the CommandPipeline has given up on.
+	 * @param cmdHead The command that timed out
+	 */
+	public void commandTimedOut( CmdHead cmdHead ) {
+		Request<?> request = take(cmdHead);
+		if (request != null) {
+			request.future.completeExceptionally(new TimeoutException(cmdHead + " timed out"));
+		}
+	}
+
+	/**
+	 * cancelAll<P>
+	 * This method cancels every outstanding request, for example when
+	 * the module is reset.
+	 */
+	public void cancelAll() {
+		ArrayDeque<Request<?>> cancelled = new ArrayDeque<Request<?>>();
+		synchronized (requests) {
+			for (ArrayDeque<Request<?>> queue : requests) {
+				if (queue != null) {
+					cancelled.addAll(queue);
+					queue.clear();
+				}
+			}
+			pendingCount = 0;
+		}
+		for (Request<?> request : cancelled) {
+			request.future.cancel(false);
+		}
+	}
+
+	/**
+	 * getPending<P>
+	 * This method returns the number of requests waiting for a Response.
+	 * @return The number of outstanding requests
+	 */
+	public int getPending() {
+		synchronized (requests) {
+			return pendingCount;
+		}
+	}
+
+	/**
+	 * take<P>
+	 * This helper method removes the oldest request for a command.
+	 */
+	private Request<?> take( CmdHead cmdHead ) {
+		if (cmdHead == null) {
+			return null;
+		}
+		synchronized (requests) {
+			ArrayDeque<Request<?>> queue = requests[cmdHead.ordinal()];
+			Request<?> request = (queue != null) ? queue.poll() : null;
+			if (request != null) {
+				pendingCount--;
+			}
+			return request;
+		}
+	}
+}
@@ -24,10 +24,13 @@ package com.encinitaslabs.rfid.comms;
 
 import com.encinitaslabs.rfid.Log;
 import com.encinitaslabs.rfid.cmd.MtiCmd;
+import com.encinitaslabs.rfid.utils.SpscRingBuffer;
 import gnu.io.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.TooManyListenersException;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 //import javax.comm.*;
 
 /**
@@ -48,7 +51,8 @@ public class SerialComms implements SerialPortEventListener {
 	private InputStream in = null;
 	private SerialPort serialPort = null;
 	private CommPort commPort = null;
-	private LinkedBlockingQueue<byte[]> serialRspQueue = null;
+	private SpscRingBuffer<byte[]> serialRspQueue = null;
+	private PacketPool packetPool = null;
 	private Log logObject = null;
 
 	private boolean lookForNewPacket = true;
@@ -56,8 +60,14 @@ public class SerialComms implements SerialPortEventListener {
 	private final int circularBufferSize = 4096;
 	private int headerIndex = circularBufferSize;
 	private byte[] circularBuffer = new byte[circularBufferSize];
+	private ByteBuffer circularView = ByteBuffer.wrap(circularBuffer).order(ByteOrder.LITTLE_ENDIAN);
 	private int inIndex = 0;
 	private int outIndex = 0;
+	private AtomicLong resyncDiscardedBytes = new AtomicLong(0);
+	private static final long HEADER_I_PATTERN = 0x4949494949494949L; // "IIIIIIII"
+	private static final long LOW_7_BITS = 0x7F7F7F7F7F7F7F7FL;
+	private final int readBufferSize = 1024;
+	private byte[] readBuffer = new byte[readBufferSize];
 
 	
 	
@@ -66,8 +76,20 @@ public class SerialComms implements SerialPortEventListener {
 	 * 
 	 * Class Constructor
 	 */
-    public SerialComms( LinkedBlockingQueue<byte[]> serialRspQueue, Boolean debug_ ) {
+    public SerialComms( SpscRingBuffer<byte[]> serialRspQueue, Boolean debug_ ) {
+		this(serialRspQueue, new PacketPool(PacketPool.DEFAULT_SLOTS), debug_);
+	}
+	
+	/** 
+	 * SerialComms
+	 * 
+	 * Class Constructor
+	 * @param packetPool The pool that framed packets are taken from. The consumer
+	 * of serialRspQueue is responsible for releasing each packet back to it.
+	 */
+    public SerialComms( SpscRingBuffer<byte[]> serialRspQueue, PacketPool packetPool, Boolean debug_ ) {
 		this.serialRspQueue = serialRspQueue;
+		this.packetPool = packetPool;
 		this.DEBUG = debug_;
 	}
 	
@@ -206,7 +228,7 @@ public class SerialComms implements SerialPortEventListener {
 				break;
 
 			case SerialPortEvent.DATA_AVAILABLE:
-				byte[] readBuffer = new byte[1024];
+				// The read buffer is reused since events are delivered on a single thread
 				try {
 					while (in.available() > 0) {
 						int numBytes = 0;
@@ -275,30 +297,31 @@ public class SerialComms implements SerialPortEventListener {
 		}
 		
 		// Copy into the circular buffer for processing (guaranteed to have room)
-		for (int i = 0; i < length; i++) {
-			circularBuffer[inIndex] = dataBuffer[i];
-			inIndex = (inIndex+1 < circularBufferSize) ? inIndex+1: 0;
+		int firstSegment = Math.min(length, circularBufferSize - inIndex);
+		System.arraycopy(dataBuffer, 0, circularBuffer, inIndex, firstSegment);
+		if (firstSegment < length) {
+			System.arraycopy(dataBuffer, firstSegment, circularBuffer, 0, length - firstSegment);
 		}
+		inIndex = (inIndex + length) % circularBufferSize;
 		boolean done = false;
 		while (!done) {
 			if (lookForNewPacket == true) {
 				// See if we have enough bytes to look for a packet header
 				if (cBufferLength() > MtiCmd.cmdHeader.length) {
-					// Loop through the bytes looking for a packet header
-					while (cBufferLength() - MtiCmd.cmdHeader.length > 0) {
-						if (isHeader(outIndex)) {
-							headerIndex = outIndex;
-							break; // exit the while loop
-						} else {
-							// Increment outIndex and handle the loop around
-							outIndex = (outIndex+1 < circularBufferSize) ? outIndex+1: 0;
-						}
+					// Search the buffer for a packet header
+					if (findHeader()) {
+						headerIndex = outIndex;
 					}
 					// See if we found a packet header
 					if (headerIndex == outIndex) {
 						// Check if we have the whole packet
 						packetLength = MtiCmd.getCommandLength(circularBuffer[outIndex]);
-						if (packetLength <= cBufferLength()) {
+						if (packetLength == 0) {
+							// Unknown packet type, skip this byte and resync
+							outIndex = (outIndex+1 < circularBufferSize) ? outIndex+1: 0;
+							resyncDiscardedBytes.incrementAndGet();
+							headerIndex = circularBufferSize;
+						} else if (packetLength <= cBufferLength()) {
 							copyAndSendPacket();
 						} else {
 							// We only have a piece of a packet and need more bytes
@@ -355,6 +378,96 @@ public class SerialComms implements SerialPortEventListener {
 		}
 	}
 	
+	/** 
+	 * findHeader<P>
+	 * This helper method advances outIndex to the next MTI packet header.
+	 * The contiguous part of the circular buffer is searched a word at a
+	 * time for the 'I' of the "ITM" signature and each candidate is then
+	 * confirmed with a single masked int compare. Only the few positions
+	 * whose header would wrap around the end of the buffer are checked a
+	 * byte at a time. Skipped bytes are added to the resync counter.
+	 * @return Returns true if outIndex now points at a packet header.
+	 */
+	private boolean findHeader() {
+		// Every position that leaves more than a header's worth of bytes is a candidate
+		int candidates = cBufferLength() - MtiCmd.HEADER_SIZE;
+		if (candidates <= 0) {
+			return false;
+		}
+		int found = -1;
+		// Candidates whose 4 header bytes do not wrap around the buffer end
+		int linearEnd = Math.min(outIndex + candidates, circularBufferSize - MtiCmd.HEADER_SIZE + 1);
+		if (outIndex < linearEnd) {
+			found = scanForHeader(outIndex, linearEnd);
+		}
+		// Check the remaining candidates one at a time
+		int skipped = 0;
+		if (found < 0) {
+			skipped = (linearEnd > outIndex) ? (linearEnd - outIndex) : 0;
+			int index = (outIndex + skipped) % circularBufferSize;
+			while (skipped < candidates) {
+				if (isHeader(index)) {
+					found = index;
+					break;
+				}
+				index = (index+1 < circularBufferSize) ? index+1: 0;
+				skipped++;
+			}
+			if (found < 0) {
+				// Keep the last few bytes as they may start a header
+				outIndex = index;
+			}
+		} else {
+			skipped = found - outIndex;
+		}
+		if (found >= 0) {
+			outIndex = found;
+		}
+		if (skipped > 0) {
+			resyncDiscardedBytes.addAndGet(skipped);
+		}
+		return (found >= 0);
+	}
+
+	/** 
+	 * scanForHeader<P>
+	 * This helper method searches a contiguous part of the circular buffer
+	 * for an MTI packet header. The packet type byte is followed by the
+	 * bytes "ITM", which read as a little endian int is MtiCmd.MTI_HEADER
+	 * once the type byte is masked off.
+	 * @param from The first candidate index.
+	 * @param to One past the last candidate index (to + 3 must fit in the buffer).
+	 * @return The index of the header, or -1 if there is none.
+	 */
+	private int scanForHeader(int from, int to) {
+		int index = from;
+		// Look eight bytes at a time for the 'I' that follows the type byte
+		while ((index < to) && (index + 1 + 8 <= circularBufferSize)) {
+			long word = circularView.getLong(index + 1) ^ HEADER_I_PATTERN;
+			// Set the high bit of every byte in the word that matched 'I'
+			long matches = ~(((word & LOW_7_BITS) + LOW_7_BITS) | word | LOW_7_BITS);
+			while (matches != 0) {
+				int candidate = index + (Long.numberOfTrailingZeros(matches) >>> 3);
+				if (candidate >= to) {
+					return -1;
+				}
+				if ((circularView.getInt(candidate) & MtiCmd.MTI_HDR_MASK) == MtiCmd.MTI_HEADER) {
+					return candidate;
+				}
+				matches &= (matches - 1);
+			}
+			index += 8;
+		}
+		// Finish the tail an int at a time
+		while (index < to) {
+			if ((circularView.getInt(index) & MtiCmd.MTI_HDR_MASK) == MtiCmd.MTI_HEADER) {
+				return index;
+			}
+			index++;
+		}
+		return -1;
+	}
+
 	/** 
 	 * isHeader<P>
 	 * This helper method checks for the presence of the MTI header at the
@@ -377,18 +490,22 @@ public class SerialComms implements SerialPortEventListener {
 	 * buffer and sends it up for processing.
 	 */
 	private void copyAndSendPacket() {
-		// copy the whole packet
-		byte[] packet = new byte[MtiCmd.MAX_CMD_LENGTH];
-		for (int i = 0; i < packetLength; i++) {
-			packet[i] = circularBuffer[outIndex];
-			// Increment outIndex and handle the loop around
-			outIndex = (outIndex+1 < circularBufferSize) ? outIndex+1: 0;
+		// copy the whole packet into a pooled slot
+		byte[] packet = packetPool.acquire();
+		int firstSegment = Math.min(packetLength, circularBufferSize - outIndex);
+		System.arraycopy(circularBuffer, outIndex, packet, 0, firstSegment);
+		if (firstSegment < packetLength) {
+			System.arraycopy(circularBuffer, 0, packet, firstSegment, packetLength - firstSegment);
 		}
+		outIndex = (outIndex + packetLength) % circularBufferSize;
 		try {
-			// Now send it up
-			serialRspQueue.put(packet);
+			// Now send it up, the slot goes back to the pool if the queue dropped it
+			if (!serialRspQueue.put(packet)) {
+				packetPool.recycle(packet);
+			}
 		} catch (InterruptedException e) {
 			log( "Queueing Packet failed!\n" + e.toString(), Log.Level.Error );
+			packetPool.recycle(packet);
 		}
 		// Reset all values to look for a new packet
 		lookForNewPacket = true;
@@ -396,6 +513,25 @@ public class SerialComms implements SerialPortEventListener {
 		packetLength = 0;
 	}
 	
+	/** 
+	 * getResyncDiscardedBytes<P>
+	 * This method returns the number of received bytes that were
+	 * discarded while searching for a packet header.
+	 * @return The number of discarded bytes.
+	 */
+	public long getResyncDiscardedBytes() {
+		return resyncDiscardedBytes.get();
+	}
+	
+	/** 
+	 * getPacketPool<P>
+	 * This method returns the pool used for framed packets.
+	 * @return The PacketPool object.
+	 */
+	public PacketPool getPacketPool() {
+		return packetPool;
+	}
+	
 	/** 
 	 * setLogObject<P>
 	 * This method is used for making log entries.
@@ -22,12 +22,14 @@
  */
 package com.encinitaslabs.rfid.utils;
 
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 
 /**
  * Crc16 Object
  * 
  * <P>This class provides member functions for calculating a 16-bit CRC.
+ * Blocks of eight bytes are processed with slicing-by-8 tables and all
+ * of the methods work in place on a region of the caller's buffer.
  *  
  *  
  * @author Encinitas Laboratories, Inc.
@@ -36,6 +38,9 @@ import java.util.Arrays;
 public class Crc16 {
 	private static final int poly = 0x1021;
 	private static final int[] crcTable = new int[256];
+	// sliceTable[k][b] is the CRC of byte b followed by k zero bytes
+	private static final int[][] sliceTable = new int[8][256];
+	private static final int residue = 0x1d0f;
 
 	static {
 	    for(int i = 0; i < 256; i++) {
@@ -51,6 +56,13 @@ public class Crc16 {
 	        }
 	        crcTable[i] = fcs;
 	    }
+	    sliceTable[0] = crcTable;
+	    for (int k = 1; k < 8; k++) {
+	        for (int i = 0; i < 256; i++) {
+	            int prev = sliceTable[k-1][i];
+	            sliceTable[k][i] = ((prev << 8) ^ crcTable[(prev >>> 8) & 0xff]) & 0xffff;
+	        }
+	    }
     }
 
 	/** 
@@ -64,12 +76,22 @@ public class Crc16 {
 	 * @return 			The 16-bit CRC
 	 */
 	public static int calculate(byte[] bytes, int length) {
-		int work = 0xffff;
-		
-		for(int i = 0; i < length; i++)
-			work = (crcTable[(bytes[i] ^ (work >>> 8)) & 0xff ] ^ (work << 8)) & 0xffff;
-		
-		return work;
+		return update(0xffff, bytes, 0, length);
+	}
+	
+	/** 
+	 * calculate
+	 * 
+	 * This method calculates the 16-bit CRC against a region of the given array.
+	 * 
+	 * @param bytes		The byte array containing the data
+	 * @param offset	The index of the first byte of the region
+	 * @param length	The length in bytes to calculate the CRC across
+	 * 
+	 * @return 			The 16-bit CRC
+	 */
+	public static int calculate(byte[] bytes, int offset, int length) {
+		return update(0xffff, bytes, offset, length);
 	}
 	
 	/** 
@@ -83,14 +105,95 @@ public class Crc16 {
 	 * @return			True if the 16-bit CRC is correct
 	 */
 	public static boolean check(byte[] bytes, int length) {
-		byte[] baData;
-		byte buffer;
+		return check(bytes, 0, length);
+	}
+	
+	/** 
+	 * check
+	 * 
+	 * This method checks the 16-bit CRC of a packet held in a region of
+	 * the given array. The CRC is stored low byte first at the end of the
+	 * packet, so its two bytes are fed in swapped order rather than
+	 * swapping them in a copy.
+	 * 
+	 * @param bytes		The byte array containing the packet
+	 * @param offset	The index of the first byte of the packet
+	 * @param length	The length in bytes of the packet including its CRC
+	 * 
+	 * @return			True if the 16-bit CRC is correct
+	 */
+	public static boolean check(byte[] bytes, int offset, int length) {
+		if (length < 2) {
+			return false;
+		}
+		int work = update(0xffff, bytes, offset, length - 2);
+		work = (crcTable[(bytes[offset + length - 1] ^ (work >>> 8)) & 0xff] ^ (work << 8)) & 0xffff;
+		work = (crcTable[(bytes[offset + length - 2] ^ (work >>> 8)) & 0xff] ^ (work << 8)) & 0xffff;
+		return (work == residue);
+	}
+	
+	/** 
+	 * check
+	 * 
+	 * This method checks the 16-bit CRC of a packet held in a ByteBuffer
+	 * without changing the buffer's position or limit.
+	 * 
+	 * @param buffer	The buffer containing the packet
+	 * @param offset	The absolute index of the first byte of the packet
+	 * @param length	The length in bytes of the packet including its CRC
+	 * 
+	 * @return			True if the 16-bit CRC is correct
+	 */
+	public static boolean check(ByteBuffer buffer, int offset, int length) {
+		if (buffer.hasArray()) {
+			return check(buffer.array(), buffer.arrayOffset() + offset, length);
+		}
+		if (length < 2) {
+			return false;
+		}
+		int work = 0xffff;
+		for (int i = offset; i < offset + length - 2; i++) {
+			work = (crcTable[(buffer.get(i) ^ (work >>> 8)) & 0xff] ^ (work << 8)) & 0xffff;
+		}
+		work = (crcTable[(buffer.get(offset + length - 1) ^ (work >>> 8)) & 0xff] ^ (work << 8)) & 0xffff;
+		work = (crcTable[(buffer.get(offset + length - 2) ^ (work >>> 8)) & 0xff] ^ (work << 8)) & 0xffff;
+		return (work == residue);
+	}
+	
+	/** 
+	 * update
+	 * 
+	 * This method continues a 16-bit CRC across a region of the given array,
+	 * eight bytes at a time where possible.
+	 * 
+	 * @param crc		The CRC so far (0xffff to start)
+	 * @param bytes		The byte array containing the data
+	 * @param offset	The index of the first byte of the region
+	 * @param length	The length in bytes of the region
+	 * 
+	 * @return			The updated 16-bit CRC
+	 */
+	public static int update(int crc, byte[] bytes, int offset, int length) {
+		int work = crc & 0xffff;
+		int i = offset;
+		int end = offset + length;
 		
-		baData = Arrays.copyOfRange(bytes, 0, length);
-		buffer = baData[length-2];
-		baData[length-2] = baData[length-1];
-		baData[length-1] = buffer;
-
-		return (calculate(baData, length) == 0x1d0f);
+		final int[] t0 = sliceTable[0], t1 = sliceTable[1], t2 = sliceTable[2], t3 = sliceTable[3];
+		final int[] t4 = sliceTable[4], t5 = sliceTable[5], t6 = sliceTable[6], t7 = sliceTable[7];
+		while (end - i >= 8) {
+			work = t7[(bytes[i] ^ (work >>> 8)) & 0xff] ^
+				   t6[(bytes[i+1] ^ work) & 0xff] ^
+				   t5[bytes[i+2] & 0xff] ^
+				   t4[bytes[i+3] & 0xff] ^
+				   t3[bytes[i+4] & 0xff] ^
+				   t2[bytes[i+5] & 0xff] ^
+				   t1[bytes[i+6] & 0xff] ^
+				   t0[bytes[i+7] & 0xff];
+			i += 8;
+		}
+		for (; i < end; i++)
+			work = (crcTable[(bytes[i] ^ (work >>> 8)) & 0xff ] ^ (work << 8)) & 0xffff;
+		
+		return work;
 	}
 }
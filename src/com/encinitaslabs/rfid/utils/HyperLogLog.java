@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid.utils;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog Object
+ *
+ * <P>An estimate of the number of distinct byte strings seen, in a fixed
+ * amount of memory. Adding a string that has already been seen never
+ * changes the estimate, so it is unaffected by the tag database evicting
+ * and later re-adding a tag. With 2^12 one byte registers the standard
+ * error is about 1.6%.
+ *
+ * @author Encinitas Laboratories, Inc.
+ * @version 0.1
+ */
+public class HyperLogLog {
+
+	private final int precision;
+	private final byte[] registers;
+	private final double alpha;
+
+	/**
+	 * HyperLogLog<P>
+	 * Class Constructor
+	 * @param precision_ The number of index bits, 4 to 16
+	 */
+	public HyperLogLog( int precision_ ) {
+		precision = Math.max(4, Math.min(16, precision_));
+		int m = 1 << precision;
+		registers = new byte[m];
+		alpha = 0.7213 / (1.0 + 1.079 / m);
+	}
+
+	/**
+	 * add<P>
+	 * This method records one byte string.
+	 * @param src The array holding the bytes
+	 * @param offset The index of the first byte
+	 * @param length The number of bytes
+	 */
+	public synchronized void add( byte[] src, int offset, int length ) {
+		long hash = hash64(src, offset, length);
+		int index = (int)(hash >>> (64 - precision));
+		// Guard bit so the rank never runs past the remaining bits
+		long rest = (hash << precision) | (1L << (precision - 1));
+		byte rank = (byte)(Long.numberOfLeadingZeros(rest) + 1);
+		if (rank > registers[index]) {
+			registers[index] = rank;
+		}
+	}
+
+	/**
+	 * estimate<P>
+	 * This method returns the estimated number of distinct strings.
+	 * @return The cardinality estimate
+	 */
+	public synchronized long estimate() {
+		int m = registers.length;
+		double sum = 0.0;
+		int zeros = 0;
+		for (int i = 0; i < m; i++) {
+			sum += 1.0 / (1L << registers[i]);
+			if (registers[i] == 0) {
+				zeros++;
+			}
+		}
+		double estimate = alpha * m * m / sum;
+		// Linear counting is more accurate while many registers are empty
+		if ((estimate <= 2.5 * m) && (zeros > 0)) {
+			estimate = m * Math.log((double)m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * clear<P>
+	 * This method forgets every string seen.
+	 */
+	public synchronized void clear() {
+		Arrays.fill(registers, (byte)0);
+	}
+
+	/**
+	 * hash64<P>
+	 * This helper method is FNV-1a followed by the MurmurHash3 finalizer,
+	 * which spreads the short, similar EPCs across all 64 bits.
+	 */
+	private static long hash64( byte[] src, int offset, int length ) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = offset; i < offset + length; i++) {
+			h ^= (src[i] & 0xff);
+			h *= 0x100000001b3L;
+		}
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= (h >>> 33);
+		return h;
+	}
+}
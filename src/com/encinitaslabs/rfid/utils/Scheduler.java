@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler Object
+ *
+ * <P>Runs named periodic and one-shot tasks on a single thread, so tasks
+ * never run concurrently with each other. Periodic tasks run at a fixed
+ * rate measured from when they were scheduled, so a slow run delays the
+ * next one but does not make the schedule drift. Each task keeps its own
+ * execution time metrics. Anything a task throws, errors included, is
+ * counted and the task keeps its schedule.
+ *
+ * @author Encinitas Laboratories, Inc.
+ * @version 0.1
+ */
+public class Scheduler {
+
+	/**
+	 * Task Object
+	 *
+	 * <P>A scheduled task and its execution time metrics.
+	 */
+	public static final class Task implements Runnable {
+		private final String name;
+		private final long period_ms;
+		private final Runnable runnable;
+		private ScheduledFuture<?> future = null;
+		private long runs = 0;
+		private long totalNanos = 0;
+		private long maxNanos = 0;
+		private long overruns = 0;
+		private long failures = 0;
+		private Throwable lastFailure = null;
+
+		private Task( String name_, long period_ms_, Runnable runnable_ ) {
+			name = name_;
+			period_ms = period_ms_;
+			runnable = runnable_;
+		}
+
+		@Override
+		public void run() {
+			long start = System.nanoTime();
+			try {
+				runnable.run();
+			} catch (Throwable t) {
+				// An uncaught throwable would silently cancel a periodic task
+				synchronized (this) {
+					failures++;
+					lastFailure = t;
+				}
+			}
+			long elapsed = System.nanoTime() - start;
+			synchronized (this) {
+				runs++;
+				totalNanos += elapsed;
+				if (elapsed > maxNanos) {
+					maxNanos = elapsed;
+				}
+				if ((period_ms > 0) && (elapsed > TimeUnit.MILLISECONDS.toNanos(period_ms))) {
+					overruns++;
+				}
+			}
+		}
+
+		/**
+		 * getName<P>
+		 * This method returns the name of the task.
+		 * @return The name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * getPeriod<P>
+		 * This method returns the period of the task.
+		 * @return The period in milliseconds, 0 for a one-shot task
+		 */
+		public long getPeriod() {
+			return period_ms;
+		}
+
+		/**
+		 * getRuns<P>
+		 * This method returns the number of times the task has run.
+		 * @return The number of runs
+		 */
+		public synchronized long getRuns() {
+			return runs;
+		}
+
+		/**
+		 * getMeanMicros<P>
+		 * This method returns the mean execution time of the task.
+		 * @return The mean execution time in microseconds
+		 */
+		public synchronized long getMeanMicros() {
+			return (runs > 0) ? totalNanos / runs / 1000 : 0;
+		}
+
+		/**
+		 * getMaxMicros<P>
+		 * This method returns the longest execution time of the task.
+		 * @return The longest execution time in microseconds
+		 */
+		public synchronized long getMaxMicros() {
+			return maxNanos / 1000;
+		}
+
+		/**
+		 * getOverruns<P>
+		 * This method returns the number of runs that took longer than
+		 * the period of the task.
+		 * @return The number of overruns
+		 */
+		public synchronized long getOverruns() {
+			return overruns;
+		}
+
+		/**
+		 * getFailures<P>
+		 * This method returns the number of runs that threw an exception
+		 * or error.
+		 * @return The number of failures
+		 */
+		public synchronized long getFailures() {
+			return failures;
+		}
+
+		/**
+		 * getLastFailure<P>
+		 * This method returns the last throwable thrown by the task.
+		 * @return The throwable, or null if the task never failed
+		 */
+		public synchronized Throwable getLastFailure() {
+			return lastFailure;
+		}
+
+		/**
+		 * cancel<P>
+		 * This method stops the task. A run in progress is completed.
+		 */
+		public void cancel() {
+			ScheduledFuture<?> f;
+			synchronized (this) {
+				f = future;
+			}
+			if (f != null) {
+				f.cancel(false);
+			}
+		}
+
+		/**
+		 * toString<P>
+		 * This method summarizes the metrics of the task.
+		 * @return The summary
+		 */
+		@Override
+		public synchronized String toString() {
+			return "runs " + runs + ", mean " + getMeanMicros() + " us, max " + getMaxMicros() +
+				   " us, overruns " + overruns + ", failures " + failures;
+		}
+	}
+
+	private final ScheduledExecutorService executor;
+	private final List<Task> tasks = new ArrayList<Task>();
+
+	/**
+	 * Scheduler<P>
+	 * Class Constructor
+	 * @param threadName The name of the scheduler thread
+	 */
+	public Scheduler( final String threadName ) {
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, threadName);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * scheduleAtFixedRate<P>
+	 * This method runs a task periodically, starting one period from now.
+	 * @param name The name of the task
+	 * @param period_ms The period in milliseconds
+	 * @param runnable The work to do
+	 * @return The task
+	 */
+	public Task scheduleAtFixedRate( String name, long period_ms, Runnable runnable ) {
+		if (period_ms <= 0) {
+			throw new IllegalArgumentException("Invalid period for " + name);
+		}
+		Task task = new Task(name, period_ms, runnable);
+		synchronized (task) {
+			task.future = executor.scheduleAtFixedRate(task, period_ms, period_ms, TimeUnit.MILLISECONDS);
+		}
+		synchronized (tasks) {
+			tasks.add(task);
+		}
+		return task;
+	}
+
+	/**
+	 * schedule<P>
+	 * This method runs a task once after a delay. One-shot tasks are not
+	 * kept in the task list.
+	 * @param name The name of the task
+	 * @param delay_ms The delay in milliseconds
+	 * @param runnable The work to do
+	 * @return The task
+	 */
+	public Task schedule( String name, long delay_ms, Runnable runnable ) {
+		Task task = new Task(name, 0, runnable);
+		synchronized (task) {
+			task.future = executor.schedule(task, Math.max(0, delay_ms), TimeUnit.MILLISECONDS);
+		}
+		return task;
+	}
+
+	/**
+	 * getTasks<P>
+	 * This method returns the periodic tasks in the order they were scheduled.
+	 * @return A copy of the task list
+	 */
+	public List<Task> getTasks() {
+		synchronized (tasks) {
+			return new ArrayList<Task>(tasks);
+		}
+	}
+
+	/**
+	 * shutdown<P>
+	 * This method cancels all tasks and stops the scheduler thread.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SpscRingBuffer Object
+ *
+ * <P>A bounded, lock-free queue for exactly one producer thread and one
+ * consumer thread. Nothing is allocated per element. When the ring is full
+ * the configured OverflowPolicy decides whether the producer blocks, the
+ * oldest element is dropped or the new element is counted and dropped.
+ * A DropListener is given each element the ring drops, so pooled
+ * elements can be returned to their pool. Waiting threads either park
+ * immediately or spin briefly first, and are unparked by the other side.
+ *
+ * @author Encinitas Laboratories, Inc.
+ * @version 0.1
+ */
+public class SpscRingBuffer<E> {
+
+	public enum OverflowPolicy {
+		Block,
+		DropOldest,
+		CountAndDrop
+	}
+
+	public enum WaitStrategy {
+		Park,
+		SpinThenPark
+	}
+
+	/**
+	 * DropListener Interface
+	 *
+	 * <P>Implemented by anything that must see the elements the ring drops.
+	 */
+	public interface DropListener<E> {
+		void dropped(E element);
+	}
+
+	private static final int SPIN_LIMIT = 1000;
+	// Waiters are always unparked, this only bounds a missed wakeup
+	private static final long PARK_NANOS = 100000000L;
+	private final Object[] buffer;
+	private final int capacity;
+	private final int mask;
+	private final OverflowPolicy overflowPolicy;
+	private final WaitStrategy waitStrategy;
+	// head is the next element to take, tail is the next slot to fill
+	private final AtomicLong head = new AtomicLong(0);
+	private final AtomicLong tail = new AtomicLong(0);
+	private final AtomicLong droppedCount = new AtomicLong(0);
+	private volatile Thread consumerThread = null;
+	private volatile Thread producerThread = null;
+	private volatile boolean consumerWaiting = false;
+	private volatile boolean producerWaiting = false;
+	private volatile DropListener<E> dropListener = null;
+
+	/**
+	 * SpscRingBuffer<P>
+	 * Class Constructor
+	 * @param capacity_ The minimum number of elements, rounded up to a power of two
+	 * @param overflowPolicy_ What to do when the ring is full
+	 * @param waitStrategy_ How waiting threads wait
+	 */
+	public SpscRingBuffer( int capacity_, OverflowPolicy overflowPolicy_, WaitStrategy waitStrategy_ ) {
+		int size = 2;
+		while (size < capacity_) {
+			size <<= 1;
+		}
+		capacity = size;
+		mask = size - 1;
+		buffer = new Object[size];
+		overflowPolicy = (overflowPolicy_ != null) ? overflowPolicy_ : OverflowPolicy.Block;
+		waitStrategy = (waitStrategy_ != null) ? waitStrategy_ : WaitStrategy.Park;
+	}
+
+	/**
+	 * setDropListener<P>
+	 * This method sets the listener that is given each element dropped
+	 * by the DropOldest policy. With CountAndDrop the caller of put keeps
+	 * the element it could not add.
+	 * @param dropListener_ The listener, or null for none
+	 */
+	public void setDropListener( DropListener<E> dropListener_ ) {
+		dropListener = dropListener_;
+	}
+
+	/**
+	 * put<P>
+	 * This method adds an element at the tail of the ring, applying the
+	 * overflow policy when the ring is full. Producer thread only.
+	 * @param element The element to add
+	 * @return True if the element was queued, false if it was dropped
+	 * @throws InterruptedException
+	 */
+	public boolean put( E element ) throws InterruptedException {
+		int spins = 0;
+		while (true) {
+			long t = tail.get();
+			long h = head.get();
+			if (t - h < capacity) {
+				buffer[(int)(t & mask)] = element;
+				tail.set(t + 1);
+				if (consumerWaiting) {
+					LockSupport.unpark(consumerThread);
+				}
+				return true;
+			}
+			if (overflowPolicy == OverflowPolicy.CountAndDrop) {
+				droppedCount.incrementAndGet();
+				return false;
+			} else if (overflowPolicy == OverflowPolicy.DropOldest) {
+				@SuppressWarnings("unchecked")
+				E oldest = (E)buffer[(int)(h & mask)];
+				// Losing this race just means the consumer took it first
+				if (head.compareAndSet(h, h + 1)) {
+					droppedCount.incrementAndGet();
+					DropListener<E> listener = dropListener;
+					if (listener != null) {
+						listener.dropped(oldest);
+					}
+				}
+			} else {
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				if ((waitStrategy == WaitStrategy.SpinThenPark) && (spins < SPIN_LIMIT)) {
+					spins++;
+					continue;
+				}
+				producerThread = Thread.currentThread();
+				producerWaiting = true;
+				if (tail.get() - head.get() >= capacity) {
+					LockSupport.parkNanos(this, PARK_NANOS);
+				}
+				producerWaiting = false;
+			}
+		}
+	}
+
+	/**
+	 * offer<P>
+	 * This method adds an element only if there is room, whatever the
+	 * overflow policy. Producer thread only.
+	 * @param element The element to add
+	 * @return True if the element was queued
+	 */
+	public boolean offer( E element ) {
+		long t = tail.get();
+		if (t - head.get() >= capacity) {
+			return false;
+		}
+		buffer[(int)(t & mask)] = element;
+		tail.set(t + 1);
+		if (consumerWaiting) {
+			LockSupport.unpark(consumerThread);
+		}
+		return true;
+	}
+
+	/**
+	 * poll<P>
+	 * This method removes the element at the head of the ring.
+	 * Consumer thread only.
+	 * @return The element, or null if the ring is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		while (true) {
+			long h = head.get();
+			if (h >= tail.get()) {
+				return null;
+			}
+			// The slot is not cleared since the producer may already be reusing it
+			E element = (E)buffer[(int)(h & mask)];
+			if (head.compareAndSet(h, h + 1)) {
+				if (producerWaiting) {
+					LockSupport.unpark(producerThread);
+				}
+				return element;
+			}
+		}
+	}
+
+	/**
+	 * take<P>
+	 * This method removes the element at the head of the ring, waiting
+	 * for one to arrive if the ring is empty. Consumer thread only.
+	 * @return The element
+	 * @throws InterruptedException
+	 */
+	public E take() throws InterruptedException {
+		int spins = 0;
+		while (true) {
+			E element = poll();
+			if (element != null) {
+				return element;
+			}
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			if ((waitStrategy == WaitStrategy.SpinThenPark) && (spins < SPIN_LIMIT)) {
+				spins++;
+				continue;
+			}
+			consumerThread = Thread.currentThread();
+			consumerWaiting = true;
+			if (isEmpty()) {
+				LockSupport.parkNanos(this, PARK_NANOS);
+			}
+			consumerWaiting = false;
+		}
+	}
+
+	/**
+	 * isEmpty<P>
+	 * This method returns true if there are no elements in the ring.
+	 * @return True if empty
+	 */
+	public boolean isEmpty() {
+		return (head.get() >= tail.get());
+	}
+
+	/**
+	 * size<P>
+	 * This method returns the number of elements currently in the ring.
+	 * @return The number of elements
+	 */
+	public int size() {
+		long size = tail.get() - head.get();
+		return (size > 0) ? (int)size : 0;
+	}
+
+	/**
+	 * getCapacity<P>
+	 * This method returns the maximum number of elements in the ring.
+	 * @return The capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * getDroppedCount<P>
+	 * This method returns the number of elements dropped by the
+	 * overflow policy.
+	 * @return The number of dropped elements
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2013 - 2015, Encinitas Laboratories, Inc.
+ * All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * NOTICE:  All information contained herein is, and remains
+ * the property of Encinitas Laboratories, Incorporated and its
+ * suppliers if any.  The intellectual and technical concepts contained
+ * herein are proprietary to Encinitas Laboratories, Incorporated
+ * and its suppliers and may be covered by U.S. and Foreign Patents,
+ * patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material
+ * is strictly forbidden unless prior written permission is obtained
+ * from Encinitas Laboratories, Incorporated.
+ *
+ * Please contact:
+ * Encinitas Laboratories, Inc.
+ * 1310 Ravean Court
+ * Encinitas, CA 92024 USA
+ * http://www.encinitaslabs.com
+ * for additional information or to ask a question.
+ */
+package com.encinitaslabs.rfid.utils;
+
+import java.util.Arrays;
+
+/**
+ * TimerWheel Object
+ *
+ * <P>A two level hierarchical timing wheel of integer timers. Each timer
+ * is an id and a kind that expire at a deadline measured in ticks.
+ * Timers due within one turn of the inner wheel are kept in the bucket
+ * of their deadline, so advancing the wheel one tick only visits the
+ * timers that expire on that tick. Timers further away wait in the outer
+ * wheel, whose buckets each span one turn of the inner wheel, and are
+ * moved down when that turn starts. A timer is therefore visited at most
+ * twice before it expires and the cost of aging scales with the number
+ * of expirations rather than the number of timers. Deadlines beyond both
+ * wheels stay in their outer bucket until their turn comes round.
+ * <P>Timers are not cancelled. The owner of a timer records the deadline
+ * it scheduled and ignores an expiry whose deadline no longer matches,
+ * which makes rescheduling and cancelling free. Timers are held in
+ * preallocated node arrays, so scheduling does not allocate.
+ *
+ * @author Encinitas Laboratories, Inc.
+ * @version 0.1
+ */
+public class TimerWheel {
+
+	/**
+	 * Listener Interface
+	 *
+	 * <P>Implemented by anything that handles expired timers. It is
+	 * called without the wheel locked, so it may schedule new timers.
+	 */
+	public interface Listener {
+		void expired(int id, int kind, long deadline);
+	}
+
+	private static final int NO_NODE = -1;
+	private final int[] buckets;
+	private final int[] outerBuckets;
+	private final int bits;
+	private final int mask;
+	private long now = 0;
+	private int pending = 0;
+	// Timer nodes, chained through nodeNext
+	private int[] nodeNext = null;
+	private int[] nodeId = null;
+	private int[] nodeKind = null;
+	private long[] nodeDeadline = null;
+	private int nodeLimit = 0;
+	private int freeNode = NO_NODE;
+	// Timers fired by the current tick, only used by advance()
+	private int[] firedId = new int[16];
+	private int[] firedKind = new int[16];
+	private long[] firedDeadline = new long[16];
+
+	/**
+	 * TimerWheel<P>
+	 * Class Constructor
+	 * @param slots_ The number of buckets in each wheel, rounded up to a
+	 * power of two. Timers up to slots_ squared ticks away are visited at
+	 * most twice.
+	 * @param timers_ The number of timers to preallocate
+	 */
+	public TimerWheel( int slots_, int timers_ ) {
+		int slotBits = 1;
+		while ((1 << slotBits) < slots_) {
+			slotBits++;
+		}
+		bits = slotBits;
+		buckets = new int[1 << bits];
+		outerBuckets = new int[1 << bits];
+		Arrays.fill(buckets, NO_NODE);
+		Arrays.fill(outerBuckets, NO_NODE);
+		mask = (1 << bits) - 1;
+		int timers = Math.max(timers_, 16);
+		nodeNext = new int[timers];
+		nodeId = new int[timers];
+		nodeKind = new int[timers];
+		nodeDeadline = new long[timers];
+	}
+
+	/**
+	 * schedule<P>
+	 * This method adds a timer. A deadline that has already passed
+	 * expires on the next tick.
+	 * @param id The id passed to the listener
+	 * @param kind The kind passed to the listener
+	 * @param deadline The tick at which the timer expires
+	 */
+	public synchronized void schedule( int id, int kind, long deadline ) {
+		if (deadline <= now) {
+			deadline = now + 1;
+		}
+		int node;
+		if (freeNode != NO_NODE) {
+			node = freeNode;
+			freeNode = nodeNext[node];
+		} else {
+			if (nodeLimit == nodeId.length) {
+				int size = nodeLimit << 1;
+				nodeNext = Arrays.copyOf(nodeNext, size);
+				nodeId = Arrays.copyOf(nodeId, size);
+				nodeKind = Arrays.copyOf(nodeKind, size);
+				nodeDeadline = Arrays.copyOf(nodeDeadline, size);
+			}
+			node = nodeLimit++;
+		}
+		nodeId[node] = id;
+		nodeKind[node] = kind;
+		nodeDeadline[node] = deadline;
+		link(node);
+		pending++;
+	}
+
+	/**
+	 * link<P>
+	 * This helper method puts a timer in the inner wheel if it is due
+	 * within one turn, otherwise in the outer wheel.
+	 */
+	private void link( int node ) {
+		long deadline = nodeDeadline[node];
+		if (deadline - now <= mask) {
+			int bucket = (int)(deadline & mask);
+			nodeNext[node] = buckets[bucket];
+			buckets[bucket] = node;
+		} else {
+			int bucket = (int)((deadline >>> bits) & mask);
+			nodeNext[node] = outerBuckets[bucket];
+			outerBuckets[bucket] = node;
+		}
+	}
+
+	/**
+	 * cascade<P>
+	 * This helper method runs at the start of each turn of the inner
+	 * wheel and moves the timers due in that turn down from the outer
+	 * wheel. Timers due in a later round stay where they are.
+	 */
+	private void cascade( ) {
+		int bucket = (int)((now >>> bits) & mask);
+		int node = outerBuckets[bucket];
+		outerBuckets[bucket] = NO_NODE;
+		while (node != NO_NODE) {
+			int next = nodeNext[node];
+			link(node);
+			node = next;
+		}
+	}
+
+	/**
+	 * advance<P>
+	 * This method moves the wheel forward one tick and passes every
+	 * timer that has reached its deadline to the listener. Only one
+	 * thread advances the wheel.
+	 * @param listener The handler for expired timers
+	 * @return The number of timers that expired
+	 */
+	public int advance( Listener listener ) {
+		int fired = 0;
+		synchronized (this) {
+			now++;
+			int bucket = (int)(now & mask);
+			if (bucket == 0) {
+				cascade();
+			}
+			int prev = NO_NODE;
+			int node = buckets[bucket];
+			while (node != NO_NODE) {
+				int next = nodeNext[node];
+				if (nodeDeadline[node] <= now) {
+					if (fired == firedId.length) {
+						firedId = Arrays.copyOf(firedId, fired << 1);
+						firedKind = Arrays.copyOf(firedKind, fired << 1);
+						firedDeadline = Arrays.copyOf(firedDeadline, fired << 1);
+					}
+					firedId[fired] = nodeId[node];
+					firedKind[fired] = nodeKind[node];
+					firedDeadline[fired] = nodeDeadline[node];
+					fired++;
+					// Unlink the node and return it to the free list
+					if (prev == NO_NODE) {
+						buckets[bucket] = next;
+					} else {
+						nodeNext[prev] = next;
+					}
+					nodeNext[node] = freeNode;
+					freeNode = node;
+					pending--;
+				} else {
+					prev = node;
+				}
+				node = next;
+			}
+		}
+		for (int i = 0; i < fired; i++) {
+			listener.expired(firedId[i], firedKind[i], firedDeadline[i]);
+		}
+		return fired;
+	}
+
+	/**
+	 * getTime<P>
+	 * This method returns the current tick.
+	 * @return The number of ticks the wheel has advanced
+	 */
+	public synchronized long getTime() {
+		return now;
+	}
+
+	/**
+	 * getPending<P>
+	 * This method returns the number of timers waiting to expire,
+	 * including ones whose owner has since ignored them.
+	 * @return The number of timers
+	 */
+	public synchronized int getPending() {
+		return pending;
+	}
+}